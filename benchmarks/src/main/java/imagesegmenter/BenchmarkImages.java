@@ -0,0 +1,86 @@
+/**
+ * BenchmarkImages.java
+ * The inputs shared by the benchmarks: the pictures in img/ and a few
+ * synthetic worst cases, each scaled to several resolutions.
+ *
+ * checkerboard makes every pixel its own component, single-color makes the
+ * whole image one component and every edge weight 0, and noise gives edge
+ * weights spread over the whole range. The synthetic images and the img/
+ * directory come from the segmenter's TestImages, so the benchmarks and the
+ * tests see the same inputs.
+ */
+
+package imagesegmenter;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class BenchmarkImages {
+    static final int SYNTHETIC_SIZE = 512; // side of the synthetic images at scale 1.
+
+    @Param({"gettysburg-address-p1.png", "ArezzoPiazza.jpg", "gradients.png", "donut2.png",
+            "4sections.png", "checkerboard", "single-color", "noise"})
+    public String image;
+
+    @Param({"0.5", "1", "2"})
+    public double scale;
+
+    BufferedImage bi; // the input, TYPE_INT_RGB.
+    int[] pixels; // the packed RGB pixels of bi, row by row.
+    int w; // width of the input.
+    int h; // height of the input.
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BufferedImage source = synthetic(image, SYNTHETIC_SIZE, SYNTHETIC_SIZE);
+        if (source == null) {
+            source = ImageIO.read(new File(TestImages.imageDirectory(), image));
+            if (source == null) {
+                throw new IOException("Could not read " + image);
+            }
+        }
+        w = Math.max(1, (int)Math.round(source.getWidth() * scale));
+        h = Math.max(1, (int)Math.round(source.getHeight() * scale));
+        bi = synthetic(image, w, h);
+        if (bi == null) {
+            bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = bi.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                               RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(source, 0, 0, w, h, null);
+            g.dispose();
+        }
+        pixels = ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * draws one of the synthetic images of the tests. they are generated at
+     * the target size rather than resampled, so a checkerboard stays one
+     * pixel per square.
+     * @param name (String): the image name
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (BufferedImage): the image, or null if name is not a synthetic image
+     */
+    static BufferedImage synthetic(String name, int w, int h) {
+        if (!TestImages.isSynthetic(name)) {
+            return null;
+        }
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+        System.arraycopy(TestImages.synthetic(name, w, h), 0, rgb, 0, w * h);
+        return bi;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * ComponentsBenchmark.java
+ * Times labeling the connected components of each input, serially and with
+ * the row-stripe labeler on every available processor, and serially over
+ * runs of equal color.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentsBenchmark {
+    SegmentationEngine serial;
+    SegmentationEngine parallel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serial = new SegmentationEngine(1);
+        parallel = new SegmentationEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public LabelMap serial(BenchmarkImages in) {
+        return serial.connectedComponents(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public LabelMap parallel(BenchmarkImages in) {
+        return parallel.connectedComponents(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public RunLabelMap runs(BenchmarkImages in) {
+        return serial.connectedComponentRuns(in.pixels, in.w, in.h);
+    }
+}
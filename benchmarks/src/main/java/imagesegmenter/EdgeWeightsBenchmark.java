@@ -0,0 +1,68 @@
+/**
+ * EdgeWeightsBenchmark.java
+ * Times weighing every right and down edge of each input with the scalar
+ * kernel and with the kernel EdgeWeights picked (the Vector API one, as the
+ * fork is started with jdk.incubator.vector), and building the whole sorted
+ * EdgeList.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", EdgeWeights.VECTOR_MODULE})
+public class EdgeWeightsBenchmark {
+    int[] right, down;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        right = new int[in.w];
+        down = new int[in.w];
+    }
+
+    @Benchmark
+    public int[] scalar(BenchmarkImages in) {
+        return weighAll(EdgeWeights.SCALAR, in);
+    }
+
+    @Benchmark
+    public int[] vector(BenchmarkImages in) {
+        if (!EdgeWeights.isVectorized()) {
+            throw new IllegalStateException("The Vector API is not available in this fork");
+        }
+        return weighAll(EdgeWeights.KERNEL, in);
+    }
+
+    @Benchmark
+    public EdgeList buildEdgeList(BenchmarkImages in) {
+        return EdgeList.build(in.pixels, in.w, in.h);
+    }
+
+    private int[] weighAll(EdgeWeights.Kernel kernel, BenchmarkImages in) {
+        for (int y = 0; y < in.h; y++) {
+            int p = in.w * y;
+            kernel.weigh(in.pixels, p, in.pixels, p+1, right, 0, in.w - 1);
+            if (y+1 < in.h) {
+                kernel.weigh(in.pixels, p, in.pixels, p + in.w, down, 0, in.w);
+            }
+        }
+        return down;
+    }
+}
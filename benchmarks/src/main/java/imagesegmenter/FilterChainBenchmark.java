@@ -0,0 +1,84 @@
+/**
+ * FilterChainBenchmark.java
+ * Times the blur -> threshold preprocessing chain as two BufferedImageOps,
+ * each followed by a drawImage copy, against one fused ImageOpPipeline pass.
+ */
+
+package imagesegmenter;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FilterChainBenchmark {
+    BufferedImage working;
+    BufferedImage filtered;
+    Graphics2D gWorking;
+    int[] filteredPixels;
+    ImageOpPipeline pipeline;
+    SegmentationEngine serial;
+    SegmentationEngine parallel;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        ImageComponents.initializeImageOps();
+        working = new BufferedImage(in.w, in.h, BufferedImage.TYPE_INT_RGB);
+        filtered = new BufferedImage(in.w, in.h, BufferedImage.TYPE_INT_RGB);
+        gWorking = working.createGraphics();
+        filteredPixels = ((DataBufferInt) filtered.getRaster().getDataBuffer()).getData();
+        pipeline = new ImageOpPipeline().then(ImageComponents.LOWPASS_OP).then(ImageComponents.RGBTHRESH_OP);
+        serial = new SegmentationEngine(1);
+        parallel = new SegmentationEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Setup(Level.Iteration)
+    public void reset(BenchmarkImages in) {
+        gWorking.drawImage(in.bi, 0, 0, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gWorking.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage separateOps() {
+        ImageComponents.LOWPASS_OP.filter(working, filtered);
+        gWorking.drawImage(filtered, 0, 0, null);
+        ImageComponents.RGBTHRESH_OP.filter(working, filtered);
+        gWorking.drawImage(filtered, 0, 0, null);
+        return working;
+    }
+
+    @Benchmark
+    public int[] fusedPipeline(BenchmarkImages in) {
+        serial.filter(pipeline, in.pixels, filteredPixels, in.w, in.h);
+        return filteredPixels;
+    }
+
+    @Benchmark
+    public int[] parallelFusedPipeline(BenchmarkImages in) {
+        parallel.filter(pipeline, in.pixels, filteredPixels, in.w, in.h);
+        return filteredPixels;
+    }
+}
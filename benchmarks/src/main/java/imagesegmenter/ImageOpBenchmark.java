@@ -0,0 +1,97 @@
+/**
+ * ImageOpBenchmark.java
+ * Times the Image Operations menu filters the way applyOp used to run them
+ * (filter the working image into a scratch image, then draw it back) and as
+ * an ImageOpPipeline on one thread and on all of them.
+ */
+
+package imagesegmenter;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageOpBenchmark {
+    @Param({"lowPass", "highPass", "photoNeg", "RGBThresh"})
+    public String op;
+
+    BufferedImageOp operation;
+    BufferedImage working;
+    BufferedImage filtered;
+    Graphics2D gWorking;
+    int[] filteredPixels;
+    ImageOpPipeline pipeline;
+    SegmentationEngine serial;
+    SegmentationEngine parallel;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        ImageComponents.initializeImageOps();
+        switch (op) {
+            case "lowPass":   operation = ImageComponents.LOWPASS_OP;    break;
+            case "highPass":  operation = ImageComponents.HIGHPASS_OP;   break;
+            case "photoNeg":  operation = ImageComponents.PHOTONEG_OP;   break;
+            case "RGBThresh": operation = ImageComponents.RGBTHRESH_OP;  break;
+            default: throw new IllegalArgumentException("Unknown op " + op);
+        }
+        working = new BufferedImage(in.w, in.h, BufferedImage.TYPE_INT_RGB);
+        filtered = new BufferedImage(in.w, in.h, BufferedImage.TYPE_INT_RGB);
+        gWorking = working.createGraphics();
+        filteredPixels = ((DataBufferInt) filtered.getRaster().getDataBuffer()).getData();
+        pipeline = new ImageOpPipeline().then(operation);
+        serial = new SegmentationEngine(1);
+        parallel = new SegmentationEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Setup(Level.Iteration)
+    public void reset(BenchmarkImages in) {
+        // Repeated filtering drifts (e.g. to black), so restart from the input.
+        gWorking.drawImage(in.bi, 0, 0, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gWorking.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage applyOp() {
+        operation.filter(working, filtered);
+        gWorking.drawImage(filtered, 0, 0, null);
+        return working;
+    }
+
+    @Benchmark
+    public int[] pipeline(BenchmarkImages in) {
+        serial.filter(pipeline, in.pixels, filteredPixels, in.w, in.h);
+        return filteredPixels;
+    }
+
+    @Benchmark
+    public int[] parallelPipeline(BenchmarkImages in) {
+        parallel.filter(pipeline, in.pixels, filteredPixels, in.w, in.h);
+        return filteredPixels;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * PyramidBenchmark.java
+ * Times coarse-to-fine segmentation through an image pyramid of 1 to 4
+ * halvings, including building the pyramid, and the preview that segments
+ * only its top level. Compare with SegmentationBenchmark.kruskal.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PyramidBenchmark {
+    @Param({"25", "1000"})
+    public int nRegions;
+
+    @Param({"1", "2", "3", "4"})
+    public int levels;
+
+    SegmentationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SegmentationEngine(1);
+    }
+
+    @Benchmark
+    public LabelMap coarseToFine(BenchmarkImages in) {
+        return engine.segment(ImagePyramid.build(in.pixels, in.w, in.h, levels), nRegions);
+    }
+
+    @Benchmark
+    public LabelMap preview(BenchmarkImages in) {
+        ImagePyramid pyramid = ImagePyramid.build(in.pixels, in.w, in.h, levels);
+        return engine.segment(pyramid, pyramid.getLevelCount() - 1, nRegions, false, ProgressMonitor.NONE);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * RecolorBenchmark.java
+ * Times painting a labeling with progressive colors, the step that follows
+ * every connected-components or segmentation run in the viewer.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecolorBenchmark {
+    LabelMap labels;
+    int[] rgb;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        labels = new SegmentationEngine(1).connectedComponents(in.pixels, in.w, in.h);
+        rgb = new int[in.pixels.length];
+    }
+
+    @Benchmark
+    public int[] recolor() {
+        labels.recolor(rgb);
+        return rgb;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * RegionGraphBenchmark.java
+ * Times building the region adjacency graph of a segmentation into nRegions
+ * regions, and merging every region into a neighbor and undoing it all again,
+ * repainting as the viewer does.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionGraphBenchmark {
+    @Param({"25", "1000"})
+    public int nRegions;
+
+    LabelMap regions;
+    RegionGraph graph;
+    int[] rgb;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        regions = new SegmentationEngine(1).segment(in.pixels, in.w, in.h, nRegions);
+        graph = RegionGraph.build(regions, in.pixels);
+        rgb = new int[in.w * in.h];
+        regions.recolor(rgb);
+    }
+
+    @Benchmark
+    public RegionGraph build(BenchmarkImages in) {
+        return RegionGraph.build(regions, in.pixels);
+    }
+
+    @Benchmark
+    public int mergeAndUndo() {
+        for (int r = 0; r < graph.getRegionCount(); r++) {
+            int[] neighbors = graph.neighbors(r);
+            if (neighbors.length > 0) {
+                graph.merge(r, neighbors[0], rgb);
+            }
+        }
+        int merges = graph.getMergeCount();
+        while (graph.undo(rgb) != -1) {
+        }
+        return merges;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * SegmentationBenchmark.java
+ * Times segmenting each input into nRegions regions with Kruskal's and
+ * Boruvka's algorithm, and cutting a prebuilt hierarchy at nRegions.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentationBenchmark {
+    @Param({"2", "25", "1000", "100000"})
+    public int nRegions;
+
+    SegmentationEngine kruskal;
+    SegmentationEngine boruvka;
+    SegmentationHierarchy hierarchy;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        kruskal = new SegmentationEngine(1);
+        boruvka = new SegmentationEngine(processors, SegmentationEngine.MstAlgorithm.BORUVKA);
+        hierarchy = boruvka.buildHierarchy(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public LabelMap kruskal(BenchmarkImages in) {
+        return kruskal.segment(in.pixels, in.w, in.h, nRegions);
+    }
+
+    @Benchmark
+    public LabelMap boruvka(BenchmarkImages in) {
+        return boruvka.segment(in.pixels, in.w, in.h, nRegions);
+    }
+
+    @Benchmark
+    public LabelMap hierarchyCut() {
+        return hierarchy.labels(nRegions);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * SequenceBenchmark.java
+ * Times labelling a mostly static clip made from the benchmark image, with a
+ * small square moving across it from frame to frame: each frame from scratch,
+ * and as a FrameSequence that redoes only the changed tiles. nRegions 0 means
+ * connected components of the image posterized to 4 levels per channel.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBenchmark {
+    static final int FRAMES = 16;
+    static final int SQUARE = 48; // side of the moving square.
+
+    @Param({"0", "200"})
+    public int nRegions;
+
+    int[][] frames;
+    SegmentationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkImages in) {
+        engine = new SegmentationEngine(1);
+        frames = new int[FRAMES][];
+        for (int k = 0; k < FRAMES; k++) {
+            int[] frame = in.pixels.clone();
+            if (nRegions == 0) {
+                for (int p = 0; p < frame.length; p++) {
+                    frame[p] &= 0xc0c0c0;
+                }
+            }
+            int x0 = Math.min(in.w - SQUARE, 4 * k), y0 = Math.max(0, in.h / 2 - SQUARE / 2);
+            for (int y = y0; y < Math.min(in.h, y0 + SQUARE); y++) {
+                for (int x = Math.max(0, x0); x < x0 + SQUARE; x++) {
+                    frame[in.w * y + x] = 0xc00000;
+                }
+            }
+            frames[k] = frame;
+        }
+    }
+
+    @Benchmark
+    public int everyFrame(BenchmarkImages in) {
+        int count = 0;
+        for (int[] frame : frames) {
+            count += nRegions == 0
+                    ? engine.connectedComponents(frame, in.w, in.h).getComponentCount()
+                    : engine.segment(frame, in.w, in.h, nRegions).getComponentCount();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int sequence(BenchmarkImages in) {
+        FrameSequence sequence = nRegions == 0
+                ? FrameSequence.components(engine, in.w, in.h)
+                : FrameSequence.segmentation(engine, in.w, in.h, nRegions, FRAMES);
+        int count = 0;
+        for (int[] frame : frames) {
+            count += sequence.next(frame).getComponentCount();
+        }
+        return count;
+    }
+}
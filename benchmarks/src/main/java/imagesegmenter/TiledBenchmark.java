@@ -0,0 +1,73 @@
+/**
+ * TiledBenchmark.java
+ * Times connected components and the segmentation hierarchy of each input
+ * in one JVM and split into tiles across TileWorker processes, which shows
+ * what the scale-out mode costs over the files and pipes on one machine.
+ */
+
+package imagesegmenter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiledBenchmark {
+    @Param({"2"})
+    public int workers;
+
+    @Param({"512"})
+    public int tileSize;
+
+    SegmentationEngine engine;
+    TiledSegmenter tiled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SegmentationEngine(1);
+        tiled = new TiledSegmenter(workers, tileSize, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tiled.close();
+    }
+
+    @Benchmark
+    public LabelMap componentsInProcess(BenchmarkImages in) {
+        return engine.connectedComponents(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public LabelMap componentsTiled(BenchmarkImages in) throws IOException {
+        return tiled.connectedComponents(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public SegmentationHierarchy hierarchyInProcess(BenchmarkImages in) {
+        return engine.buildHierarchy(in.pixels, in.w, in.h);
+    }
+
+    @Benchmark
+    public SegmentationHierarchy hierarchyTiled(BenchmarkImages in) throws IOException {
+        return tiled.buildHierarchy(in.pixels, in.w, in.h);
+    }
+}
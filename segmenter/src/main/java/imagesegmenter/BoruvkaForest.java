@@ -0,0 +1,302 @@
+/**
+ * BoruvkaForest.java
+ * Minimum spanning forest of the weighted pixel graph, found with Boruvka
+ * rounds spread over a ForkJoinPool.
+ *
+ * Edges are compared by weight and then by edge id, the same total order in
+ * which EdgeList hands them to Kruskal's algorithm, so the minimum spanning
+ * forest is unique. Kruskal's algorithm stopped at k trees has used exactly
+ * the lightest n-k of its edges, so taking that many edges off the front of
+ * the forest found here gives the same regions as the serial loop.
+ *
+ * Each round drops the edges that have become internal to a tree and lets
+ * every tree pick its lightest outgoing edge, both in parallel over chunks of
+ * the live edges. The picks are gathered in parallel and only they are
+ * unioned, so the serial part of a round is proportional to the number of
+ * trees left, which at least halves every round. In the first round every
+ * tree is a single pixel, so it simply picks the lightest of its own edges.
+ *
+ * The rounds stop as soon as the lightest edges asked for are known: every
+ * forest edge not yet found is still live, so once the edges found that are
+ * lighter than the lightest live edge number at least that many, they are
+ * exactly the lightest ones of the whole forest.
+ */
+
+package imagesegmenter;
+
+import java.util.BitSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class BoruvkaForest {
+    private static final int CHUNKS_PER_THREAD = 4; // extra chunks so idle threads can steal work.
+    private static final long NO_EDGE = Long.MAX_VALUE;
+
+    private BoruvkaForest() {
+    }
+
+    /**
+     * finds the lightest edges of the minimum spanning forest of the image's
+     * weighted pixel graph.
+     * @param pool (ForkJoinPool): the threads to run on
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param forest (DisjointSets): scratch forest over the pixelIDs, reset by the caller
+     * @param wanted (int): how many of the lightest forest edges are needed;
+     * w*h - 1 or more for the whole forest
+     * @param monitor (ProgressMonitor): told the number of forest edges after every round
+     * @param stats (SegmentationStats): receives the phase times and the edges scanned
+     * @return (int[]): ids of the forest edges found, in the order Kruskal's
+     * algorithm would add them; the first wanted of them (all of them if
+     * there are fewer) are the lightest wanted edges of the whole forest
+     * @throws CancellationException if the monitor cancels the call
+     */
+    static int[] minimumSpanningForest(ForkJoinPool pool, int[] pixels, int w, int h, DisjointSets forest,
+                                       int wanted, ProgressMonitor monitor, SegmentationStats stats) {
+        if ((long) w * h > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Image is too large for an edge list: " + w + "x" + h);
+        }
+        int n = w * h;
+        int chunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+        int needed = Math.min(wanted, n - 1);
+        if (needed <= 0) {
+            return new int[0];
+        }
+
+        PhaseTimer timer = stats.start(SegmentationStats.Phase.BUILD_EDGES, w, h);
+        int[] weights = new int[2 * n];
+        int[] live = new int[EdgeList.edgeCount(w, h)]; // row y's edges start at (2w-1)*y.
+        run(pool, h, chunks, (lo, hi) -> {
+            int[] right = new int[w], down = new int[w]; // weights of one row's edges, by x.
+            for (int y = lo; y < hi; y++) {
+                int p = w * y;
+                int i = (2*w - 1) * y;
+                EdgeWeights.weigh(pixels, p, pixels, p+1, right, 0, w-1);
+                if (y+1 < h) {
+                    EdgeWeights.weigh(pixels, p, pixels, p+w, down, 0, w);
+                }
+                for (int x = 0; x < w; x++, p++) {
+                    if (x+1 < w) { weights[2*p] = right[x]; live[i++] = 2*p; }
+                    if (y+1 < h) { weights[2*p+1] = down[x]; live[i++] = 2*p+1; }
+                }
+            }
+        });
+        timer.stop();
+        timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+
+        int[] trees = new int[n]; // the roots, one per tree.
+        int[] picks = new int[n]; // the edge each tree picked, or -1, by index in trees.
+        // in the first round every pixel is a tree, so it picks among its own edges without any atomics.
+        run(pool, n, chunks, (lo, hi) -> {
+            for (int p = lo; p < hi; p++) {
+                trees[p] = p;
+                long min = NO_EDGE;
+                int x = p % w;
+                if (x+1 < w) { min = Math.min(min, key(weights, 2*p)); }
+                if (p+w < n) { min = Math.min(min, key(weights, 2*p+1)); }
+                if (x > 0) { min = Math.min(min, key(weights, 2*(p-1))); }
+                if (p >= w) { min = Math.min(min, key(weights, 2*(p-w)+1)); }
+                picks[p] = min == NO_EDGE ? -1 : (int) (min & Integer.MAX_VALUE);
+            }
+        });
+        stats.countEdges(live.length);
+        int treeCount = n;
+        int liveCount = live.length;
+        AtomicLongArray best = new AtomicLongArray(n); // each root's lightest outgoing edge.
+        BitSet chosen = new BitSet(2 * n);
+        int[] chosenByWeight = new int[EdgeList.MAX_WEIGHT + 1];
+        int treeEdges = 0;
+        int[] survivors = new int[chunks];
+        long[] lightest = new long[chunks];
+
+        while (true) {
+            for (int i = 0; i < treeCount; i++) {
+                int e = picks[i];
+                if (e >= 0 && forest.union(e >>> 1, endpoint2(e, w))) { // two trees that pick each other share an edge.
+                    chosen.set(e);
+                    chosenByWeight[weights[e]]++;
+                    treeEdges++;
+                }
+            }
+            final int before = treeCount;
+            int treeChunk = (before + chunks - 1) / chunks;
+            run(pool, chunks, chunks, (lo, hi) -> {
+                for (int c = lo; c < hi; c++) {
+                    int from = c * treeChunk, to = Math.min(before, from + treeChunk), kept = from;
+                    for (int i = from; i < to; i++) {
+                        if (forest.isRoot(trees[i])) {
+                            trees[kept++] = trees[i];
+                        }
+                    }
+                    survivors[c] = Math.max(0, kept - from);
+                }
+            });
+            final int after = treeCount = concat(trees, before, treeChunk, survivors);
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.MERGING, treeEdges, needed);
+
+            // drop the edges inside a tree, and let every tree pick its lightest outgoing edge.
+            run(pool, after, chunks, (lo, hi) -> {
+                for (int i = lo; i < hi; i++) {
+                    best.set(trees[i], NO_EDGE);
+                }
+            });
+            final int count = liveCount;
+            stats.countEdges(count);
+            int edgeChunk = (count + chunks - 1) / chunks;
+            run(pool, chunks, chunks, (lo, hi) -> {
+                for (int c = lo; c < hi; c++) {
+                    int from = c * edgeChunk, to = Math.min(count, from + edgeChunk), kept = from;
+                    long min = NO_EDGE;
+                    for (int i = from; i < to; i++) {
+                        int e = live[i];
+                        int root1 = forest.root(e >>> 1), root2 = forest.root(endpoint2(e, w));
+                        if (root1 != root2) {
+                            live[kept++] = e;
+                            long key = key(weights, e);
+                            lower(best, root1, key);
+                            lower(best, root2, key);
+                            min = Math.min(min, key);
+                        }
+                    }
+                    survivors[c] = Math.max(0, kept - from);
+                    lightest[c] = min;
+                }
+            });
+            liveCount = concat(live, count, edgeChunk, survivors);
+            if (liveCount == 0) {
+                break;
+            }
+            long min = NO_EDGE;
+            for (long key : lightest) {
+                min = Math.min(min, key);
+            }
+            if (countLighter(chosenByWeight, (int) (min >>> 31)) >= needed) {
+                break;
+            }
+            run(pool, after, chunks, (lo, hi) -> {
+                for (int i = lo; i < hi; i++) {
+                    long key = best.get(trees[i]);
+                    picks[i] = key == NO_EDGE ? -1 : (int) (key & Integer.MAX_VALUE);
+                }
+            });
+        }
+        timer.stop();
+        timer = stats.start(SegmentationStats.Phase.SORT_EDGES, w, h);
+        int[] order = kruskalOrder(chosen, treeEdges, weights);
+        timer.stop();
+        return order;
+    }
+
+    /**
+     * moves the entries each chunk kept to the front of the array.
+     * @param values (int[]): chunks of chunkSize entries, each with its kept
+     * entries at its start
+     * @param count (int): entries in the chunks
+     * @param chunkSize (int): entries per chunk
+     * @param kept (int[]): how many entries each chunk kept
+     * @return (int): the number of entries kept
+     */
+    private static int concat(int[] values, int count, int chunkSize, int[] kept) {
+        int total = 0;
+        for (int c = 0; c < kept.length && c * chunkSize < count; c++) {
+            System.arraycopy(values, c * chunkSize, values, total, kept[c]);
+            total += kept[c];
+        }
+        return total;
+    }
+
+    /**
+     * @param chosenByWeight (int[]): the number of forest edges found of each weight
+     * @param weight (int): a weight
+     * @return (int): the number of forest edges found lighter than weight
+     */
+    private static int countLighter(int[] chosenByWeight, int weight) {
+        int count = 0;
+        for (int i = 0; i < weight; i++) {
+            count += chosenByWeight[i];
+        }
+        return count;
+    }
+
+    /**
+     * puts the edges of the forest in order of weight, then of edge id.
+     * @param chosen (BitSet): the ids of the forest's edges
+     * @param treeEdges (int): how many there are
+     * @param weights (int[]): weight of each edge, indexed by edge id
+     * @return (int[]): the sorted edge ids
+     */
+    private static int[] kruskalOrder(BitSet chosen, int treeEdges, int[] weights) {
+        int[] histogram = new int[EdgeList.MAX_WEIGHT + 2];
+        for (int e = chosen.nextSetBit(0); e >= 0; e = chosen.nextSetBit(e+1)) {
+            histogram[weights[e] + 1]++;
+        }
+        for (int i = 1; i < histogram.length; i++) {
+            histogram[i] += histogram[i-1];
+        }
+        int[] order = new int[treeEdges];
+        for (int e = chosen.nextSetBit(0); e >= 0; e = chosen.nextSetBit(e+1)) {
+            order[histogram[weights[e]]++] = e;
+        }
+        return order;
+    }
+
+    /**
+     * @return (long): an edge's place in the order edges are taken: by weight, then by id
+     */
+    private static long key(int[] weights, int edge) {
+        return ((long) weights[edge] << 31) | edge;
+    }
+
+    private static int endpoint2(int edge, int w) {
+        return (edge & 1) == 0 ? (edge >>> 1) + 1 : (edge >>> 1) + w;
+    }
+
+    /**
+     * lowers best[i] to key unless it already holds something lighter.
+     */
+    private static void lower(AtomicLongArray best, int i, long key) {
+        long current = best.get(i);
+        while (key < current && !best.compareAndSet(i, current, key)) {
+            current = best.get(i);
+        }
+    }
+
+    /**
+     * runs body over 0 .. size-1 in pieces of at least size/chunks on the pool.
+     */
+    private static void run(ForkJoinPool pool, int size, int chunks, RangeBody body) {
+        int grain = Math.max(1, (size + chunks - 1) / chunks);
+        pool.invoke(new Range(body, 0, size, grain));
+    }
+
+    private interface RangeBody {
+        void run(int lo, int hi);
+    }
+
+    /**
+     * Runs a RangeBody over lo .. hi-1, splitting it in half until it is small enough.
+     */
+    private static class Range extends RecursiveAction {
+        private final RangeBody body;
+        private final int lo, hi, grain;
+
+        Range(RangeBody body, int lo, int hi, int grain) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        protected void compute() {
+            if (hi - lo <= grain) {
+                body.run(lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Range(body, lo, mid, grain), new Range(body, mid, hi, grain));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * ComponentStats.java
+ * Per-component statistics of a labelled image: area, bounding box, centroid
+ * and mean color, kept in primitive arrays indexed by component number.
+ *
+ * The statistics are gathered in the same raster pass that numbers the
+ * components, so the pixels are only read once. An engine with its own
+ * threads can instead number the components first and then gather the
+ * statistics in parallel stripes, each into its own arrays.
+ */
+
+package imagesegmenter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ComponentStats {
+    static final int FILE_RECORD_SIZE = 4 * 4 + 6 * 8; // bytes per component in a statistics file.
+
+    private int count; // number of components.
+    private int[] area, minX, minY, maxX, maxY;
+    private long[] sumX, sumY, sumR, sumG, sumB;
+
+    /**
+     * initializes an empty ComponentStats with room for some components
+     * @param capacity (int): how many components to make room for
+     */
+    ComponentStats(int capacity) {
+        capacity = Math.max(1, capacity);
+        area = new int[capacity];
+        minX = new int[capacity];
+        minY = new int[capacity];
+        maxX = new int[capacity];
+        maxY = new int[capacity];
+        sumX = new long[capacity];
+        sumY = new long[capacity];
+        sumR = new long[capacity];
+        sumG = new long[capacity];
+        sumB = new long[capacity];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+    }
+
+    /**
+     * numbers the trees of a forest over the pixelIDs in the order they are
+     * first met (like DisjointSets.label) and gathers the statistics of each
+     * tree in the same pass.
+     * @param forest (DisjointSets): forest over the pixelIDs of the image
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param unionCount (int): the number of unions that built the forest
+     * @return (LabelMap): the labels, carrying their statistics
+     */
+    static LabelMap label(DisjointSets forest, int[] pixels, int w, int h, int unionCount) {
+        int[] labels = new int[w*h];
+        Arrays.fill(labels, -1);
+        ComponentStats stats = new ComponentStats(16);
+        for (int y = 0; y < h; y++) {
+            int p = w * y;
+            for (int x = 0; x < w; x++, p++) {
+                int root = forest.find(p);
+                int k = labels[root];
+                if (k == -1) {
+                    k = labels[root] = stats.addComponent();
+                }
+                labels[p] = k;
+                stats.add(k, x, y, pixels[p]);
+            }
+        }
+        return new LabelMap(w, h, labels, stats.count, unionCount, stats);
+    }
+
+    /**
+     * numbers the trees of a forest over the pixelIDs, then gathers their
+     * statistics in parallel stripes. falls back to the single pass when
+     * per-thread arrays for every component would outweigh the image.
+     * @param pool (ForkJoinPool): the threads to run on
+     * @param forest (DisjointSets): forest over the pixelIDs of the image
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param unionCount (int): the number of unions that built the forest
+     * @return (LabelMap): the labels, carrying their statistics
+     */
+    static LabelMap label(ForkJoinPool pool, DisjointSets forest, int[] pixels, int w, int h, int unionCount) {
+        int count = w*h - unionCount; // every union removes one tree.
+        int stripes = Math.min(h, pool.getParallelism());
+        if (stripes < 2 || (long) count * stripes > (long) w * h) {
+            return label(forest, pixels, w, h, unionCount);
+        }
+        int[] labels = new int[w*h];
+        count = forest.label(labels);
+        ComponentStats stats = pool.invoke(new Stripe(labels, pixels, w, 0, h, (h + stripes - 1) / stripes, count));
+        return new LabelMap(w, h, labels, count, unionCount, stats);
+    }
+
+    /**
+     * reads the statistics file written by StreamingLabeler.
+     * @param statsFile (File): the file
+     * @return (ComponentStats): the statistics it holds
+     * @throws IOException if the file is malformed, or a component has more
+     * than 2^31 pixels, more than the arrays here hold
+     */
+    public static ComponentStats read(File statsFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)))) {
+            int count = in.readInt();
+            if (count < 0 || 4 + (long) FILE_RECORD_SIZE * count != statsFile.length()) {
+                throw new IOException("Statistics file has " + count + " components but "
+                        + statsFile.length() + " bytes: " + statsFile);
+            }
+            ComponentStats stats = new ComponentStats(count);
+            for (int k = 0; k < count; k++) {
+                stats.addComponent();
+                long area = in.readLong();
+                if (area > Integer.MAX_VALUE) {
+                    throw new IOException("Component " + k + " has " + area + " pixels: " + statsFile);
+                }
+                stats.area[k] = (int) area;
+                stats.minX[k] = in.readInt();
+                stats.minY[k] = in.readInt();
+                stats.maxX[k] = in.readInt();
+                stats.maxY[k] = in.readInt();
+                stats.sumX[k] = in.readLong();
+                stats.sumY[k] = in.readLong();
+                stats.sumR[k] = in.readLong();
+                stats.sumG[k] = in.readLong();
+                stats.sumB[k] = in.readLong();
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * makes room for one more component.
+     * @return (int): its number
+     */
+    int addComponent() {
+        if (count == area.length) {
+            int capacity = 2 * count;
+            area = Arrays.copyOf(area, capacity);
+            minX = grow(minX, capacity, Integer.MAX_VALUE);
+            minY = grow(minY, capacity, Integer.MAX_VALUE);
+            maxX = grow(maxX, capacity, -1);
+            maxY = grow(maxY, capacity, -1);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            sumR = Arrays.copyOf(sumR, capacity);
+            sumG = Arrays.copyOf(sumG, capacity);
+            sumB = Arrays.copyOf(sumB, capacity);
+        }
+        return count++;
+    }
+
+    private static int[] grow(int[] values, int capacity, int fill) {
+        int[] grown = Arrays.copyOf(values, capacity);
+        Arrays.fill(grown, values.length, capacity, fill);
+        return grown;
+    }
+
+    /**
+     * adds one pixel to a component.
+     * @param k (int): the component number
+     * @param x (int): x-coord of the pixel
+     * @param y (int): y-coord of the pixel
+     * @param rgb (int): packed RGB color of the pixel
+     */
+    void add(int k, int x, int y, int rgb) {
+        area[k]++;
+        if (x < minX[k]) { minX[k] = x; }
+        if (x > maxX[k]) { maxX[k] = x; }
+        if (y < minY[k]) { minY[k] = y; }
+        if (y > maxY[k]) { maxY[k] = y; }
+        sumX[k] += x;
+        sumY[k] += y;
+        sumR[k] += (rgb >> 16) & 0xff;
+        sumG[k] += (rgb >> 8) & 0xff;
+        sumB[k] += rgb & 0xff;
+    }
+
+    /**
+     * folds the statistics of another set of pixels over the same components into these.
+     * @param other (ComponentStats): statistics of other pixels, numbered the same way
+     */
+    void addAll(ComponentStats other) {
+        for (int k = 0; k < other.count; k++) {
+            area[k] += other.area[k];
+            minX[k] = Math.min(minX[k], other.minX[k]);
+            minY[k] = Math.min(minY[k], other.minY[k]);
+            maxX[k] = Math.max(maxX[k], other.maxX[k]);
+            maxY[k] = Math.max(maxY[k], other.maxY[k]);
+            sumX[k] += other.sumX[k];
+            sumY[k] += other.sumY[k];
+            sumR[k] += other.sumR[k];
+            sumG[k] += other.sumG[k];
+            sumB[k] += other.sumB[k];
+        }
+    }
+
+    /**
+     * @return (int): the number of components
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param k (int): a component number
+     * @return (int): the number of pixels in the component
+     */
+    public int getArea(int k) {
+        return area[k];
+    }
+
+    public int getMinX(int k) { return minX[k]; }
+    public int getMinY(int k) { return minY[k]; }
+    public int getMaxX(int k) { return maxX[k]; }
+    public int getMaxY(int k) { return maxY[k]; }
+
+    /**
+     * @param k (int): a component number
+     * @return (double): the mean x-coord of the component's pixels
+     */
+    public double getCentroidX(int k) {
+        return (double) sumX[k] / area[k];
+    }
+
+    /**
+     * @param k (int): a component number
+     * @return (double): the mean y-coord of the component's pixels
+     */
+    public double getCentroidY(int k) {
+        return (double) sumY[k] / area[k];
+    }
+
+    public double getMeanRed(int k) { return (double) sumR[k] / area[k]; }
+    public double getMeanGreen(int k) { return (double) sumG[k] / area[k]; }
+    public double getMeanBlue(int k) { return (double) sumB[k] / area[k]; }
+
+    /**
+     * @param k (int): a component number
+     * @return (int): the component's mean color, rounded and packed as RGB
+     */
+    public int getMeanColor(int k) {
+        int a = area[k];
+        int r = (int) ((sumR[k] + a/2) / a);
+        int g = (int) ((sumG[k] + a/2) / a);
+        int b = (int) ((sumB[k] + a/2) / a);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Gathers the statistics of a range of rows, splitting it in half until
+     * it is one stripe.
+     */
+    private static class Stripe extends RecursiveTask<ComponentStats> {
+        private final int[] labels, pixels;
+        private final int w, y0, y1, minRows, count;
+
+        Stripe(int[] labels, int[] pixels, int w, int y0, int y1, int minRows, int count) {
+            this.labels = labels;
+            this.pixels = pixels;
+            this.w = w;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.minRows = minRows;
+            this.count = count;
+        }
+
+        protected ComponentStats compute() {
+            if (y1 - y0 <= minRows) {
+                ComponentStats stats = new ComponentStats(count);
+                stats.count = count;
+                for (int y = y0; y < y1; y++) {
+                    int p = w * y;
+                    for (int x = 0; x < w; x++, p++) {
+                        stats.add(labels[p], x, y, pixels[p]);
+                    }
+                }
+                return stats;
+            }
+            int mid = (y0 + y1) >>> 1;
+            Stripe top = new Stripe(labels, pixels, w, y0, mid, minRows, count);
+            Stripe bottom = new Stripe(labels, pixels, w, mid, y1, minRows, count);
+            top.fork();
+            ComponentStats stats = bottom.compute();
+            stats.addAll(top.join());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * DisjointSets.java
+ * A forest of up-trees over the elements 0 .. size-1 (usually pixelIDs),
+ * kept in flat primitive arrays.
+ *
+ * find() is iterative and halves the path as it walks it, and union() links
+ * by rank, so trees stay shallow no matter what order the unions come in.
+ * The arrays are reused by reset() when the forest is big enough, so the
+ * same instance can be run over image after image without reallocating.
+ * Not thread-safe.
+ *
+ * A forest can also count its finds and the parent links they walk. Counting
+ * is off unless asked for, so that find() pays only one extra branch. The
+ * counts are only exact when one thread at a time uses the forest.
+ */
+
+package imagesegmenter;
+
+import java.util.Arrays;
+
+public class DisjointSets {
+    private int[] parent; // parent[i] == i for a root.
+    private byte[] rank; // upper bound on the height of the tree under a root.
+    private int size;
+    private boolean counting; // whether find() counts itself.
+    private long findCount, pathSteps;
+
+    /**
+     * initializes this forest with every element as its own root
+     * @param size (int): the number of elements
+     */
+    public DisjointSets(int size) {
+        parent = new int[size];
+        rank = new byte[size];
+        reset(size);
+    }
+
+    /**
+     * makes every element its own root again, growing the arrays only if the
+     * new size does not fit in them.
+     * @param size (int): the number of elements
+     */
+    public void reset(int size) {
+        if (size > parent.length) {
+            parent = new int[size];
+            rank = new byte[size];
+        } else {
+            Arrays.fill(rank, 0, size, (byte) 0);
+        }
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return (int): the number of elements in this forest
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return (int): the number of elements this forest can be reset to
+     * without growing its arrays
+     */
+    int capacity() {
+        return parent.length;
+    }
+
+    /**
+     * finds the current root for the passed element, pointing every other
+     * node on the way at its grandparent.
+     * @param id (int): the element
+     * @return (int): the root of its tree
+     */
+    public int find(int id) {
+        if (counting) {
+            return countingFind(id);
+        }
+        int[] parent = this.parent;
+        while (parent[id] != id) {
+            int grandparent = parent[parent[id]];
+            parent[id] = grandparent;
+            id = grandparent;
+        }
+        return id;
+    }
+
+    /**
+     * find(), counting the call and the links walked.
+     */
+    private int countingFind(int id) {
+        int[] parent = this.parent;
+        long steps = 0;
+        while (parent[id] != id) {
+            int grandparent = parent[parent[id]];
+            parent[id] = grandparent;
+            id = grandparent;
+            steps++;
+        }
+        findCount++;
+        pathSteps += steps;
+        return id;
+    }
+
+    /**
+     * turns the counting of finds and path steps on or off, and zeroes the counts.
+     * @param counting (boolean): whether find() should count itself
+     */
+    public void setCounting(boolean counting) {
+        this.counting = counting;
+        findCount = 0;
+        pathSteps = 0;
+    }
+
+    /**
+     * @return (long): the number of finds since counting was last set, or 0
+     * if it is off. union() makes two.
+     */
+    public long getFindCount() {
+        return findCount;
+    }
+
+    /**
+     * @return (long): the number of parent links walked by those finds
+     */
+    public long getPathSteps() {
+        return pathSteps;
+    }
+
+    /**
+     * finds the current root for the passed element without changing the
+     * forest, so many threads may call it at once as long as none is unioning.
+     * @param id (int): the element
+     * @return (int): the root of its tree
+     */
+    public int root(int id) {
+        while (parent[id] != id) {
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * @param id (int): the element
+     * @return (boolean): whether the element is the root of its tree
+     */
+    public boolean isRoot(int id) {
+        return parent[id] == id;
+    }
+
+    /**
+     * joins the trees of two elements, hanging the shallower tree under the
+     * deeper one.
+     * @param id1 (int): one element
+     * @param id2 (int): another element
+     * @return (boolean): true if they were in different trees
+     */
+    public boolean union(int id1, int id2) {
+        int root1 = find(id1);
+        int root2 = find(id2);
+        if (root1 == root2) {
+            return false;
+        }
+        link(root1, root2);
+        return true;
+    }
+
+    /**
+     * joins two distinct roots by rank.
+     * @param root1 (int): one root
+     * @param root2 (int): another root
+     * @return (int): the root of the joined tree
+     */
+    public int link(int root1, int root2) {
+        if (rank[root1] < rank[root2]) {
+            parent[root1] = root2;
+            return root2;
+        }
+        if (rank[root1] == rank[root2]) {
+            rank[root1]++;
+        }
+        parent[root2] = root1;
+        return root1;
+    }
+
+    /**
+     * numbers the trees in the order their elements are met when scanning
+     * 0 .. size-1 (first tree met = 0, second = 1, and so on) and writes the
+     * number of each element's tree into labels.
+     * @param labels (int[]): receives the tree number of every element
+     * @return (int): the number of trees
+     */
+    public int label(int[] labels) {
+        Arrays.fill(labels, 0, size, -1);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            if (labels[root] == -1) {
+                labels[root] = count++;
+            }
+            labels[i] = labels[root];
+        }
+        return count;
+    }
+}
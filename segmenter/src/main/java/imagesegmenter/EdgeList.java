@@ -0,0 +1,287 @@
+/**
+ * EdgeList.java
+ * All the edges of the weighted pixel graph of an image, kept in primitive
+ * arrays and sorted lightest first.
+ *
+ * Every pixel owns at most two edges: the one to its right neighbor and the
+ * one to the pixel below. Edge e belongs to pixel e/2 and goes right when e
+ * is even, down when e is odd, so no endpoints need to be stored. The weight
+ * of an edge is the squared RGB distance of its endpoints, an integer between
+ * 0 and MAX_WEIGHT, which lets the edges be put in order by a stable counting
+ * sort instead of a heap of Edge objects.
+ *
+ * Edges come out ordered by weight, then by endpoint1, then by endpoint2.
+ * The weights are computed a row at a time by EdgeWeights, with vector
+ * instructions when the JVM has the Vector API.
+ *
+ * A caller that will stop early, like Kruskal's algorithm once it has its
+ * regions, can say how many edges it expects to consume. Then only the
+ * lightest edges are put in place at build time, enough to cover twice that
+ * many, and the heavier weights are placed by further passes only if
+ * edgeAt reaches them, each covering at least twice as many edges as are
+ * in place. Edges past the point where the caller stops are never sorted.
+ * An EdgeList built this way must not be shared by threads.
+ */
+
+package imagesegmenter;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+public class EdgeList {
+    public static final int MAX_WEIGHT = 3 * 255 * 255; // heaviest possible squared RGB distance.
+
+    private final int w; // width of the image.
+    private final int h; // height of the image.
+    private final int[] weights; // weight of each edge, indexed by edge id.
+    private final int[] order; // ids of the edges that exist, lightest first, then a slot for edges not yet placed.
+    private final int size; // the number of edges.
+    private int[] slots; // next slot of each weight, or null once every edge is in place.
+    private int placedWeight; // the edges lighter than this are in place.
+    private int sortedEnd; // the positions of order that are filled.
+
+    private EdgeList(int w, int h, int[] weights, int[] order, int[] slots) {
+        this.w = w;
+        this.h = h;
+        this.weights = weights;
+        this.order = order;
+        this.size = order.length - 1;
+        this.slots = slots;
+    }
+
+    /**
+     * computes the weights of all the edges in the weighted pixel graph and
+     * sorts them.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (EdgeList): the sorted edges
+     */
+    public static EdgeList build(int[] pixels, int w, int h) {
+        return build(pixels, w, h, ProgressMonitor.NONE);
+    }
+
+    /**
+     * computes and sorts the edges, reporting after every row.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): receives BUILDING_EDGES progress
+     * @return (EdgeList): the sorted edges
+     * @throws CancellationException if the monitor cancels the build
+     */
+    public static EdgeList build(int[] pixels, int w, int h, ProgressMonitor monitor) {
+        return build(pixels, w, h, monitor, null);
+    }
+
+    /**
+     * computes and sorts the edges, timing the two as separate phases.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): receives BUILDING_EDGES progress
+     * @param stats (SegmentationStats): receives the BUILD_EDGES and SORT_EDGES times, or null
+     * @return (EdgeList): the sorted edges
+     * @throws CancellationException if the monitor cancels the build
+     */
+    static EdgeList build(int[] pixels, int w, int h, ProgressMonitor monitor, SegmentationStats stats) {
+        return build(pixels, w, h, monitor, stats, edgeCount(w, h));
+    }
+
+    /**
+     * computes the edges and sorts the lightest of them, leaving the rest to
+     * be put in order when edgeAt reaches them. SORT_EDGES then times only
+     * the edges sorted up front; the later passes fall in the caller's phase.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): receives BUILDING_EDGES progress
+     * @param stats (SegmentationStats): receives the BUILD_EDGES and SORT_EDGES times, or null
+     * @param expected (int): the number of edges the caller expects to consume, at least
+     * @return (EdgeList): the partly sorted edges
+     * @throws CancellationException if the monitor cancels the build
+     */
+    static EdgeList build(int[] pixels, int w, int h, ProgressMonitor monitor, SegmentationStats stats, int expected) {
+        if ((long) w * h > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Image is too large for an edge list: " + w + "x" + h);
+        }
+        int n = w * h;
+        int[] weights = new int[2 * n];
+        int[] histogram = new int[MAX_WEIGHT + 2];
+        PhaseTimer timer = PhaseTimer.start(stats, SegmentationStats.Phase.BUILD_EDGES, w, h);
+        int[] right = new int[w], down = new int[w]; // weights of one row's edges, by x.
+        for (int y = 0; y < h; y++) {
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.BUILDING_EDGES, y, 2L * h);
+            int p = w * y;
+            EdgeWeights.weigh(pixels, p, pixels, p+1, right, 0, w-1);
+            if (y+1 < h) {
+                EdgeWeights.weigh(pixels, p, pixels, p+w, down, 0, w);
+            }
+            for (int x = 0; x < w; x++, p++) {
+                if (x+1 < w) {
+                    // edge to the right
+                    weights[2*p] = right[x];
+                    histogram[right[x] + 1]++;
+                }
+                if (y+1 < h) {
+                    // edge to the pixel below
+                    weights[2*p+1] = down[x];
+                    histogram[down[x] + 1]++;
+                }
+            }
+        }
+        timer.stop();
+        timer = PhaseTimer.start(stats, SegmentationStats.Phase.SORT_EDGES, w, h);
+        // turn the counts into the first slot of each weight.
+        for (int i = 1; i < histogram.length; i++) {
+            histogram[i] += histogram[i-1];
+        }
+        int[] order = new int[edgeCount(w, h) + 1];
+        EdgeList edges = new EdgeList(w, h, weights, order, histogram);
+        edges.placeThrough(Math.max(2 * expected, edges.size/16), monitor);
+        timer.stop();
+        return edges;
+    }
+
+    /**
+     * puts in place every edge lighter than the first weight whose slots
+     * start at or past target, with one pass over the edges in id order.
+     * A pass that would leave fewer than a quarter of the edges out places
+     * them all, since it then skips no scattering worth its comparisons.
+     * @param target (int): the number of positions of order wanted filled
+     * @param monitor (ProgressMonitor): receives BUILDING_EDGES progress
+     */
+    private void placeThrough(int target, ProgressMonitor monitor) {
+        if (target > size - size/4) {
+            target = size; // a nearly full pass costs more than a full one.
+        }
+        int lo = placedWeight, hi = lo;
+        while (slots[hi] < target) {
+            hi++;
+        }
+        int end = slots[hi];
+        int[] weights = this.weights, order = this.order, slots = this.slots;
+        boolean all = lo == 0 && end == size;
+        int skipped = size; // where the edges outside [lo, hi) are written, so the loop does not branch on them.
+        for (int y = 0; y < h; y++) {
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.BUILDING_EDGES, h + y, 2L * h);
+            int p = w * y;
+            if (all) {
+                for (int x = 0; x < w; x++, p++) {
+                    if (x+1 < w) {
+                        order[slots[weights[2*p]]++] = 2*p;
+                    }
+                    if (y+1 < h) {
+                        order[slots[weights[2*p+1]]++] = 2*p+1;
+                    }
+                }
+                continue;
+            }
+            for (int x = 0; x < w; x++, p++) {
+                if (x+1 < w) {
+                    int weight = weights[2*p], slot = slots[weight];
+                    int in = ((weight - lo | hi - 1 - weight) >>> 31) ^ 1; // 1 when lo <= weight < hi
+                    order[slot + (in - 1 & skipped - slot)] = 2*p;
+                    slots[weight] = slot + in;
+                }
+                if (y+1 < h) {
+                    int weight = weights[2*p+1], slot = slots[weight];
+                    int in = ((weight - lo | hi - 1 - weight) >>> 31) ^ 1;
+                    order[slot + (in - 1 & skipped - slot)] = 2*p+1;
+                    slots[weight] = slot + in;
+                }
+            }
+        }
+        placedWeight = hi;
+        sortedEnd = end;
+        if (end == size) {
+            this.slots = null;
+        }
+    }
+
+    /**
+     * computes the squared euclidean distance between two colors.
+     * @param rgb1 (int): one packed RGB color
+     * @param rgb2 (int): another packed RGB color
+     * @return (int): the distance, between 0 and MAX_WEIGHT
+     */
+    public static int weight(int rgb1, int rgb2) {
+        int dr = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+        int dg = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+        int db = (rgb1 & 0xff) - (rgb2 & 0xff);
+        return dr*dr + dg*dg + db*db;
+    }
+
+    /**
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (int): the number of edges in the pixel graph of such an image
+     */
+    public static int edgeCount(int w, int h) {
+        return (w-1) * h + w * (h-1);
+    }
+
+    /**
+     * @return (int): the number of edges
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i (int): position in the sorted order
+     * @return (int): id of the i-th lightest edge
+     */
+    public int edgeAt(int i) {
+        if (i >= sortedEnd) {
+            Objects.checkIndex(i, size);
+            placeThrough(Math.max(i + 1, 2 * sortedEnd), ProgressMonitor.NONE);
+        }
+        return order[i];
+    }
+
+    /**
+     * @return (int): the number of edges put in order so far
+     */
+    public int getSortedCount() {
+        return sortedEnd;
+    }
+
+    /**
+     * @param edge (int): id of an edge
+     * @return (int): its weight
+     */
+    public int weight(int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * @param edge (int): id of an edge
+     * @return (int): the pixelID of endpoint1
+     */
+    public int endpoint1(int edge) {
+        return edge >>> 1;
+    }
+
+    /**
+     * @param edge (int): id of an edge
+     * @return (int): the pixelID of endpoint2
+     */
+    public int endpoint2(int edge) {
+        return (edge & 1) == 0 ? (edge >>> 1) + 1 : (edge >>> 1) + w;
+    }
+
+    /**
+     * @return (int): width of the image
+     */
+    public int getWidth() {
+        return w;
+    }
+
+    /**
+     * @return (int): height of the image
+     */
+    public int getHeight() {
+        return h;
+    }
+}
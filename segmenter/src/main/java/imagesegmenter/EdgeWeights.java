@@ -0,0 +1,77 @@
+/**
+ * EdgeWeights.java
+ * Weighs edges of the pixel graph a row at a time: given two runs of packed
+ * RGB pixels, writes the squared RGB distance of each pair (the same value as
+ * EdgeList.weight). Right edges pair a row with itself shifted by one pixel;
+ * down edges pair a row with the row below.
+ *
+ * When the JVM was started with --add-modules jdk.incubator.vector the work
+ * is done by VectorEdgeWeights, which weighs a whole vector of pairs per
+ * instruction; otherwise, or with -Dimagesegmenter.vector=false, by a plain
+ * loop. Both give exactly the same weights.
+ */
+
+package imagesegmenter;
+
+class EdgeWeights {
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * A way of weighing runs of pixel pairs.
+     */
+    interface Kernel {
+        /**
+         * sets out[outOffset + i] to the weight of a[aOffset + i] and
+         * b[bOffset + i], for i = 0 .. count-1.
+         */
+        void weigh(int[] a, int aOffset, int[] b, int bOffset, int[] out, int outOffset, int count);
+    }
+
+    static final Kernel SCALAR = (a, aOffset, b, bOffset, out, outOffset, count) -> {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = EdgeList.weight(a[aOffset + i], b[bOffset + i]);
+        }
+    };
+
+    static final Kernel KERNEL = load();
+
+    private EdgeWeights() {
+    }
+
+    /**
+     * @return (Kernel): the vector kernel if its module is there and it is
+     * not turned off, else the scalar one
+     */
+    private static Kernel load() {
+        if (!Boolean.parseBoolean(System.getProperty("imagesegmenter.vector", "true"))
+                || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (Kernel) Class.forName("imagesegmenter.VectorEdgeWeights").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * weighs count pixel pairs with the best kernel available.
+     * @param a (int[]): packed RGB pixels holding the first endpoints
+     * @param aOffset (int): index of the first pair's first endpoint
+     * @param b (int[]): packed RGB pixels holding the second endpoints
+     * @param bOffset (int): index of the first pair's second endpoint
+     * @param out (int[]): receives the weights
+     * @param outOffset (int): index in out of the first weight
+     * @param count (int): the number of pairs
+     */
+    static void weigh(int[] a, int aOffset, int[] b, int bOffset, int[] out, int outOffset, int count) {
+        KERNEL.weigh(a, aOffset, b, bOffset, out, outOffset, count);
+    }
+
+    /**
+     * @return (boolean): whether edges are being weighed with the vector kernel
+     */
+    static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * FrameSequence.java
+ * Labels the frames of a video or time-lapse one after another, redoing only
+ * the parts of each frame that changed since the one before.
+ *
+ * Every frame is compared with the previous one in TILE x TILE tiles.
+ *
+ * In connected-components mode each tile keeps its own components, found by
+ * a union-find over just its pixels, and only changed tiles are labelled
+ * again. The tiles' components are then stitched across the tile seams by a
+ * union-find over components rather than pixels. The result is exactly what
+ * SegmentationEngine.connectedComponents gives, numbered the same way.
+ *
+ * In segmentation mode the first frame, and every keyframeInterval-th frame
+ * after it, is segmented in full. In between, pixels more than BORDER pixels
+ * from every changed tile keep their region from the frame before. The rest
+ * are regrown: Kruskal's algorithm runs over the edges that touch them,
+ * lightest first, with one node per region standing in for its unchanged
+ * pixels, and never joins two regions. So each regrown pixel joins the region
+ * it reaches by the lightest path, the number of regions stays the same, and
+ * regions keep their numbers from frame to frame. This is an approximation
+ * of segmenting the frame from scratch, so a frame with most of its tiles
+ * changed is segmented in full instead.
+ *
+ * A FrameSequence is not thread-safe; run one sequence per thread.
+ */
+
+package imagesegmenter;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+public class FrameSequence {
+    public static final int TILE = 64; // width and height of the tiles frames are compared in.
+    static final int BORDER = 2; // how far around a changed tile pixels are regrown.
+
+    private final SegmentationEngine engine;
+    private final int w, h;
+    private final int nRegions; // 0 in connected-components mode.
+    private final int keyframeInterval;
+    private final int tilesAcross, tilesDown;
+
+    private int[] previous; // the last frame, or null before the first.
+    private int frameCount;
+    private int changedTiles; // tiles that differed in the last frame.
+    private final boolean[] changed; // per tile, for the last frame.
+
+    // Connected-components mode.
+    private int[] localLabels; // per pixel, the number of its component within its tile.
+    private int[] tileComponents; // per tile, the number of components within it.
+    private DisjointSets tileForest; // scratch, over the pixels of one tile.
+    private int[] tileScratch;
+    private DisjointSets seamForest; // scratch, over the components of all tiles.
+    private int[] treeNumber = new int[0], firstNumber = new int[0]; // scratch, per component.
+
+    // Segmentation mode.
+    private int[] regions; // per pixel, its region in the last frame.
+    private int regionCount;
+    private int[] area; // per region, its number of pixels.
+    private int[] node; // per pixel being regrown, its node in the regrowth forest; -1 for the rest.
+    private int free; // the number of pixels being regrown.
+
+    private FrameSequence(SegmentationEngine engine, int w, int h, int nRegions, int keyframeInterval) {
+        if (w <= 0 || h <= 0) {
+            throw new IllegalArgumentException("Image dimensions must be positive: " + w + "x" + h);
+        }
+        this.engine = engine;
+        this.w = w;
+        this.h = h;
+        this.nRegions = nRegions;
+        this.keyframeInterval = keyframeInterval;
+        tilesAcross = (w + TILE - 1) / TILE;
+        tilesDown = (h + TILE - 1) / TILE;
+        changed = new boolean[tilesAcross * tilesDown];
+    }
+
+    /**
+     * starts a sequence that finds the connected components of every frame.
+     * @param engine (SegmentationEngine): the engine whose stats to add to
+     * @param w (int): width of every frame
+     * @param h (int): height of every frame
+     * @return (FrameSequence): the sequence, before its first frame
+     */
+    public static FrameSequence components(SegmentationEngine engine, int w, int h) {
+        FrameSequence sequence = new FrameSequence(engine, w, h, 0, 0);
+        sequence.localLabels = new int[w*h];
+        sequence.tileComponents = new int[sequence.changed.length];
+        sequence.tileForest = new DisjointSets(TILE * TILE);
+        sequence.tileScratch = new int[TILE * TILE];
+        return sequence;
+    }
+
+    /**
+     * starts a sequence that segments every frame into nRegions regions.
+     * @param engine (SegmentationEngine): segments the keyframes
+     * @param w (int): width of every frame
+     * @param h (int): height of every frame
+     * @param nRegions (int): the number of regions in every frame
+     * @param keyframeInterval (int): segment every this many frames in full,
+     * to keep the regrown regions from drifting; 1 segments every frame in full
+     * @return (FrameSequence): the sequence, before its first frame
+     */
+    public static FrameSequence segmentation(SegmentationEngine engine, int w, int h, int nRegions,
+                                             int keyframeInterval) {
+        if (nRegions < 1 || keyframeInterval < 1) {
+            throw new IllegalArgumentException("Need at least 1 region and a keyframe interval of at least 1: "
+                    + nRegions + ", " + keyframeInterval);
+        }
+        return new FrameSequence(engine, w, h, nRegions, keyframeInterval);
+    }
+
+    /**
+     * labels the next frame of the sequence.
+     * @param frame (int[]): packed RGB pixels, row by row; read, not kept
+     * @return (LabelMap): the component or region of every pixel
+     */
+    public LabelMap next(int[] frame) {
+        return next(frame, ProgressMonitor.NONE);
+    }
+
+    /**
+     * labels the next frame of the sequence. a canceled frame is not part of
+     * the sequence: the next call compares with the frame before it.
+     * @param frame (int[]): packed RGB pixels, row by row; read, not kept
+     * @param monitor (ProgressMonitor): told the tile rows compared; may cancel the call
+     * @return (LabelMap): the component or region of every pixel
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public LabelMap next(int[] frame, ProgressMonitor monitor) {
+        if (frame.length < (long) w * h) {
+            throw new IllegalArgumentException("Pixel buffer holds " + frame.length
+                    + " pixels but the frames are " + w + "x" + h);
+        }
+        findChangedTiles(frame, monitor);
+        LabelMap labelled;
+        if (nRegions == 0) {
+            labelled = nextComponents(frame);
+        } else if (regions == null || frameCount % keyframeInterval == 0 || 2 * changedTiles > changed.length) {
+            labelled = keyframe(frame, monitor);
+        } else {
+            labelled = regrow(frame, monitor);
+        }
+        if (previous == null) {
+            previous = new int[w*h];
+        }
+        for (int t = 0; t < changed.length; t++) {
+            if (changed[t]) {
+                int x0 = TILE * (t % tilesAcross), x1 = Math.min(w, x0 + TILE);
+                for (int y = TILE * (t / tilesAcross), y1 = Math.min(h, y + TILE); y < y1; y++) {
+                    System.arraycopy(frame, w*y + x0, previous, w*y + x0, x1 - x0);
+                }
+            }
+        }
+        frameCount++;
+        return labelled;
+    }
+
+    /**
+     * marks the tiles in which frame differs from the previous frame; all of
+     * them for the first frame.
+     */
+    private void findChangedTiles(int[] frame, ProgressMonitor monitor) {
+        changedTiles = 0;
+        for (int ty = 0; ty < tilesDown; ty++) {
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.SCANNING, ty, tilesDown);
+            int y0 = TILE * ty, y1 = Math.min(h, y0 + TILE);
+            for (int tx = 0; tx < tilesAcross; tx++) {
+                int x0 = TILE * tx, x1 = Math.min(w, x0 + TILE);
+                boolean differs = previous == null;
+                for (int y = y0; !differs && y < y1; y++) {
+                    differs = Arrays.mismatch(frame, w*y + x0, w*y + x1, previous, w*y + x0, w*y + x1) >= 0;
+                }
+                changed[tilesAcross * ty + tx] = differs;
+                if (differs) {
+                    changedTiles++;
+                }
+            }
+        }
+        monitor.progress(ProgressMonitor.Stage.SCANNING, tilesDown, tilesDown);
+    }
+
+    /**
+     * labels the components of the changed tiles, then stitches every tile's
+     * components together across the seams.
+     */
+    private LabelMap nextComponents(int[] frame) {
+        SegmentationStats stats = engine.getStats();
+        PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+        for (int t = 0; t < changed.length; t++) {
+            if (changed[t]) {
+                labelTile(frame, t);
+            }
+        }
+        int[] base = new int[changed.length + 1]; // the first component number of each tile.
+        for (int t = 0; t < changed.length; t++) {
+            base[t+1] = base[t] + tileComponents[t];
+        }
+        int components = base[changed.length];
+        if (seamForest == null) {
+            seamForest = new DisjointSets(components);
+        }
+        DisjointSets forest = seamForest;
+        forest.reset(components);
+        forest.setCounting(stats.isCountingFinds());
+        int unions = 0;
+        for (int tx = 1; tx < tilesAcross; tx++) { // seams between side-by-side tiles.
+            int x = TILE * tx;
+            for (int y = 0; y < h; y++) {
+                int p = w*y + x;
+                if (frame[p-1] == frame[p]
+                        && forest.union(base[tileOf(x-1, y)] + localLabels[p-1], base[tileOf(x, y)] + localLabels[p])) {
+                    unions++;
+                }
+            }
+        }
+        for (int ty = 1; ty < tilesDown; ty++) { // seams between stacked tiles.
+            int y = TILE * ty;
+            for (int x = 0; x < w; x++) {
+                int p = w*y + x;
+                if (frame[p-w] == frame[p]
+                        && forest.union(base[tileOf(x, y-1)] + localLabels[p-w], base[tileOf(x, y)] + localLabels[p])) {
+                    unions++;
+                }
+            }
+        }
+        timer.stop();
+
+        // Number the stitched components in the order a raster scan meets them.
+        timer = stats.start(SegmentationStats.Phase.RELABEL, w, h);
+        if (treeNumber.length < components) {
+            treeNumber = new int[components];
+            firstNumber = new int[components];
+        }
+        int[] number = treeNumber, first = firstNumber;
+        int trees = forest.label(number); // now the number of each component's tree, in component order.
+        Arrays.fill(first, 0, trees, -1);
+        int[] labels = new int[w*h];
+        int count = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x0 = 0; x0 < w; x0 += TILE) {
+                int b = base[tileOf(x0, y)];
+                for (int p = w*y + x0, end = w*y + Math.min(w, x0 + TILE); p < end; p++) {
+                    int tree = number[b + localLabels[p]];
+                    if (first[tree] == -1) {
+                        first[tree] = count++;
+                    }
+                    labels[p] = first[tree];
+                }
+            }
+        }
+        timer.stop();
+        stats.recordCall("sequenceComponents", w, h, count, unions, forest);
+        return new LabelMap(w, h, labels, count, w*h - count);
+    }
+
+    /**
+     * finds the components within one tile, numbered in the order a raster
+     * scan of the tile meets them.
+     */
+    private void labelTile(int[] frame, int t) {
+        int x0 = TILE * (t % tilesAcross), y0 = TILE * (t / tilesAcross);
+        int tw = Math.min(w, x0 + TILE) - x0, th = Math.min(h, y0 + TILE) - y0;
+        tileForest.reset(tw * th);
+        for (int y = 0; y < th; y++) {
+            int p = w * (y0 + y) + x0;
+            for (int x = 0; x < tw; x++, p++) {
+                int color = frame[p];
+                if (x+1 < tw && color == frame[p+1]) {
+                    tileForest.union(tw*y + x, tw*y + x+1);
+                }
+                if (y+1 < th && color == frame[p+w]) {
+                    tileForest.union(tw*y + x, tw*(y+1) + x);
+                }
+            }
+        }
+        tileComponents[t] = tileForest.label(tileScratch);
+        for (int y = 0; y < th; y++) {
+            System.arraycopy(tileScratch, tw*y, localLabels, w * (y0 + y) + x0, tw);
+        }
+    }
+
+    private int tileOf(int x, int y) {
+        return tilesAcross * (y / TILE) + x / TILE;
+    }
+
+    /**
+     * segments the frame in full and keeps its regions for the next frame.
+     */
+    private LabelMap keyframe(int[] frame, ProgressMonitor monitor) {
+        LabelMap labelled = engine.segment(frame, w, h, nRegions, false, monitor);
+        regions = labelled.getLabels().clone();
+        regionCount = labelled.getComponentCount();
+        area = new int[regionCount];
+        for (int p = 0; p < w*h; p++) {
+            area[regions[p]]++;
+        }
+        return labelled;
+    }
+
+    /**
+     * regrows the pixels in and around the changed tiles into the regions of
+     * the previous frame.
+     */
+    private LabelMap regrow(int[] frame, ProgressMonitor monitor) {
+        SegmentationStats stats = engine.getStats();
+        PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+        if (node == null) {
+            node = new int[w*h];
+            Arrays.fill(node, -1);
+        }
+
+        // Number the regrown pixels; each region then gets one node after them.
+        int[] pixelOf = new int[changedTiles * (TILE + 2*BORDER) * (TILE + 2*BORDER)];
+        int[] freeArea = new int[regionCount];
+        free = 0;
+        for (int t = 0; t < changed.length; t++) {
+            if (changed[t]) {
+                int x0 = Math.max(0, TILE * (t % tilesAcross) - BORDER);
+                int x1 = Math.min(w, TILE * (t % tilesAcross) + TILE + BORDER);
+                int y1 = Math.min(h, TILE * (t / tilesAcross) + TILE + BORDER);
+                for (int y = Math.max(0, TILE * (t / tilesAcross) - BORDER); y < y1; y++) {
+                    for (int p = w*y + x0; p < w*y + x1; p++) {
+                        if (node[p] == -1) {
+                            node[p] = free;
+                            pixelOf[free++] = p;
+                            freeArea[regions[p]]++;
+                        }
+                    }
+                }
+            }
+        }
+        pixelOf = Arrays.copyOf(pixelOf, free);
+        DisjointSets forest;
+        int unions = 0;
+        try {
+            forest = new DisjointSets(free + regionCount);
+            forest.setCounting(stats.isCountingFinds());
+            int[] rootRegion = new int[free + regionCount]; // region of each anchored root, -1 for free ones.
+            Arrays.fill(rootRegion, 0, free, -1);
+            for (int k = 0; k < regionCount; k++) {
+                rootRegion[free + k] = k;
+            }
+            // A region with no pixels left outside the regrown area keeps its first
+            // regrown pixel, so that no region disappears.
+            for (int i = 0; i < free; i++) {
+                int k = regions[pixelOf[i]];
+                if (freeArea[k] == area[k]) {
+                    freeArea[k] = -1; // anchored now.
+                    forest.union(free + k, i);
+                    rootRegion[forest.find(i)] = k;
+                    unions++;
+                }
+            }
+
+            int[] edges = regrowthEdges(frame, pixelOf);
+            for (int i = 0; i < edges.length; i++) {
+                if (i % (1 << 16) == 0) {
+                    ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.REFINING, i, edges.length);
+                }
+                int e = edges[i];
+                int p = e >>> 1, q = (e & 1) == 0 ? p+1 : p+w;
+                int root1 = forest.find(nodeOf(p));
+                int root2 = forest.find(nodeOf(q));
+                if (root1 == root2 || (rootRegion[root1] >= 0 && rootRegion[root2] >= 0)) {
+                    continue;
+                }
+                int k = Math.max(rootRegion[root1], rootRegion[root2]);
+                rootRegion[forest.link(root1, root2)] = k;
+                unions++;
+            }
+            monitor.progress(ProgressMonitor.Stage.REFINING, edges.length, edges.length);
+            stats.countEdges(edges.length);
+
+            for (int i = 0; i < free; i++) {
+                int p = pixelOf[i];
+                int k = rootRegion[forest.find(i)];
+                area[regions[p]]--;
+                area[k]++;
+                regions[p] = k;
+            }
+        } finally { // a canceled frame must leave no pixel marked as regrown.
+            for (int p : pixelOf) {
+                node[p] = -1;
+            }
+        }
+        timer.stop();
+        stats.recordCall("sequenceSegmentation", w, h, regionCount, unions, forest);
+        return new LabelMap(w, h, regions.clone(), regionCount, w*h - regionCount);
+    }
+
+    /**
+     * @return (int): the node of a pixel in the regrowth forest: its own if it
+     * is regrown, else its region's
+     */
+    private int nodeOf(int p) {
+        return node[p] >= 0 ? node[p] : free + regions[p];
+    }
+
+    /**
+     * collects the edges with at least one regrown endpoint, lightest first
+     * (stable counting sort on the weights, as in EdgeList).
+     * @return (int[]): the ids of the edges
+     */
+    private int[] regrowthEdges(int[] frame, int[] pixelOf) {
+        int[] ids = new int[4 * pixelOf.length];
+        int[] weights = new int[ids.length];
+        int n = 0;
+        for (int p : pixelOf) {
+            int x = p % w, y = p / w;
+            if (x > 0 && node[p-1] == -1) {
+                ids[n] = 2*(p-1);
+                weights[n++] = EdgeList.weight(frame[p-1], frame[p]);
+            }
+            if (y > 0 && node[p-w] == -1) {
+                ids[n] = 2*(p-w) + 1;
+                weights[n++] = EdgeList.weight(frame[p-w], frame[p]);
+            }
+            if (x+1 < w) {
+                ids[n] = 2*p;
+                weights[n++] = EdgeList.weight(frame[p], frame[p+1]);
+            }
+            if (y+1 < h) {
+                ids[n] = 2*p + 1;
+                weights[n++] = EdgeList.weight(frame[p], frame[p+w]);
+            }
+        }
+        int[] histogram = new int[EdgeList.MAX_WEIGHT + 2];
+        for (int i = 0; i < n; i++) {
+            histogram[weights[i] + 1]++;
+        }
+        for (int i = 1; i < histogram.length; i++) {
+            histogram[i] += histogram[i-1];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[histogram[weights[i]]++] = ids[i];
+        }
+        return order;
+    }
+
+    /**
+     * @return (int): the number of frames labelled so far
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return (int): the number of tiles each frame is compared in
+     */
+    public int getTileCount() {
+        return changed.length;
+    }
+
+    /**
+     * @return (int): the number of tiles that differed from the frame before
+     * in the last frame; all of them for the first
+     */
+    public int getChangedTileCount() {
+        return changedTiles;
+    }
+}
@@ -0,0 +1,1112 @@
+/**
+ * ImageComponents.java
+ * A5 solution by Graham Kelly (grahamtk) 
+ * based on starter code by S. Tanimoto
+ * Implemented Extra Credit
+ * 
+ * CSE 373, University of Washington, Winter 2016.
+ * 
+ */ 
+
+package imagesegmenter;
+
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ByteLookupTable;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.LookupOp;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.imageio.ImageIO;
+import javax.swing.ButtonGroup;
+import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JProgressBar;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JSlider;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+public class ImageComponents extends JFrame implements ActionListener {
+    public static ImageComponents appInstance; // Used in main().
+
+    String startingImage = "gettysburg-address-p1.png";
+    BufferedImage biTemp, biWorking, biFiltered; // These hold arrays of pixels.
+    int[] workingPixels; // The array behind biWorking, row by row. Read and written directly.
+    LabelMap currentLabels; // The components behind the current coloring, if any.
+    RunLabelMap currentRuns; // The same, when they were found by runs and not yet expanded.
+    RegionGraph currentGraph; // The regions of the current segmentation, for merging by clicks; or null.
+    int selectedRegion = -1; // The region clicked first, waiting for a neighbor to merge with.
+    int pendingCut = -1; // The region count the slider was set to while a cut ran, or -1.
+    Graphics gOrig, gWorking; // Used to access the drawImage method.
+    int w; // width of the current image.
+    int h; // height of the current image.
+
+    SegmentationEngine engine = new SegmentationEngine(Runtime.getRuntime().availableProcessors()); // Does the actual analysis, off of any UI state.
+    
+    TiledImageView imageView; // Where the image will be painted, a tile at a time.
+    JScrollPane imageScroller; // Scrolls imageView when it is bigger than the window.
+    JPanel statusPanel; // Progress of the running task, and a button to cancel it.
+    JLabel statusLabel;
+    JProgressBar progressBar;
+    JButton cancelButton;
+    Task<?> currentTask; // The task working on the image, or null.
+    JPopupMenu popup;
+    JMenuBar menuBar;
+    JMenu fileMenu, viewMenu, imageOpMenu, ccMenu, helpMenu;
+    JMenuItem loadImageItem, sequenceItem, saveAsItem, saveLabelsItem, exitItem;
+    JMenuItem zoomInItem, zoomOutItem, actualSizeItem, fitItem;
+    JMenuItem lowPassItem, highPassItem, photoNegItem, RGBThreshItem, blurThreshItem;
+
+    JMenuItem CCItem1, CCItem2, CCItem3, undoMergeItem;
+    JCheckBoxMenuItem boruvkaItem, runsItem, countFindsItem;
+    JMenu pyramidMenu; // How many times to halve the image before segmenting it.
+    JRadioButtonMenuItem[] pyramidItems;
+    JMenuItem aboutItem, helpItem, statsItem;
+    
+    JFileChooser fileChooser; // For loading and saving images.
+    
+    // Some image manipulation data definitions that won't change...
+    static LookupOp PHOTONEG_OP, RGBTHRESH_OP;
+    static ConvolveOp LOWPASS_OP, HIGHPASS_OP;
+    
+    static final int MAX_SLIDER_REGIONS = 1000; // Upper end of the region-count slider.
+    static final int RECOLOR_BAND_PIXELS = 1 << 18; // Pixels recolored between progressive repaints.
+    static final int MAX_PYRAMID_LEVELS = 4; // Most halvings offered for coarse-to-fine segmentation.
+    static final int SEQUENCE_KEYFRAME_INTERVAL = 30; // Frames of a sequence between full segmentations.
+    
+    public static final float[] SHARPENING_KERNEL = { // sharpening filter kernel
+        0.f, -1.f,  0.f,
+       -1.f,  5.f, -1.f,
+        0.f, -1.f,  0.f
+    };
+
+    public static final float[] BLURRING_KERNEL = {
+        0.1f, 0.1f, 0.1f,    // low-pass filter kernel
+        0.1f, 0.2f, 0.1f,
+        0.1f, 0.1f, 0.1f
+    };
+    
+    /**
+     * Initialize the image operators, if this is the first call. Needs no
+     * window, so the ops can also be used headless.
+     */
+    static void initializeImageOps() {
+        if (PHOTONEG_OP==null) {
+            byte[] lut = new byte[256];
+            for (int j=0; j<256; j++) {
+                lut[j] = (byte)(256-j); 
+            }
+            ByteLookupTable blut = new ByteLookupTable(0, lut); 
+            PHOTONEG_OP = new LookupOp(blut, null);
+        }
+        if (RGBTHRESH_OP==null) {
+            byte[] lut = new byte[256];
+            for (int j=0; j<256; j++) {
+                lut[j] = (byte)(j < 128 ? 0: 200);
+            }
+            ByteLookupTable blut = new ByteLookupTable(0, lut); 
+            RGBTHRESH_OP = new LookupOp(blut, null);
+        }
+        if (LOWPASS_OP==null) {
+            float[] data = BLURRING_KERNEL;
+            LOWPASS_OP = new ConvolveOp(new Kernel(3, 3, data),
+                                        ConvolveOp.EDGE_NO_OP,
+                                        null);
+        }
+        if (HIGHPASS_OP==null) {
+            float[] data = SHARPENING_KERNEL;
+            HIGHPASS_OP = new ConvolveOp(new Kernel(3, 3, data),
+                                        ConvolveOp.EDGE_NO_OP,
+                                        null);
+        }
+    }
+    
+    public ImageComponents() { // Constructor for the application.
+        setTitle("Image Analyzer"); 
+        addWindowListener(new WindowAdapter() { // Handle any window close-box clicks.
+            public void windowClosing(WindowEvent e) {System.exit(0);}
+        });
+
+        // Create the view of the current image, which paints only the tiles
+        // that show, and put it in a scroll pane for images bigger than the window.
+        imageView = new TiledImageView();
+        imageScroller = new JScrollPane(imageView);
+        imageView.addMouseListener(new MouseAdapter() { // Clicks on two neighboring regions merge them.
+            public void mouseClicked(MouseEvent e) { regionClicked(imageView.toImage(e.getX()), imageView.toImage(e.getY())); }
+        });
+        imageView.addMouseWheelListener(e -> { // Ctrl+wheel zooms about the pointer; the plain wheel scrolls.
+            if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+                imageView.setZoom(imageView.getZoom() - (e.getWheelRotation() > 0 ? 1 : e.getWheelRotation() < 0 ? -1 : 0), e.getPoint());
+            } else {
+                imageScroller.dispatchEvent(SwingUtilities.convertMouseEvent(imageView, e, imageScroller));
+            }
+        });
+        add("Center", imageScroller); // Put it smack dab in the middle of the JFrame.
+
+        // Create the status bar along the bottom, for long-running operations.
+        statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        progressBar = new JProgressBar(0, 100);
+        statusLabel = new JLabel("Ready.");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> { if (currentTask != null) currentTask.requestCancel(); });
+        statusPanel.add(progressBar);
+        statusPanel.add(cancelButton);
+        statusPanel.add(statusLabel);
+        add("South", statusPanel);
+
+        // Create standard menu bar
+        menuBar = new JMenuBar();
+        setJMenuBar(menuBar);
+        fileMenu = new JMenu("File");
+        viewMenu = new JMenu("View");
+        imageOpMenu = new JMenu("Image Operations");
+        ccMenu = new JMenu("Connected Components");
+        helpMenu = new JMenu("Help");
+        menuBar.add(fileMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(imageOpMenu);
+        menuBar.add(ccMenu);
+        menuBar.add(helpMenu);
+
+        // Create the File menu's menu items.
+        loadImageItem = new JMenuItem("Load image...");
+        loadImageItem.addActionListener(this);
+        fileMenu.add(loadImageItem);
+        sequenceItem = new JMenuItem("Segment image sequence...");
+        sequenceItem.addActionListener(this);
+        fileMenu.add(sequenceItem);
+        saveAsItem = new JMenuItem("Save as full-color PNG");
+        saveAsItem.addActionListener(this);
+        fileMenu.add(saveAsItem);
+        saveLabelsItem = new JMenuItem("Save component labels as label map");
+        saveLabelsItem.addActionListener(this);
+        fileMenu.add(saveLabelsItem);
+        exitItem = new JMenuItem("Quit");
+        exitItem.addActionListener(this);
+        fileMenu.add(exitItem);
+
+        // Create the View menu's items.
+        zoomInItem = new JMenuItem("Zoom in");
+        zoomInItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, InputEvent.CTRL_DOWN_MASK));
+        zoomInItem.addActionListener(this);
+        viewMenu.add(zoomInItem);
+        zoomOutItem = new JMenuItem("Zoom out");
+        zoomOutItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, InputEvent.CTRL_DOWN_MASK));
+        zoomOutItem.addActionListener(this);
+        viewMenu.add(zoomOutItem);
+        actualSizeItem = new JMenuItem("Actual size");
+        actualSizeItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, InputEvent.CTRL_DOWN_MASK));
+        actualSizeItem.addActionListener(this);
+        viewMenu.add(actualSizeItem);
+        fitItem = new JMenuItem("Fit in window");
+        fitItem.addActionListener(this);
+        viewMenu.add(fitItem);
+
+        // Create the Image Operation menu items.
+        lowPassItem = new JMenuItem("Convolve with blurring kernel");
+        lowPassItem.addActionListener(this);
+        imageOpMenu.add(lowPassItem);
+        highPassItem = new JMenuItem("Convolve with sharpening kernel");
+        highPassItem.addActionListener(this);
+        imageOpMenu.add(highPassItem);
+        photoNegItem = new JMenuItem("Photonegative");
+        photoNegItem.addActionListener(this);
+        imageOpMenu.add(photoNegItem);
+        RGBThreshItem = new JMenuItem("RGB Thresholds at 128");
+        RGBThreshItem.addActionListener(this);
+        imageOpMenu.add(RGBThreshItem);
+        blurThreshItem = new JMenuItem("Blur, then RGB Thresholds at 128 (one pass)");
+        blurThreshItem.addActionListener(this);
+        imageOpMenu.add(blurThreshItem);
+
+ 
+        // Create CC menu stuff.
+        CCItem1 = new JMenuItem("Compute Connected Components and Recolor");
+        CCItem1.addActionListener(this);
+        CCItem2 = new JMenuItem("Segment Image and Recolor");
+        CCItem2.addActionListener(this);
+        CCItem3 = new JMenuItem("Segment Image with Region Slider...");
+        CCItem3.addActionListener(this);
+        undoMergeItem = new JMenuItem("Undo region merge");
+        undoMergeItem.addActionListener(this);
+        boruvkaItem = new JCheckBoxMenuItem("Segment with parallel Boruvka");
+        boruvkaItem.addActionListener(this);
+        runsItem = new JCheckBoxMenuItem("Label connected components by runs");
+        countFindsItem = new JCheckBoxMenuItem("Count finds and path steps");
+        countFindsItem.addActionListener(this);
+        ccMenu.add(CCItem1);
+        ccMenu.add(CCItem2);
+        ccMenu.add(CCItem3);
+        ccMenu.add(undoMergeItem);
+        ccMenu.addSeparator();
+        ccMenu.add(boruvkaItem);
+        ccMenu.add(runsItem);
+        pyramidMenu = new JMenu("Segment coarse to fine");
+        pyramidItems = new JRadioButtonMenuItem[MAX_PYRAMID_LEVELS + 1];
+        ButtonGroup pyramidGroup = new ButtonGroup();
+        for (int levels = 0; levels <= MAX_PYRAMID_LEVELS; levels++) {
+            pyramidItems[levels] = new JRadioButtonMenuItem(levels == 0 ? "Off (exact)"
+                    : "From 1/" + (1 << levels) + " size (" + levels + (levels == 1 ? " level)" : " levels)"));
+            pyramidGroup.add(pyramidItems[levels]);
+            pyramidMenu.add(pyramidItems[levels]);
+        }
+        pyramidItems[0].setSelected(true);
+        ccMenu.add(pyramidMenu);
+        ccMenu.add(countFindsItem);
+        
+        // Create the Help menu's item.
+        aboutItem = new JMenuItem("About");
+        aboutItem.addActionListener(this);
+        helpMenu.add(aboutItem);
+        helpItem = new JMenuItem("Help");
+        helpItem.addActionListener(this);
+        helpMenu.add(helpItem);
+        statsItem = new JMenuItem("Engine statistics");
+        statsItem.addActionListener(this);
+        helpMenu.add(statsItem);
+
+        initializeImageOps();
+        loadImage(startingImage); // Read in the pre-selected starting image.
+        setVisible(true); // Display it.
+    }
+    
+    /**
+     * Given a path to a file on the file system, try to load in the file
+     * as an image.  If that works, replace any current image by the new one.
+     * Re-make the biFiltered buffered image, too, because its size probably
+     * needs to be different to match that of the new image.
+     */
+    public void loadImage(String filename) {
+        try {
+            PhaseTimer timer = engine.getStats().start(SegmentationStats.Phase.DECODE, 0, 0);
+            biTemp = ImageIO.read(new File(filename));
+            w = biTemp.getWidth();
+            h = biTemp.getHeight();
+            if (gWorking != null) {
+                gWorking.dispose();
+            }
+            if (biTemp.getType() == BufferedImage.TYPE_INT_RGB) {
+                biWorking = biTemp; // Already in the working format, so no copy is needed.
+                gWorking = biWorking.getGraphics();
+            } else {
+                // drawImage converts whole rows at a time, far faster than per-pixel getRGB.
+                biWorking = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                gWorking = biWorking.getGraphics();
+                gWorking.drawImage(biTemp, 0, 0, null);
+            }
+            timer.stop();
+            workingPixels = ((DataBufferInt) biWorking.getRaster().getDataBuffer()).getData();
+            currentLabels = null;
+            currentRuns = null;
+            setRegionGraph(null);
+            biFiltered = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            imageView.setImage(workingPixels, w, h);
+            imageView.setZoom(0, null);
+            pack(); // Lay out the JFrame and set its size.
+            Dimension room = imageScroller.getViewport().getExtentSize();
+            if (w > room.width || h > room.height) {
+                imageView.zoomToFit(room); // Too big for the screen; show all of it to begin with.
+            }
+            repaint();
+        } catch (IOException e) {
+            System.out.println("Image could not be read: "+filename);
+            System.exit(1);
+        }
+    }
+
+    /* Menu handlers
+     */
+    void handleFileMenu(JMenuItem mi){
+        System.out.println("A file menu item was selected.");
+        if (mi==loadImageItem) {
+            File loadFile = new File("image-to-load.png");
+            if (fileChooser==null) {
+                fileChooser = new JFileChooser();
+                fileChooser.setSelectedFile(loadFile);
+                fileChooser.setFileFilter(new FileNameExtensionFilter("Image files", new String[] { "JPG", "JPEG", "GIF", "PNG" }));
+            }
+            int rval = fileChooser.showOpenDialog(this);
+            if (rval == JFileChooser.APPROVE_OPTION) {
+                loadFile = fileChooser.getSelectedFile();
+                loadImage(loadFile.getPath());
+            }
+        }
+        if (mi==sequenceItem) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setMultiSelectionEnabled(true);
+            chooser.setFileFilter(new FileNameExtensionFilter("Image files", new String[] { "JPG", "JPEG", "GIF", "PNG" }));
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File[] frames = chooser.getSelectedFiles();
+            Arrays.sort(frames); // Frames are taken in the order of their names.
+            String inputValue = JOptionPane.showInputDialog("Number of regions per frame (0 for connected components)", "25");
+            if (inputValue == null) {
+                return; // Canceled.
+            }
+            int nRegions;
+            try {
+                nRegions = Integer.parseInt(inputValue.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("That did not convert to an integer.");
+                return;
+            }
+            segmentSequence(frames, nRegions);
+        }
+        if (mi==saveAsItem) {
+            File saveFile = new File("savedimage.png");
+            fileChooser = new JFileChooser();
+            fileChooser.setSelectedFile(saveFile);
+            int rval = fileChooser.showSaveDialog(this);
+            if (rval == JFileChooser.APPROVE_OPTION) {
+                saveFile = fileChooser.getSelectedFile();
+                // Save the current image in PNG format, to a file.
+                try {
+                    PhaseTimer timer = engine.getStats().start(SegmentationStats.Phase.ENCODE, w, h);
+                    ImageIO.write(biWorking, "png", saveFile);
+                    timer.stop();
+                } catch (IOException ex) {
+                    System.out.println("There was some problem saving the image.");
+                }
+            }
+        }
+        if (mi==saveLabelsItem) {
+            if (currentLabels==null && currentGraph!=null) {
+                currentLabels = currentGraph.toLabelMap(); // The regions as merged by clicking.
+            }
+            if (currentLabels==null && currentRuns!=null) {
+                currentLabels = currentRuns.toLabelMap(); // Expand to one label per pixel only when needed.
+            }
+            if (currentLabels==null) {
+                JOptionPane.showMessageDialog(this, "Compute connected components or segment the image first.");
+                return;
+            }
+            File saveFile = new File("savedlabels.iclm");
+            fileChooser = new JFileChooser();
+            fileChooser.setSelectedFile(saveFile);
+            int rval = fileChooser.showSaveDialog(this);
+            if (rval == JFileChooser.APPROVE_OPTION) {
+                saveFile = fileChooser.getSelectedFile();
+                // Save the labels behind the current coloring, in LabelMapFile format.
+                try {
+                    PhaseTimer timer = engine.getStats().start(SegmentationStats.Phase.ENCODE, w, h);
+                    LabelMapFile.write(saveFile, currentLabels);
+                    timer.stop();
+                } catch (IOException ex) {
+                    System.out.println("There was some problem saving the labels.");
+                }
+            }
+        }
+        if (mi==exitItem) { this.setVisible(false); System.exit(0); }
+    }
+
+    void handleViewMenu(JMenuItem mi){
+        if (mi==zoomInItem) { imageView.setZoom(imageView.getZoom() + 1, null); }
+        if (mi==zoomOutItem) { imageView.setZoom(imageView.getZoom() - 1, null); }
+        if (mi==actualSizeItem) { imageView.setZoom(0, null); }
+        if (mi==fitItem) { imageView.zoomToFit(imageScroller.getViewport().getExtentSize()); }
+    }
+
+    void handleEditMenu(JMenuItem mi){
+        System.out.println("An edit menu item was selected.");
+    }
+
+    void handleImageOpMenu(JMenuItem mi){
+        System.out.println("An imageOp menu item was selected.");
+        if (mi==lowPassItem) { applyOpInBackground(new ImageOpPipeline().then(LOWPASS_OP), "Blurring"); }
+        else if (mi==highPassItem) { applyOpInBackground(new ImageOpPipeline().then(HIGHPASS_OP), "Sharpening"); }
+        else if (mi==photoNegItem) { applyOpInBackground(new ImageOpPipeline().then(PHOTONEG_OP), "Photonegative"); }
+        else if (mi==RGBThreshItem) { applyOpInBackground(new ImageOpPipeline().then(RGBTHRESH_OP), "Thresholding"); }
+        else if (mi==blurThreshItem) {
+            applyOpInBackground(new ImageOpPipeline().then(LOWPASS_OP).then(RGBTHRESH_OP), "Blurring and thresholding");
+        }
+    }
+
+    void handleCCMenu(JMenuItem mi) {
+        System.out.println("A connected components menu item was selected.");
+        if (mi==CCItem1) { computeConnectedComponents(); }
+        if (mi==CCItem3) { showRegionSlider(); }
+        if (mi==undoMergeItem) { undoMerge(); }
+        if (mi==boruvkaItem) {
+        	SegmentationEngine.MstAlgorithm algorithm = boruvkaItem.isSelected()
+        			? SegmentationEngine.MstAlgorithm.BORUVKA : SegmentationEngine.MstAlgorithm.KRUSKAL;
+        	SegmentationEngine old = engine;
+        	engine = new SegmentationEngine(Runtime.getRuntime().availableProcessors(), algorithm, old.getStats());
+        	old.close(); // Nothing is using it: this menu is disabled while a task runs.
+        }
+        if (mi==countFindsItem) {
+        	engine.getStats().setCountingFinds(countFindsItem.isSelected());
+        }
+        if (mi==CCItem2) { 
+        	int nRegions = 25; // default value.
+        	String inputValue = JOptionPane.showInputDialog("Please input the number of regions desired");
+        	try {
+        		nRegions = (new Integer(inputValue)).intValue();
+        	}
+        	catch(Exception e) {
+        		System.out.println(e);
+        		System.out.println("That did not convert to an integer. Using the default: 25.");
+        	}
+        	System.out.println("nregions is "+nRegions);
+        // Call your image segmentation method here.
+        	segmentImageAndRecolor(nRegions);
+        }
+    }
+    void handleHelpMenu(JMenuItem mi){
+        System.out.println("A help menu item was selected.");
+        if (mi==aboutItem) {
+            System.out.println("About: Well this is my program.");
+            JOptionPane.showMessageDialog(this,
+                "Image Components, Starter-Code Version.",
+                "About",
+                JOptionPane.PLAIN_MESSAGE);
+        }
+        else if (mi==helpItem) {
+            System.out.println("In case of panic attack, select File: Quit.");
+            JOptionPane.showMessageDialog(this,
+                "To load a new image, choose File: Load image...\nFor anything else, just try different things.",
+                "Help",
+                JOptionPane.PLAIN_MESSAGE);
+        }
+        else if (mi==statsItem) {
+            System.out.println(engine.getStats());
+            JTextArea text = new JTextArea(engine.getStats().toString());
+            text.setEditable(false);
+            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            JOptionPane.showMessageDialog(this, text, "Engine statistics", JOptionPane.PLAIN_MESSAGE);
+        }
+    }
+
+    /*
+     * Used by Swing to set the size of the JFrame when pack() is called.
+     * A big image gets a window that fits the screen, and scroll bars.
+     */
+    public Dimension getPreferredSize() {
+        // Leave some extra room for the scroll bars, the menu bar and the status bar.
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        return new Dimension(Math.min(w+20, screen.width),
+                             Math.min(h+70+statusPanel.getPreferredSize().height, screen.height));
+    }
+            	
+    public void applyOp(BufferedImageOp operation) {
+        if (!(operation instanceof LookupOp || operation instanceof ConvolveOp)) {
+            operation.filter(biWorking, biFiltered);
+            gWorking.drawImage(biFiltered, 0, 0, null);
+            setRegionGraph(null);
+            imageView.imageChanged();
+            return;
+        }
+        applyPipeline(new ImageOpPipeline().then(operation));
+    }
+
+    /**
+     * runs a chain of image operators over the working image in one go.
+     * @param pipeline (ImageOpPipeline): the operators
+     */
+    public void applyPipeline(ImageOpPipeline pipeline) {
+        engine.filter(pipeline, workingPixels, getFilteredPixels(), w, h);
+        swapWorkingImage();
+    }
+
+    /**
+     * @return (int[]): the array behind biFiltered, row by row
+     */
+    private int[] getFilteredPixels() {
+        return ((DataBufferInt) biFiltered.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * makes the freshly filtered image the working one, and the old working
+     * image the next filter's target, instead of copying the pixels back.
+     */
+    private void swapWorkingImage() {
+        BufferedImage filtered = biFiltered;
+        biFiltered = biWorking;
+        biWorking = filtered;
+        setRegionGraph(null); // The regions are no longer what is shown.
+        gWorking.dispose();
+        gWorking = biWorking.getGraphics();
+        workingPixels = ((DataBufferInt) biWorking.getRaster().getDataBuffer()).getData();
+        imageView.setImage(workingPixels, w, h); // Keeps the tiles the filter left as they were.
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        Object obj = e.getSource(); // What Swing object issued the event?
+        if (obj instanceof JMenuItem) { // Was it a menu item?
+            JMenuItem mi = (JMenuItem)obj; // Yes, cast it.
+            JPopupMenu pum = (JPopupMenu)mi.getParent(); // Get the object it's a child of.
+            JMenu m = (JMenu) pum.getInvoker(); // Get the menu from that (popup menu) object.
+            //System.out.println("Selected from the menu: "+m.getText()); // Printing this is a debugging aid.
+
+            if (m==fileMenu)    { handleFileMenu(mi);    return; }  // Handle the item depending on what menu it's from.
+            if (m==viewMenu)    { handleViewMenu(mi);    return; }
+            if (m==imageOpMenu) { handleImageOpMenu(mi); return; }
+            if (m==ccMenu)      { handleCCMenu(mi);      return; }
+            if (m==helpMenu)    { handleHelpMenu(mi);    return; }
+        } else {
+            System.out.println("Unhandled ActionEvent: "+e.getActionCommand());
+        }
+    }
+
+    // Use this to put color information into a pixel of a BufferedImage object.
+    void putPixel(BufferedImage bi, int x, int y, int r, int g, int b) {
+        int rgb = (r << 16) | (g << 8) | b; // pack 3 bytes into a word.
+        bi.setRGB(x,  y, rgb);
+    }
+    
+    /**
+     * computes the connected components in the picture using the strict pixel graph.
+     * recolors these components with high-contrasting colors so that they are easy
+     * to see. runs in the background.
+     */
+    void computeConnectedComponents() {
+    	if (runsItem.isSelected()) {
+    		runTask(new Task<RunLabelMap>("Connected components") {
+    			protected RunLabelMap doInBackground() {
+    				RunLabelMap runs = engine.connectedComponentRuns(pixels, width, height, this);
+    				recolorInBands(runs::recolor);
+    				return runs;
+    			}
+    			void finish(RunLabelMap runs) {
+    				System.out.println("The number of runs in this image is: " + runs.getRunCount());
+    				System.out.println("The number of times that the method UNION was called on runs is: " + runs.getUnionCount());
+    				System.out.println("The number of connected components in this image is: " + runs.getComponentCount());
+    				currentLabels = null;
+    				currentRuns = runs;
+    				setRegionGraph(null);
+    			}
+    		});
+    		return;
+    	}
+    	runTask(new Task<LabelMap>("Connected components") {
+    		protected LabelMap doInBackground() {
+    			LabelMap components = engine.connectedComponents(pixels, width, height, false, this);
+    			recolorInBands(components::recolor);
+    			return components;
+    		}
+    		void finish(LabelMap components) {
+    			System.out.println("The number of times that the method UNION was called for this image is: " + components.getUnionCount());
+    			System.out.println("The number of connected components in this image is: " + components.getComponentCount());
+    			currentLabels = components;
+    			currentRuns = null;
+    			setRegionGraph(null);
+    		}
+    	});
+    }
+    
+    /**
+     * constructs a weighted pixel graph for the image and then derives a 
+     * minimum spanning tree with as many roots as is passed. colors each
+     * segment. runs in the background.
+     * @param nRegions (int): the number of regions in final image
+     */
+    private void segmentImageAndRecolor(final int nRegions) {
+    	final int levels = getPyramidLevels();
+    	if (levels > 0) {
+    		segmentCoarseToFine(nRegions, levels);
+    		return;
+    	}
+    	runTask(new Task<LabelMap>("Segmenting into " + nRegions + " regions") {
+    		RegionGraph graph;
+    		protected LabelMap doInBackground() {
+    			LabelMap regions = engine.segment(pixels, width, height, nRegions, false, this);
+    			graph = RegionGraph.build(regions, pixels); // Before recoloring, while pixels are the image.
+    			recolorInBands(regions::recolor);
+    			return regions;
+    		}
+    		void finish(LabelMap regions) {
+    			System.out.println("Done Finding minimum spanning forest.");
+    			currentLabels = regions;
+    			currentRuns = null;
+    			setRegionGraph(graph);
+    		}
+    	});
+    }
+    
+    /**
+     * segments the image through a pyramid of halved copies of it: the top
+     * level is segmented first and shown at once as a preview, then its
+     * regions are refined level by level down to the full image. runs in
+     * the background.
+     * @param nRegions (int): the number of regions in final image
+     * @param levels (int): how many times to halve the image; more is faster and rougher
+     */
+    private void segmentCoarseToFine(final int nRegions, final int levels) {
+    	runTask(new Task<LabelMap>("Segmenting into " + nRegions + " regions, coarse to fine") {
+    		RegionGraph graph;
+    		protected LabelMap doInBackground() {
+    			ImagePyramid pyramid = ImagePyramid.build(pixels, width, height, levels);
+    			int top = pyramid.getLevelCount() - 1;
+    			if (top > 0) {
+    				LabelMap coarse = engine.segment(pyramid, top, nRegions, false, this);
+    				BufferedImage image = new BufferedImage(coarse.getWidth(), coarse.getHeight(), BufferedImage.TYPE_INT_RGB);
+    				coarse.recolor(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+    				showPreview(image);
+    			}
+    			LabelMap regions = engine.segment(pyramid, 0, nRegions, false, this);
+    			graph = RegionGraph.build(regions, pixels);
+    			recolorInBands(regions::recolor);
+    			return regions;
+    		}
+    		void finish(LabelMap regions) {
+    			System.out.println("Done segmenting coarse to fine.");
+    			currentLabels = regions;
+    			currentRuns = null;
+    			setRegionGraph(graph);
+    		}
+    	});
+    }
+    
+    /**
+     * labels a sequence of frames of the same size as the current image,
+     * redoing only the tiles that change from one frame to the next. each
+     * frame is shown as it is done, and the last one is left recolored in
+     * the working image. runs in the background.
+     * @param frames (File[]): the frames, in order
+     * @param nRegions (int): the number of regions per frame, or 0 for connected components
+     */
+    private void segmentSequence(final File[] frames, final int nRegions) {
+    	runTask(new Task<LabelMap>("Labeling " + frames.length + " frames") {
+    		protected LabelMap doInBackground() throws IOException {
+    			FrameSequence sequence = nRegions > 0
+    					? FrameSequence.segmentation(engine, width, height, nRegions, SEQUENCE_KEYFRAME_INTERVAL)
+    					: FrameSequence.components(engine, width, height);
+    			BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    			Graphics gFrame = frame.getGraphics();
+    			int[] framePixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+    			LabelMap labels = null;
+    			long start = System.nanoTime();
+    			try {
+    				for (File file : frames) {
+    					PhaseTimer timer = engine.getStats().start(SegmentationStats.Phase.DECODE, 0, 0);
+    					BufferedImage image = ImageIO.read(file);
+    					timer.stop();
+    					if (image == null || image.getWidth() != width || image.getHeight() != height) {
+    						throw new IOException(file.getName() + " is not a " + width + "x" + height + " image");
+    					}
+    					gFrame.drawImage(image, 0, 0, null);
+    					labels = sequence.next(framePixels, this);
+    					System.out.println(file.getName() + ": " + labels.getComponentCount() + " regions, "
+    							+ sequence.getChangedTileCount() + " of " + sequence.getTileCount() + " tiles changed");
+    					BufferedImage shown = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    					labels.recolor(((DataBufferInt) shown.getRaster().getDataBuffer()).getData());
+    					showPreview(shown);
+        			}
+    			} finally {
+    				gFrame.dispose();
+    			}
+    			System.out.println("Labeled " + frames.length + " frames in " + (System.nanoTime() - start) / 1000000 + " ms.");
+    			recolorInBands(labels::recolor);
+    			return labels;
+    		}
+    		void finish(LabelMap labels) {
+    			currentLabels = labels;
+    			currentRuns = null;
+    			setRegionGraph(null);
+    		}
+    	});
+    }
+    
+    /**
+     * @return (int): the number of halvings chosen in the coarse-to-fine menu, 0 for none
+     */
+    private int getPyramidLevels() {
+    	for (int levels = 1; levels < pyramidItems.length; levels++) {
+    		if (pyramidItems[levels].isSelected()) {
+    			return levels;
+    		}
+    	}
+    	return 0;
+    }
+    
+    /**
+     * builds the segmentation hierarchy of the current image once, in the
+     * background, then lets the user drag a slider that recolors the image
+     * for any number of regions.
+     */
+    private void showRegionSlider() {
+    	runTask(new Task<SegmentationHierarchy>("Building segmentation hierarchy") {
+    		protected SegmentationHierarchy doInBackground() {
+    			return engine.buildHierarchy(pixels, width, height, this);
+    		}
+    		void finish(SegmentationHierarchy hierarchy) {
+    			showRegionSlider(hierarchy);
+    		}
+    	});
+    }
+    
+    /**
+     * lets the user drag a slider that recolors the image for any number of
+     * regions. the image is recut only when the slider is let go, in the
+     * background, and every cut reuses one forest.
+     * @param hierarchy (SegmentationHierarchy): the merge sequence of the current image
+     */
+    private void showRegionSlider(final SegmentationHierarchy hierarchy) {
+    	int maxRegions = Math.min(w*h, MAX_SLIDER_REGIONS);
+    	final JSlider slider = new JSlider(hierarchy.getMinRegions(), maxRegions, Math.min(25, maxRegions));
+    	final DisjointSets forest = new DisjointSets(w*h);
+    	slider.setMajorTickSpacing(Math.max(1, maxRegions / 5));
+    	slider.setPaintTicks(true);
+    	slider.setPaintLabels(true);
+    	slider.addChangeListener(new ChangeListener() {
+    		public void stateChanged(ChangeEvent e) {
+    			if (!slider.getValueIsAdjusting()) {
+    				cutHierarchy(hierarchy, forest, slider.getValue());
+    			}
+    		}
+    	});
+    	cutHierarchy(hierarchy, forest, slider.getValue());
+    	JOptionPane.showMessageDialog(this, slider, "Number of regions", JOptionPane.PLAIN_MESSAGE);
+    }
+    
+    /**
+     * recolors the image for a cut of its hierarchy. runs in the background;
+     * a cut asked for while another runs cancels it, unless it is already
+     * recoloring, and only the latest one asked for is made once it ends.
+     * @param hierarchy (SegmentationHierarchy): the merge sequence of the current image
+     * @param forest (DisjointSets): scratch forest for the cut
+     * @param nRegions (int): the number of regions desired
+     */
+    private void cutHierarchy(final SegmentationHierarchy hierarchy, final DisjointSets forest, final int nRegions) {
+    	if (currentTask != null) {
+    		pendingCut = nRegions;
+    		currentTask.requestCancel(); // Stale now; it stops before recoloring.
+    		return;
+    	}
+    	pendingCut = -1;
+    	runTask(new Task<LabelMap>("Cutting into " + nRegions + " regions") {
+    		protected LabelMap doInBackground() {
+    			LabelMap regions = hierarchy.labels(nRegions, forest);
+    			recolorInBands(regions::recolor);
+    			return regions;
+    		}
+    		void finish(LabelMap regions) {
+    			currentLabels = regions;
+    			currentRuns = null;
+    			setRegionGraph(null);
+    		}
+    		protected void done() {
+    			super.done();
+    			if (pendingCut != -1) {
+    				cutHierarchy(hierarchy, forest, pendingCut);
+    			}
+    		}
+    	});
+    }
+    
+    /**
+     * runs a chain of image operators on the working image in the background,
+     * into biFiltered, and swaps the two images when it is done. a canceled
+     * filter leaves the working image as it was.
+     * @param pipeline (ImageOpPipeline): the operators
+     * @param name (String): what to call it in the status bar
+     */
+    private void applyOpInBackground(final ImageOpPipeline pipeline, String name) {
+    	final int[] filtered = getFilteredPixels();
+    	runTask(new Task<Void>(name) {
+    		protected Void doInBackground() {
+    			engine.filter(pipeline, pixels, filtered, width, height, this);
+    			return null;
+    		}
+    		void finish(Void result) {
+    			swapWorkingImage();
+    		}
+    	});
+    }
+    
+    /**
+     * starts a task, marking the window busy until it ends.
+     * @param task (Task): the task
+     */
+    private void runTask(Task<?> task) {
+    	currentTask = task;
+    	setBusy(true);
+    	statusLabel.setText(task.name + "...");
+    	progressBar.setIndeterminate(true);
+    	task.execute();
+    }
+    
+    /**
+     * enables or disables everything that would read or change the image
+     * while a task is working on it.
+     * @param busy (boolean): whether a task is running
+     */
+    private void setBusy(boolean busy) {
+    	loadImageItem.setEnabled(!busy);
+    	sequenceItem.setEnabled(!busy);
+    	saveAsItem.setEnabled(!busy);
+    	saveLabelsItem.setEnabled(!busy);
+    	imageOpMenu.setEnabled(!busy);
+    	ccMenu.setEnabled(!busy);
+    	cancelButton.setEnabled(busy);
+    	if (!busy) {
+    		progressBar.setIndeterminate(false);
+    		progressBar.setValue(0);
+    	}
+    }
+    
+    /**
+     * @param stage (ProgressMonitor.Stage): what the engine is doing
+     * @param done (long): how much of the stage is done
+     * @param total (long): how much there is to do in the stage
+     * @param pixelCount (long): the number of pixels in the image
+     * @return (String): the progress, in words
+     */
+    static String describeProgress(ProgressMonitor.Stage stage, long done, long total, long pixelCount) {
+    	switch (stage) {
+    		case SCANNING:
+    			return "scanned " + done + " of " + total + " rows";
+    		case BUILDING_EDGES:
+    			return done < total / 2
+    					? "weighing edges, row " + done + " of " + total / 2
+    					: "sorting edges, row " + (done - total / 2) + " of " + total / 2;
+    		case MERGING:
+    			return done + " unions done, " + (pixelCount - done) + " trees remaining";
+    		case FILTERING:
+    			return "filtered " + done + " of " + total + " rows";
+    		case REFINING:
+    			return "refining region boundaries, edge " + done + " of " + total;
+    		default:
+    			return "numbering components";
+    	}
+    }
+    
+    /**
+     * One long operation on the working image, run off the event thread. It is
+     * its own ProgressMonitor: engine progress goes to the status bar, and the
+     * Cancel button makes the engine stop at its next checkpoint. The window
+     * stays busy until doInBackground has really returned, so no other task
+     * can touch the image in the meantime.
+     */
+    private abstract class Task<T> extends SwingWorker<T, Runnable> implements ProgressMonitor {
+    	final String name;
+    	final int[] pixels = workingPixels; // The image as it was when the task was made.
+    	final int width = w, height = h;
+    	private volatile boolean canceled;
+    	private ProgressMonitor.Stage lastStage; // Last stage and percentage shown, so that
+    	private int lastPercent = -1;            // the status bar is only updated on a change.
+    	
+    	Task(String name) {
+    		this.name = name;
+    	}
+    	
+    	/**
+    	 * called on the event thread with the result, unless the task was
+    	 * canceled or failed.
+    	 * @param result (T): what doInBackground returned
+    	 */
+    	abstract void finish(T result);
+    	
+    	/**
+    	 * asks the engine to stop at its next checkpoint.
+    	 */
+    	void requestCancel() {
+    		canceled = true;
+    		statusLabel.setText(name + ": canceling...");
+    	}
+    	
+    	public boolean isCanceled() {
+    		return canceled;
+    	}
+    	
+    	public synchronized void progress(ProgressMonitor.Stage stage, long done, long total) {
+    		final int percent = total > 0 ? (int) Math.min(100, 100 * done / total) : 100;
+    		if (stage == lastStage && percent == lastPercent) {
+    			return;
+    		}
+    		lastStage = stage;
+    		lastPercent = percent;
+    		final String text = name + ": " + describeProgress(stage, done, total, (long) width * height);
+    		publish(() -> {
+    			if (!canceled) {
+    				statusLabel.setText(text);
+    			}
+    			progressBar.setIndeterminate(false);
+    			progressBar.setValue(percent);
+    		});
+    	}
+    	
+    	/**
+    	 * recolors the working image a band of rows at a time, repainting each
+    	 * band as soon as it is done. once recoloring starts it is not canceled,
+    	 * so the image is never left half recolored.
+    	 * @param recoloring (Recoloring): paints the rows y0 .. y1-1 of the image
+    	 */
+    	void recolorInBands(Recoloring recoloring) {
+    		if (canceled) {
+    			throw new CancellationException("Canceled before recoloring");
+    		}
+    		publish(() -> imageView.setPreview(null));
+    		PhaseTimer timer = engine.getStats().start(SegmentationStats.Phase.RECOLOR, width, height);
+    		int band = Math.max(1, RECOLOR_BAND_PIXELS / width);
+    		for (int y0 = 0; y0 < height; y0 += band) {
+    			final int top = y0, bottom = Math.min(height, y0 + band);
+    			recoloring.recolor(pixels, top, bottom);
+    			publish(() -> imageView.imageChanged(0, top, width, bottom - top));
+    		}
+    		timer.stop();
+    	}
+    	
+    	/**
+    	 * shows a rough result stretched over the image until the task
+    	 * recolors it or ends.
+    	 * @param image (BufferedImage): the rough result, at any size
+    	 */
+    	void showPreview(final BufferedImage image) {
+    		publish(() -> {
+    			if (!canceled) {
+    				imageView.setPreview(image);
+    			}
+    		});
+    	}
+    	
+    	protected void process(List<Runnable> updates) {
+    		for (Runnable update : updates) {
+    			update.run();
+    		}
+    	}
+    	
+    	protected void done() {
+    		currentTask = null;
+    		imageView.setPreview(null);
+    		setBusy(false);
+    		try {
+    			finish(get());
+    			statusLabel.setText(name + ": done.");
+    		} catch (ExecutionException e) {
+    			if (e.getCause() instanceof CancellationException) {
+    				statusLabel.setText(name + ": canceled.");
+    			} else {
+    				System.out.println(e.getCause());
+    				statusLabel.setText(name + ": failed: " + e.getCause());
+    			}
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    		}
+    		repaint();
+    	}
+    }
+    
+    /**
+     * Paints the rows y0 .. y1-1 of a labelling into an RGB buffer, like
+     * LabelMap.recolor(int[], int, int).
+     */
+    private interface Recoloring {
+    	void recolor(int[] rgb, int y0, int y1);
+    }
+    
+    /**
+     * makes a region graph the one that clicks merge regions of, or turns
+     * merging off.
+     * @param graph (RegionGraph): the regions shown, or null
+     */
+    private void setRegionGraph(RegionGraph graph) {
+    	currentGraph = graph;
+    	selectedRegion = -1;
+    	undoMergeItem.setEnabled(graph != null);
+    }
+    
+    /**
+     * the first click picks a region, and a click on one of its neighbors
+     * merges the two, repainting only the pixels of the smaller one.
+     * @param x (int): x-coord of the click
+     * @param y (int): y-coord of the click
+     */
+    private void regionClicked(int x, int y) {
+    	if (currentGraph == null || currentTask != null || x >= w || y >= h) {
+    		return;
+    	}
+    	int region = currentGraph.getRegionAt(x, y);
+    	if (selectedRegion == -1 || selectedRegion == region) {
+    		selectedRegion = selectedRegion == region ? -1 : region;
+    		statusLabel.setText(selectedRegion == -1 ? "Ready."
+    				: "Region of " + currentGraph.getArea(region) + " pixels with "
+    				  + currentGraph.neighbors(region).length + " neighbors selected; click a neighbor to merge.");
+    		return;
+    	}
+    	int length = currentGraph.getBoundaryLength(selectedRegion, region);
+    	long weight = currentGraph.getBoundaryWeight(selectedRegion, region);
+    	int absorbed = currentGraph.merge(selectedRegion, region, workingPixels);
+    	selectedRegion = -1;
+    	if (absorbed == -1) {
+    		statusLabel.setText("Those regions do not touch.");
+    		return;
+    	}
+    	currentLabels = null; // Rebuilt from the graph if saved.
+    	statusLabel.setText("Merged along a boundary of " + length + " edges (mean weight "
+    			+ weight / length + "); " + currentGraph.getCurrentRegionCount() + " regions left.");
+    	repaintMerge(); // Only the tiles under the recolored region are rechecked.
+    }
+    
+    /**
+     * undoes the latest merge made by clicking.
+     */
+    private void undoMerge() {
+    	if (currentGraph == null || currentGraph.undo(workingPixels) == -1) {
+    		statusLabel.setText("No merge to undo.");
+    		return;
+    	}
+    	selectedRegion = -1;
+    	currentLabels = null;
+    	statusLabel.setText(currentGraph.getCurrentRegionCount() + " regions.");
+    	repaintMerge();
+    }
+
+    /**
+     * redraws the rectangle the latest merge or undo repainted.
+     */
+    private void repaintMerge() {
+    	Rectangle box = currentGraph.getRepaintedBounds();
+    	if (!box.isEmpty()) {
+    		imageView.imageChanged(box.x, box.y, box.width, box.height);
+    	}
+    }
+
+    /* This main method can be used to run the application. */
+    public static void main(String s[]) {
+    	javax.swing.SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			appInstance = new ImageComponents();
+    		}
+    	});
+        
+    }
+}
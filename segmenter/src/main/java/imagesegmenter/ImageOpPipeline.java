@@ -0,0 +1,404 @@
+/**
+ * ImageOpPipeline.java
+ * A chain of the viewer's image operators (lookup tables and convolutions)
+ * applied to packed RGB pixels in as few passes over the raster as possible.
+ *
+ * Lookup tables that follow one another are composed into a single table.
+ * A table before a convolution is applied to its inputs as they are read,
+ * and a table after it to its output as it is written, so each convolution
+ * costs one pass and a chain of tables alone costs one pass. Every pass runs
+ * over tiles of rows, in parallel when given a ForkJoinPool.
+ *
+ * Convolutions round the way Java2D's native ConvolveOp does on TYPE_INT_RGB
+ * images: the kernel is truncated to fixed point with 24 significant bits in
+ * its largest weight, and the sum is truncated, then clamped to 0..255. With
+ * the viewer's kernels the output is the same as running the BufferedImageOps
+ * one by one; other kernels can rarely leave a channel off by one.
+ * A pipeline never changes once built and may be shared by threads.
+ */
+
+package imagesegmenter;
+
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ByteLookupTable;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.LookupOp;
+import java.awt.image.LookupTable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ImageOpPipeline {
+    private static final int WEIGHT_BITS = 23; // bits of the largest kernel weight below its leading one.
+    private static final int TILE_ROWS = 64; // rows in one unit of parallel work.
+
+    private final List<Pass> passes;
+
+    /**
+     * initializes an empty pipeline, which copies its input unchanged
+     */
+    public ImageOpPipeline() {
+        passes = Collections.emptyList();
+    }
+
+    private ImageOpPipeline(List<Pass> passes) {
+        this.passes = passes;
+    }
+
+    /**
+     * @param op (BufferedImageOp): a LookupOp or a ConvolveOp
+     * @return (ImageOpPipeline): this pipeline followed by op
+     * @throws IllegalArgumentException if op is of any other kind
+     */
+    public ImageOpPipeline then(BufferedImageOp op) {
+        if (op instanceof LookupOp) {
+            return lookup(((LookupOp) op).getTable());
+        }
+        if (op instanceof ConvolveOp) {
+            ConvolveOp convolve = (ConvolveOp) op;
+            return convolve(convolve.getKernel(), convolve.getEdgeCondition());
+        }
+        throw new IllegalArgumentException("Unsupported image operator: " + op.getClass().getName());
+    }
+
+    /**
+     * @param table (LookupTable): a ByteLookupTable with offset 0 and either
+     * one array for all three channels or one array per channel
+     * @return (ImageOpPipeline): this pipeline followed by the table
+     */
+    public ImageOpPipeline lookup(LookupTable table) {
+        if (!(table instanceof ByteLookupTable) || table.getOffset() != 0) {
+            throw new IllegalArgumentException("Only ByteLookupTables with offset 0 are supported");
+        }
+        byte[][] data = ((ByteLookupTable) table).getTable();
+        if (data.length != 1 && data.length != 3) {
+            throw new IllegalArgumentException("Lookup table must have 1 or 3 bands: " + data.length);
+        }
+        int[][] lut = new int[3][256];
+        for (int c = 0; c < 3; c++) {
+            byte[] band = data[data.length == 1 ? 0 : c];
+            if (band.length < 256) {
+                throw new IllegalArgumentException("Lookup table band has fewer than 256 entries");
+            }
+            for (int v = 0; v < 256; v++) {
+                lut[c][v] = band[v] & 0xff;
+            }
+        }
+
+        List<Pass> next = new ArrayList<>(passes);
+        Pass last = next.isEmpty() ? new Pass(null, null, 0, null, 0, 0, 0) : next.remove(next.size() - 1);
+        next.add(last.weights == null
+                ? new Pass(compose(last.pre, lut), null, 0, null, 0, 0, 0)
+                : new Pass(last.pre, last.weights, last.shift, compose(last.post, lut), last.kw, last.kh, last.edgeCondition));
+        return new ImageOpPipeline(next);
+    }
+
+    /**
+     * @param kernel (Kernel): a kernel of odd width and height
+     * @param edgeCondition (int): ConvolveOp.EDGE_NO_OP or ConvolveOp.EDGE_ZERO_FILL
+     * @return (ImageOpPipeline): this pipeline followed by the convolution
+     */
+    public ImageOpPipeline convolve(Kernel kernel, int edgeCondition) {
+        int kw = kernel.getWidth(), kh = kernel.getHeight();
+        if (kw % 2 == 0 || kh % 2 == 0) {
+            throw new IllegalArgumentException("Kernel must have odd dimensions: " + kw + "x" + kh);
+        }
+        if (edgeCondition != ConvolveOp.EDGE_NO_OP && edgeCondition != ConvolveOp.EDGE_ZERO_FILL) {
+            throw new IllegalArgumentException("Unknown edge condition: " + edgeCondition);
+        }
+        float[] data = kernel.getKernelData(null);
+        float largest = 0;
+        for (float weight : data) {
+            largest = Math.max(largest, Math.abs(weight));
+        }
+        int shift = largest == 0 ? 0 : WEIGHT_BITS - Math.getExponent(largest);
+        if (shift < 0 || shift > 62 - WEIGHT_BITS - 8) {
+            throw new IllegalArgumentException("Kernel weights are out of range: " + largest);
+        }
+        long[] weights = new long[data.length];
+        for (int i = 0; i < data.length; i++) {
+            weights[i] = (long) ((double) data[i] * (1L << shift));
+        }
+
+        List<Pass> next = new ArrayList<>(passes);
+        Pass last = next.isEmpty() ? null : next.get(next.size() - 1);
+        if (last != null && last.weights == null) {
+            // fold the tables before the convolution into its inputs.
+            next.set(next.size() - 1, new Pass(last.pre, weights, shift, null, kw, kh, edgeCondition));
+        } else {
+            next.add(new Pass(null, weights, shift, null, kw, kh, edgeCondition));
+        }
+        return new ImageOpPipeline(next);
+    }
+
+    /**
+     * @return (int): the number of passes over the raster one apply makes
+     */
+    public int getPassCount() {
+        return passes.size();
+    }
+
+    /**
+     * runs the pipeline on one thread.
+     * @param src (int[]): packed RGB pixels, row by row; never written unless it is dst
+     * @param dst (int[]): receives the result. may be src only if the
+     * pipeline has no convolution
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     */
+    public void apply(int[] src, int[] dst, int w, int h) {
+        apply(null, src, dst, w, h, ProgressMonitor.NONE);
+    }
+
+    /**
+     * runs the pipeline. every pass but the last writes to a scratch buffer,
+     * so src is left untouched if the call is canceled.
+     * @param pool (ForkJoinPool): threads to run tiles on, or null for one thread
+     * @param src (int[]): packed RGB pixels, row by row
+     * @param dst (int[]): receives the result
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): told the rows filtered; may cancel the call
+     * @throws CancellationException if the monitor cancels the call
+     */
+    void apply(ForkJoinPool pool, int[] src, int[] dst, int w, int h, ProgressMonitor monitor) {
+        if (passes.isEmpty()) {
+            if (src != dst) {
+                System.arraycopy(src, 0, dst, 0, w * h);
+            }
+            return;
+        }
+        if (src == dst && (passes.size() > 1 || passes.get(0).weights != null)) {
+            throw new IllegalArgumentException("A convolution cannot filter an image in place");
+        }
+        ProgressCounter progress = new ProgressCounter(monitor, ProgressMonitor.Stage.FILTERING,
+                                                       (long) h * passes.size());
+        // alternate between dst and a scratch buffer so that the last pass lands in dst.
+        int[] scratch = passes.size() > 1 ? new int[w * h] : null;
+        int[] in = src;
+        for (int i = 0; i < passes.size(); i++) {
+            int[] out = (passes.size() - 1 - i) % 2 == 0 ? dst : scratch;
+            Pass pass = passes.get(i);
+            if (pool == null) {
+                pass.run(in, out, w, h, 0, h, progress);
+            } else {
+                pool.invoke(new Tiles(pass, in, out, w, h, 0, (h + TILE_ROWS - 1) / TILE_ROWS, progress));
+            }
+            in = out;
+        }
+    }
+
+    /**
+     * @return (int[][]): first followed by second, per channel; either may be
+     * null for no table
+     */
+    private static int[][] compose(int[][] first, int[][] second) {
+        if (first == null) {
+            return second;
+        }
+        int[][] lut = new int[3][256];
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++) {
+                lut[c][v] = second[c][first[c][v]];
+            }
+        }
+        return lut;
+    }
+
+    /**
+     * One pass over the raster: an optional table on the inputs, an optional
+     * convolution, and an optional table on the outputs.
+     *
+     * A convolution unpacks each row it reads into separate channel arrays
+     * (applying the input table on the way) once per tile, then adds up the
+     * kernel one weight at a time across whole rows.
+     */
+    private static class Pass {
+        final int[][] pre; // per-channel table on the inputs, or null.
+        final long[] weights; // kernel in fixed point, or null for a table-only pass.
+        final int shift; // fraction bits of the weights.
+        final int[][] post; // per-channel table on the outputs, or null.
+        final int kw, kh, edgeCondition;
+        // the nonzero weights, and the offset from the output pixel of the input each applies to.
+        private final long[] tapWeight;
+        private final int[] tapDx, tapDy;
+
+        Pass(int[][] pre, long[] weights, int shift, int[][] post, int kw, int kh, int edgeCondition) {
+            this.pre = pre;
+            this.weights = weights;
+            this.shift = shift;
+            this.post = post;
+            this.kw = kw;
+            this.kh = kh;
+            this.edgeCondition = edgeCondition;
+            int taps = 0;
+            for (int k = 0; weights != null && k < weights.length; k++) {
+                if (weights[k] != 0) {
+                    taps++;
+                }
+            }
+            tapWeight = new long[taps];
+            tapDx = new int[taps];
+            tapDy = new int[taps];
+            for (int k = 0, t = 0; t < taps; k++) {
+                if (weights[k] != 0) {
+                    // ConvolveOp flips the kernel: weight (i, j) applies to pixel (x+kw/2-i, y+kh/2-j).
+                    tapWeight[t] = weights[k];
+                    tapDx[t] = kw / 2 - k % kw;
+                    tapDy[t] = kh / 2 - k / kw;
+                    t++;
+                }
+            }
+        }
+
+        /**
+         * filters the rows y0 .. y1-1 of in into out.
+         */
+        void run(int[] in, int[] out, int w, int h, int y0, int y1, ProgressCounter progress) {
+            if (weights == null) {
+                for (int p = w * y0, end = w * y1; p < end; p++) {
+                    out[p] = map(pre, in[p]);
+                }
+            } else {
+                convolveRows(in, out, w, h, y0, y1);
+            }
+            progress.advance(y1 - y0);
+        }
+
+        /**
+         * convolves rows y0 .. y1-1. pixels the kernel does not fit over are
+         * copied (EDGE_NO_OP) or zeroed (EDGE_ZERO_FILL), as ConvolveOp does.
+         */
+        private void convolveRows(int[] in, int[] out, int w, int h, int y0, int y1) {
+            int rx = kw / 2, ry = kh / 2;
+            // input row yy is unpacked into slot yy % kh.
+            int[][] red = new int[kh][w], green = new int[kh][w], blue = new int[kh][w];
+            long[] sumR = new long[w], sumG = new long[w], sumB = new long[w];
+            int unpacked = -1; // the last input row unpacked.
+            for (int y = y0; y < y1; y++) {
+                int row = w * y;
+                if (y < ry || y >= h - ry || w < kw) {
+                    for (int x = 0; x < w; x++) {
+                        out[row + x] = edge(in[row + x]);
+                    }
+                    continue;
+                }
+                for (int yy = Math.max(unpacked + 1, y - ry); yy <= y + ry; yy++) {
+                    unpack(in, w * yy, w, red[yy % kh], green[yy % kh], blue[yy % kh]);
+                }
+                unpacked = y + ry;
+
+                Arrays.fill(sumR, 0);
+                Arrays.fill(sumG, 0);
+                Arrays.fill(sumB, 0);
+                for (int t = 0; t < tapWeight.length; t++) {
+                    long weight = tapWeight[t];
+                    int slot = (y + tapDy[t]) % kh, dx = tapDx[t];
+                    accumulate(sumR, red[slot], weight, dx, rx, w - rx);
+                    accumulate(sumG, green[slot], weight, dx, rx, w - rx);
+                    accumulate(sumB, blue[slot], weight, dx, rx, w - rx);
+                }
+
+                for (int x = 0; x < rx; x++) {
+                    out[row + x] = edge(in[row + x]);
+                    out[row + w - 1 - x] = edge(in[row + w - 1 - x]);
+                }
+                int[][] post = this.post;
+                for (int x = rx; x < w - rx; x++) {
+                    int r = clamp(sumR[x] >> shift);
+                    int g = clamp(sumG[x] >> shift);
+                    int b = clamp(sumB[x] >> shift);
+                    if (post != null) {
+                        r = post[0][r];
+                        g = post[1][g];
+                        b = post[2][b];
+                    }
+                    out[row + x] = (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+
+        /**
+         * adds weight times channel[x+dx] to sum[x] for x in x0 .. x1-1; one
+         * channel at a time keeps the loop simple enough for the JIT to unroll.
+         */
+        private static void accumulate(long[] sum, int[] channel, long weight, int dx, int x0, int x1) {
+            for (int x = x0; x < x1; x++) {
+                sum[x] += weight * channel[x + dx];
+            }
+        }
+
+        /**
+         * splits one row into its channels, through the input table.
+         */
+        private void unpack(int[] in, int from, int w, int[] r, int[] g, int[] b) {
+            for (int x = 0; x < w; x++) {
+                int rgb = in[from + x];
+                r[x] = (rgb >> 16) & 0xff;
+                g[x] = (rgb >> 8) & 0xff;
+                b[x] = rgb & 0xff;
+            }
+            if (pre != null) {
+                for (int x = 0; x < w; x++) {
+                    r[x] = pre[0][r[x]];
+                    g[x] = pre[1][g[x]];
+                    b[x] = pre[2][b[x]];
+                }
+            }
+        }
+
+        /**
+         * @return (int): what the pass writes for a pixel the kernel does not fit over
+         */
+        private int edge(int rgb) {
+            return edgeCondition == ConvolveOp.EDGE_NO_OP ? map(post, map(pre, rgb)) : map(post, 0);
+        }
+
+        private static int map(int[][] lut, int rgb) {
+            if (lut == null) {
+                return rgb & 0xffffff;
+            }
+            return (lut[0][(rgb >> 16) & 0xff] << 16) | (lut[1][(rgb >> 8) & 0xff] << 8) | lut[2][rgb & 0xff];
+        }
+
+        private static int clamp(long v) {
+            return v < 0 ? 0 : v > 255 ? 255 : (int) v;
+        }
+    }
+
+    /**
+     * Runs a pass over a range of tiles, splitting it in half until it is one tile.
+     */
+    private static class Tiles extends RecursiveAction {
+        private final Pass pass;
+        private final int[] in, out;
+        private final int w, h, tile0, tile1;
+        private final ProgressCounter progress;
+
+        Tiles(Pass pass, int[] in, int[] out, int w, int h, int tile0, int tile1, ProgressCounter progress) {
+            this.pass = pass;
+            this.in = in;
+            this.out = out;
+            this.w = w;
+            this.h = h;
+            this.tile0 = tile0;
+            this.tile1 = tile1;
+            this.progress = progress;
+        }
+
+        protected void compute() {
+            if (tile1 - tile0 <= 1) {
+                pass.run(in, out, w, h, tile0 * TILE_ROWS, Math.min(h, tile1 * TILE_ROWS), progress);
+                return;
+            }
+            int mid = (tile0 + tile1) >>> 1;
+            invokeAll(new Tiles(pass, in, out, w, h, tile0, mid, progress),
+                      new Tiles(pass, in, out, w, h, mid, tile1, progress));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * ImagePyramid.java
+ * An image together with successively halved copies of itself: level 0 is
+ * the image, and each pixel of level k+1 is the average color of a 2x2 block
+ * of level k. A level with an odd width or height repeats its last column or
+ * row to fill the blocks along that edge.
+ *
+ * Coarse levels are small enough to segment or show almost instantly, so the
+ * pyramid serves both as a quick preview and as the starting point of a
+ * coarse-to-fine segmentation. A pyramid never changes after it is built and
+ * may be shared by threads.
+ */
+
+package imagesegmenter;
+
+public class ImagePyramid {
+    private final int[][] pixels; // packed RGB pixels of each level, row by row.
+    private final int[] widths, heights;
+
+    private ImagePyramid(int[][] pixels, int[] widths, int[] heights) {
+        this.pixels = pixels;
+        this.widths = widths;
+        this.heights = heights;
+    }
+
+    /**
+     * halves the image again and again, stopping early once a level is
+     * down to a single pixel.
+     * @param pixels (int[]): packed RGB pixels, row by row; kept, not copied, as level 0
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param levels (int): how many times to halve the image
+     * @return (ImagePyramid): the image and its halved copies
+     */
+    public static ImagePyramid build(int[] pixels, int w, int h, int levels) {
+        if (w <= 0 || h <= 0 || pixels.length < (long) w * h) {
+            throw new IllegalArgumentException("Pixel buffer does not hold a " + w + "x" + h + " image");
+        }
+        int count = 1;
+        for (int lw = w, lh = h; count <= levels && (lw > 1 || lh > 1); count++) {
+            lw = (lw + 1) / 2;
+            lh = (lh + 1) / 2;
+        }
+        int[][] levelPixels = new int[count][];
+        int[] widths = new int[count], heights = new int[count];
+        levelPixels[0] = pixels;
+        widths[0] = w;
+        heights[0] = h;
+        for (int k = 1; k < count; k++) {
+            widths[k] = (widths[k-1] + 1) / 2;
+            heights[k] = (heights[k-1] + 1) / 2;
+            levelPixels[k] = halve(levelPixels[k-1], widths[k-1], heights[k-1], widths[k], heights[k]);
+        }
+        return new ImagePyramid(levelPixels, widths, heights);
+    }
+
+    /**
+     * averages each 2x2 block of an image into one pixel, rounding each channel.
+     */
+    private static int[] halve(int[] src, int w, int h, int hw, int hh) {
+        int[] dst = new int[hw * hh];
+        for (int y = 0; y < hh; y++) {
+            int row0 = w * (2*y), row1 = w * Math.min(2*y + 1, h - 1);
+            for (int x = 0; x < hw; x++) {
+                int x0 = 2*x, x1 = Math.min(2*x + 1, w - 1);
+                int a = src[row0 + x0], b = src[row0 + x1], c = src[row1 + x0], d = src[row1 + x1];
+                int red = (((a >> 16) & 0xff) + ((b >> 16) & 0xff) + ((c >> 16) & 0xff) + ((d >> 16) & 0xff) + 2) >> 2;
+                int green = (((a >> 8) & 0xff) + ((b >> 8) & 0xff) + ((c >> 8) & 0xff) + ((d >> 8) & 0xff) + 2) >> 2;
+                int blue = ((a & 0xff) + (b & 0xff) + (c & 0xff) + (d & 0xff) + 2) >> 2;
+                dst[hw * y + x] = (red << 16) | (green << 8) | blue;
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * @return (int): the number of levels, counting the image itself as level 0
+     */
+    public int getLevelCount() {
+        return pixels.length;
+    }
+
+    /**
+     * @param level (int): 0 for the image itself, up to getLevelCount()-1
+     * @return (int): width of that level
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * @param level (int): 0 for the image itself, up to getLevelCount()-1
+     * @return (int): height of that level
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * @param level (int): 0 for the image itself, up to getLevelCount()-1
+     * @return (int[]): packed RGB pixels of that level, row by row. this is
+     * the backing array, not a copy.
+     */
+    public int[] getPixels(int level) {
+        return pixels[level];
+    }
+}
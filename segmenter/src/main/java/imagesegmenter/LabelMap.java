@@ -0,0 +1,123 @@
+/**
+ * LabelMap.java
+ * The result of a connected-components or segmentation run: one dense
+ * component number (0 .. componentCount-1) for every pixel of the image,
+ * stored row by row so that labels[pixelID] is the label of that pixel.
+ */
+
+package imagesegmenter;
+
+public class LabelMap {
+    private final int width, height;
+    private final int[] labels;
+    private final int componentCount;
+    private final int unionCount;
+    private final ComponentStats stats; // null unless they were asked for.
+
+    /**
+     * initializes this LabelMap
+     * @param width (int): width of the labelled image
+     * @param height (int): height of the labelled image
+     * @param labels (int[]): the component number of each pixel, row by row
+     * @param componentCount (int): the number of distinct components
+     * @param unionCount (int): the number of unions it took to find them
+     */
+    public LabelMap(int width, int height, int[] labels, int componentCount, int unionCount) {
+        this(width, height, labels, componentCount, unionCount, null);
+    }
+
+    /**
+     * initializes this LabelMap along with the statistics of its components
+     * @param width (int): width of the labelled image
+     * @param height (int): height of the labelled image
+     * @param labels (int[]): the component number of each pixel, row by row
+     * @param componentCount (int): the number of distinct components
+     * @param unionCount (int): the number of unions it took to find them
+     * @param stats (ComponentStats): area, bounding box, centroid and mean color
+     * of each component, or null
+     */
+    public LabelMap(int width, int height, int[] labels, int componentCount, int unionCount, ComponentStats stats) {
+        this.stats = stats;
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.componentCount = componentCount;
+        this.unionCount = unionCount;
+    }
+
+    /**
+     * @return (int): width of the labelled image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return (int): height of the labelled image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return (int[]): the component number of each pixel, row by row.
+     * this is the backing array, not a copy.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param x (int): x-coord
+     * @param y (int): y-coord
+     * @return (int): the component number of the pixel at (x, y)
+     */
+    public int getLabel(int x, int y) {
+        return labels[width * y + x];
+    }
+
+    /**
+     * paints every pixel with the progressive color of its component, so that
+     * neighboring components contrast. allocates nothing per pixel.
+     * @param rgb (int[]): receives the packed RGB color of each pixel, row by row
+     */
+    public void recolor(int[] rgb) {
+        recolor(rgb, 0, height);
+    }
+
+    /**
+     * paints the pixels of rows y0 .. y1-1 only, so that a large image can be
+     * recolored and shown band by band.
+     * @param rgb (int[]): receives the packed RGB color of each pixel, row by row
+     * @param y0 (int): first row to paint
+     * @param y1 (int): one past the last row to paint
+     */
+    public void recolor(int[] rgb, int y0, int y1) {
+        int[] palette = ProgressiveColors.palette(componentCount);
+        for (int i = width * y0, end = width * y1; i < end; i++) {
+            rgb[i] = palette[labels[i] & ProgressiveColors.PALETTE_MASK];
+        }
+    }
+
+    /**
+     * @return (int): the number of distinct components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return (ComponentStats): the statistics of each component, or null if
+     * they were not gathered
+     */
+    public ComponentStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return (int): the number of times UNION was called to build the components
+     */
+    public int getUnionCount() {
+        return unionCount;
+    }
+}
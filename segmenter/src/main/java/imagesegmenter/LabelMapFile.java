@@ -0,0 +1,291 @@
+/**
+ * LabelMapFile.java
+ * A binary file holding the component number of every pixel of an image,
+ * laid out so that it can be memory-mapped and read pixel by pixel without
+ * decoding anything.
+ *
+ * All values are big-endian.
+ *   header (32 bytes): magic "ICLM", version, width, height, componentCount,
+ *       bytesPerLabel as int32s, then tableOffset as an int64
+ *   raster: width * height unsigned labels of bytesPerLabel bytes each, row
+ *       by row. bytesPerLabel is 1, 2 or 4, the fewest that fit the count.
+ *   component table (at tableOffset, 8-aligned): one record per component
+ *       with the pixelID of its first pixel in raster order and its area,
+ *       both int64s, so an image of more than 2^31 pixels fits
+ *
+ * Components are numbered in the order they are first met in a raster scan,
+ * the same as in a LabelMap.
+ */
+
+package imagesegmenter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+public class LabelMapFile implements Closeable {
+    public static final int MAGIC = 0x49434c4d; // "ICLM"
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 16;
+    static final int FIRST_PIXEL = 0, AREA = 8; // offsets within a component record.
+
+    private final LargeMappedFile file;
+    private final int w, h, componentCount, bytesPerLabel;
+    private final long tableOffset;
+
+    private LabelMapFile(LargeMappedFile file, int w, int h, int componentCount, int bytesPerLabel, long tableOffset) {
+        this.file = file;
+        this.w = w;
+        this.h = h;
+        this.componentCount = componentCount;
+        this.bytesPerLabel = bytesPerLabel;
+        this.tableOffset = tableOffset;
+    }
+
+    /**
+     * maps an existing label map file for reading.
+     * @param path (File): the file
+     * @return (LabelMapFile): the mapped file, to be closed by the caller
+     */
+    public static LabelMapFile open(File path) throws IOException {
+        LargeMappedFile file = new LargeMappedFile(path, path.length(), true);
+        try {
+            if (path.length() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+                throw new IOException("Not a label map file: " + path);
+            }
+            if (file.getInt(4) != VERSION) {
+                throw new IOException("Unsupported label map version " + file.getInt(4) + ": " + path);
+            }
+            int w = file.getInt(8), h = file.getInt(12), count = file.getInt(16), bytesPerLabel = file.getInt(20);
+            long tableOffset = file.getLong(24);
+            if (w <= 0 || h <= 0 || count < 1 || count > (long) w * h
+                    || (bytesPerLabel != 1 && bytesPerLabel != 2 && bytesPerLabel != 4)
+                    || tableOffset < HEADER_SIZE + (long) w * h * bytesPerLabel) {
+                throw new IOException("Label map file has a bad header: " + path);
+            }
+            if (tableOffset + (long) RECORD_SIZE * count > path.length()) {
+                throw new IOException("Label map file is truncated: " + path);
+            }
+            return new LabelMapFile(file, w, h, count, bytesPerLabel, tableOffset);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * creates a label map file of the right size and writes its header.
+     * the raster and table are left for the caller to fill in.
+     * @param path (File): the file, replaced if it exists
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param componentCount (int): the number of components
+     * @return (LabelMapFile): the mapped file, to be closed by the caller
+     */
+    static LabelMapFile create(File path, int w, int h, int componentCount) throws IOException {
+        int bytesPerLabel = componentCount <= 1 << 8 ? 1 : componentCount <= 1 << 16 ? 2 : 4;
+        long tableOffset = (HEADER_SIZE + (long) w * h * bytesPerLabel + 7) & ~7L;
+        long length = tableOffset + (long) RECORD_SIZE * componentCount;
+        path.delete();
+        LargeMappedFile file = new LargeMappedFile(path, length);
+        file.putInt(0, MAGIC);
+        file.putInt(4, VERSION);
+        file.putInt(8, w);
+        file.putInt(12, h);
+        file.putInt(16, componentCount);
+        file.putInt(20, bytesPerLabel);
+        file.putLong(24, tableOffset);
+        return new LabelMapFile(file, w, h, componentCount, bytesPerLabel, tableOffset);
+    }
+
+    /**
+     * writes a label map to a file.
+     * @param path (File): the file, replaced if it exists
+     * @param labels (LabelMap): the labels to write
+     */
+    public static void write(File path, LabelMap labels) throws IOException {
+        int w = labels.getWidth(), h = labels.getHeight();
+        int[] label = labels.getLabels();
+        try (LabelMapFile out = create(path, w, h, labels.getComponentCount())) {
+            for (int p = 0; p < w*h; p++) {
+                int k = label[p];
+                out.putLabel(p, k);
+                out.countPixel(k, p);
+            }
+        }
+    }
+
+    /**
+     * writes the trees of a forest over the pixelIDs straight to a file, one
+     * component per tree, without building a LabelMap first. the label of a
+     * root is stored in the raster at the root's own pixel as soon as the
+     * root is met, so only a bit per pixel is needed on the side.
+     * @param path (File): the file, replaced if it exists
+     * @param forest (DisjointSets): forest over the pixelIDs of the image
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (int): the number of components
+     */
+    public static int write(File path, DisjointSets forest, int w, int h) throws IOException {
+        int count = 0;
+        for (int p = 0; p < w*h; p++) {
+            if (forest.isRoot(p)) {
+                count++;
+            }
+        }
+        BitSet numbered = new BitSet(w*h);
+        try (LabelMapFile out = create(path, w, h, count)) {
+            int next = 0;
+            for (int p = 0; p < w*h; p++) {
+                int root = forest.find(p);
+                if (!numbered.get(root)) {
+                    numbered.set(root);
+                    out.putLabel(root, next++);
+                }
+                int k = out.getLabel(root);
+                out.putLabel(p, k);
+                out.countPixel(k, p);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * adds pixel p to component k's record; the first pixel added is kept as
+     * the component's first pixel.
+     */
+    void countPixel(int k, long p) throws IOException {
+        long record = tableOffset + (long) RECORD_SIZE * k;
+        long area = file.getLong(record + AREA);
+        if (area == 0) {
+            file.putLong(record + FIRST_PIXEL, p);
+        }
+        file.putLong(record + AREA, area + 1);
+    }
+
+    /**
+     * sets a component's record.
+     * @param k (int): the component number
+     * @param firstPixel (long): pixelID of the component's first pixel in raster order
+     * @param area (long): the number of pixels in the component
+     */
+    void putComponent(int k, long firstPixel, long area) throws IOException {
+        long record = tableOffset + (long) RECORD_SIZE * k;
+        file.putLong(record + FIRST_PIXEL, firstPixel);
+        file.putLong(record + AREA, area);
+    }
+
+    /**
+     * @param pixelID (long): width * y + x
+     * @param k (int): the component number of that pixel
+     */
+    void putLabel(long pixelID, int k) throws IOException {
+        long offset = HEADER_SIZE + pixelID * bytesPerLabel;
+        if (bytesPerLabel == 1) {
+            file.putByte(offset, (byte) k);
+        } else if (bytesPerLabel == 2) {
+            file.putShort(offset, (short) k);
+        } else {
+            file.putInt(offset, k);
+        }
+    }
+
+    /**
+     * @param pixelID (long): width * y + x
+     * @return (int): the component number of that pixel
+     */
+    public int getLabel(long pixelID) throws IOException {
+        long offset = HEADER_SIZE + pixelID * bytesPerLabel;
+        if (bytesPerLabel == 1) {
+            return file.getByte(offset) & 0xff;
+        } else if (bytesPerLabel == 2) {
+            return file.getShort(offset) & 0xffff;
+        }
+        return file.getInt(offset);
+    }
+
+    /**
+     * @param x (int): x-coord
+     * @param y (int): y-coord
+     * @return (int): the component number of the pixel at (x, y)
+     */
+    public int getLabel(int x, int y) throws IOException {
+        return getLabel((long) w * y + x);
+    }
+
+    /**
+     * @param k (int): a component number
+     * @return (long): the pixelID of the component's first pixel in raster order
+     */
+    public long getFirstPixel(int k) throws IOException {
+        return file.getLong(tableOffset + (long) RECORD_SIZE * k + FIRST_PIXEL);
+    }
+
+    /**
+     * @param k (int): a component number
+     * @return (long): the number of pixels in the component
+     */
+    public long getArea(int k) throws IOException {
+        return file.getLong(tableOffset + (long) RECORD_SIZE * k + AREA);
+    }
+
+    /**
+     * reads the whole raster into memory.
+     * @return (LabelMap): the labels, with a union count of width*height - componentCount
+     * @throws IOException if a label is not a component number
+     * @throws IllegalStateException if the image has more pixels than an array holds
+     */
+    public LabelMap toLabelMap() throws IOException {
+        if ((long) w * h > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Label map is too large to read into memory: " + w + "x" + h);
+        }
+        int[] labels = new int[w*h];
+        if (bytesPerLabel == 4) {
+            file.getInts(HEADER_SIZE, labels, 0, labels.length);
+        } else {
+            for (int p = 0; p < labels.length; p++) {
+                labels[p] = getLabel(p);
+            }
+        }
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] < 0 || labels[p] >= componentCount) {
+                throw new IOException("Label map file has label " + labels[p] + " of " + componentCount + " at pixel " + p);
+            }
+        }
+        return new LabelMap(w, h, labels, componentCount, w*h - componentCount);
+    }
+
+    /**
+     * @return (int): width of the labelled image
+     */
+    public int getWidth() {
+        return w;
+    }
+
+    /**
+     * @return (int): height of the labelled image
+     */
+    public int getHeight() {
+        return h;
+    }
+
+    /**
+     * @return (int): the number of distinct components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return (int): the size of one label in the raster, in bytes
+     */
+    public int getBytesPerLabel() {
+        return bytesPerLabel;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * LargeMappedFile.java
+ * A file used as a big off-heap array of ints and longs, memory-mapped a
+ * chunk at a time so it can pass 2GB and the size of the Java heap.
+ *
+ * Chunks are mapped on first touch. A file opened with a length is set to
+ * that length when it is opened and mapped no further, so it never has to
+ * be cut back while a mapping is live (which Windows refuses). A growing
+ * file, for working tables whose size is not known in advance, maps whole
+ * chunks and grows to cover them; it may end up to a chunk longer than the
+ * data in it. Values must not straddle a chunk boundary, which holds as long
+ * as every value's offset is a multiple of its size. Not thread-safe.
+ */
+
+package imagesegmenter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+class LargeMappedFile implements Closeable {
+    private static final int CHUNK_BITS = 26; // 64MB per mapping.
+    static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    private final long length; // bytes that may be mapped, or -1 for a growing file.
+
+    /**
+     * opens (creating if needed) a file for reading and writing, and sets it
+     * to the passed length.
+     * @param path (File): the file
+     * @param length (long): its length in bytes
+     */
+    LargeMappedFile(File path, long length) throws IOException {
+        this(path, length, false);
+    }
+
+    /**
+     * opens a file of known length.
+     * @param path (File): the file
+     * @param length (long): its length in bytes; a writable file is set to it
+     * @param readOnly (boolean): whether the file may only be read
+     */
+    LargeMappedFile(File path, long length, boolean readOnly) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative file length: " + length);
+        }
+        file = new RandomAccessFile(path, readOnly ? "r" : "rw");
+        channel = file.getChannel();
+        this.readOnly = readOnly;
+        this.length = length;
+        if (!readOnly && file.length() != length) {
+            file.setLength(length);
+        }
+    }
+
+    private LargeMappedFile(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        readOnly = false;
+        length = -1;
+    }
+
+    /**
+     * opens (creating if needed) a working file that grows a chunk at a time
+     * as it is written, for tables of unknown size. what is in it past the
+     * data written is unspecified.
+     * @param path (File): the file
+     * @return (LargeMappedFile): the open file
+     */
+    static LargeMappedFile growing(File path) throws IOException {
+        return new LargeMappedFile(path);
+    }
+
+    private MappedByteBuffer chunk(long offset) throws IOException {
+        int index = (int) (offset >>> CHUNK_BITS);
+        while (chunks.size() <= index) {
+            chunks.add(null);
+        }
+        MappedByteBuffer chunk = chunks.get(index);
+        if (chunk == null) {
+            long start = (long) index << CHUNK_BITS;
+            if (length >= 0 && start >= length) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " is past the end of a " + length + "-byte file");
+            }
+            long size = length >= 0 ? Math.min(CHUNK_SIZE, length - start) : CHUNK_SIZE;
+            chunk = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, start, size);
+            chunks.set(index, chunk);
+        }
+        return chunk;
+    }
+
+    byte getByte(long offset) throws IOException {
+        return chunk(offset).get((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    void putByte(long offset, byte value) throws IOException {
+        chunk(offset).put((int) (offset & (CHUNK_SIZE - 1)), value);
+    }
+
+    short getShort(long offset) throws IOException {
+        return chunk(offset).getShort((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    void putShort(long offset, short value) throws IOException {
+        chunk(offset).putShort((int) (offset & (CHUNK_SIZE - 1)), value);
+    }
+
+    int getInt(long offset) throws IOException {
+        return chunk(offset).getInt((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    void putInt(long offset, int value) throws IOException {
+        chunk(offset).putInt((int) (offset & (CHUNK_SIZE - 1)), value);
+    }
+
+    long getLong(long offset) throws IOException {
+        return chunk(offset).getLong((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    void putLong(long offset, long value) throws IOException {
+        chunk(offset).putLong((int) (offset & (CHUNK_SIZE - 1)), value);
+    }
+
+    /**
+     * copies ints out of the file, a chunk at a time.
+     * @param offset (long): where the first int is; a multiple of 4
+     * @param dst (int[]): where to put them
+     * @param from (int): index in dst of the first int
+     * @param count (int): the number of ints
+     */
+    void getInts(long offset, int[] dst, int from, int count) throws IOException {
+        while (count > 0) {
+            int inChunk = (int) Math.min(count, (CHUNK_SIZE - (offset & (CHUNK_SIZE - 1))) / 4);
+            MappedByteBuffer chunk = chunk(offset);
+            chunk.asIntBuffer().get((int) (offset & (CHUNK_SIZE - 1)) / 4, dst, from, inChunk);
+            offset += 4L * inChunk;
+            from += inChunk;
+            count -= inChunk;
+        }
+    }
+
+    /**
+     * copies ints into the file, a chunk at a time.
+     * @param offset (long): where the first int goes; a multiple of 4
+     * @param src (int[]): the ints
+     * @param from (int): index in src of the first int
+     * @param count (int): the number of ints
+     */
+    void putInts(long offset, int[] src, int from, int count) throws IOException {
+        while (count > 0) {
+            int inChunk = (int) Math.min(count, (CHUNK_SIZE - (offset & (CHUNK_SIZE - 1))) / 4);
+            MappedByteBuffer chunk = chunk(offset);
+            chunk.asIntBuffer().put((int) (offset & (CHUNK_SIZE - 1)) / 4, src, from, inChunk);
+            offset += 4L * inChunk;
+            from += inChunk;
+            count -= inChunk;
+        }
+    }
+
+    /**
+     * closes the file. the mappings themselves are released when the JVM
+     * collects them.
+     */
+    public void close() throws IOException {
+        chunks.clear();
+        file.close();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * ParallelLabeler.java
+ * Connected-component labeling of the strict pixel graph, split into stripes
+ * of rows that are labelled independently on a ForkJoinPool.
+ *
+ * A stripe only ever unions pixels inside its own rows, so sibling stripes
+ * never touch the same up-trees. When both halves of a range are done, the
+ * pixels on either side of the seam between them are unioned, which leaves
+ * the forest with exactly the components a single raster scan finds.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+class ParallelLabeler {
+    private static final int STRIPES_PER_THREAD = 4; // extra stripes so idle threads can steal work.
+
+    private ParallelLabeler() {
+    }
+
+    /**
+     * unions every pair of equal-colored neighbors in the image.
+     * @param pool (ForkJoinPool): the threads to run on
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param forest (DisjointSets): forest over the pixelIDs, reset by the caller
+     * @param progress (ProgressCounter): counts the rows scanned
+     * @return (int): the number of unions executed.
+     * @throws CancellationException if the call is canceled
+     */
+    static int label(ForkJoinPool pool, int[] pixels, int w, int h, DisjointSets forest, ProgressCounter progress) {
+        int minRows = Math.max(1, h / (pool.getParallelism() * STRIPES_PER_THREAD));
+        return pool.invoke(new Stripe(pixels, w, 0, h, minRows, forest, progress));
+    }
+
+    /**
+     * unions the equal-colored neighbors in rows y0 .. y1-1 with one raster scan.
+     * pixels in row y1 and below are left alone.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param y0 (int): first row of the stripe
+     * @param y1 (int): one past the last row of the stripe
+     * @param forest (DisjointSets): forest over the pixelIDs
+     * @param progress (ProgressCounter): counts the rows scanned
+     * @return (int): the number of unions executed.
+     * @throws CancellationException if the call is canceled
+     */
+    static int labelRows(int[] pixels, int w, int y0, int y1, DisjointSets forest, ProgressCounter progress) {
+        int unionCount = 0;
+        for (int y = y0; y < y1; y++) { // go row by row
+            progress.advance(1);
+            int p = w * y;
+            for (int x = 0; x < w; x++, p++) {
+                int currentColor = pixels[p];
+                if (x+1 < w && currentColor == pixels[p+1]) {
+                    // pixel on right is in same component
+                    if (forest.union(p, p+1)) {
+                        unionCount++;
+                    }
+                }
+                if (y+1 < y1 && currentColor == pixels[p+w]) {
+                    // pixel below is in same component
+                    if (forest.union(p, p+w)) {
+                        unionCount++;
+                    }
+                }
+            }
+        }
+        return unionCount;
+    }
+
+    /**
+     * unions the equal-colored pixels across the seam above row y.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param y (int): first row below the seam
+     * @param forest (DisjointSets): forest over the pixelIDs
+     * @return (int): the number of unions executed.
+     */
+    static int mergeSeam(int[] pixels, int w, int y, DisjointSets forest) {
+        int unionCount = 0;
+        int p = w * (y-1);
+        for (int x = 0; x < w; x++, p++) {
+            if (pixels[p] == pixels[p+w] && forest.union(p, p+w)) {
+                unionCount++;
+            }
+        }
+        return unionCount;
+    }
+
+    /**
+     * Labels a range of rows, splitting it in half until it is small enough.
+     */
+    private static class Stripe extends RecursiveTask<Integer> {
+        private final int[] pixels;
+        private final int w, y0, y1, minRows;
+        private final DisjointSets forest;
+        private final ProgressCounter progress;
+
+        Stripe(int[] pixels, int w, int y0, int y1, int minRows, DisjointSets forest, ProgressCounter progress) {
+            this.pixels = pixels;
+            this.w = w;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.minRows = minRows;
+            this.forest = forest;
+            this.progress = progress;
+        }
+
+        protected Integer compute() {
+            if (y1 - y0 <= minRows) {
+                return labelRows(pixels, w, y0, y1, forest, progress);
+            }
+            int mid = (y0 + y1) >>> 1;
+            Stripe top = new Stripe(pixels, w, y0, mid, minRows, forest, progress);
+            Stripe bottom = new Stripe(pixels, w, mid, y1, minRows, forest, progress);
+            top.fork();
+            int unionCount = bottom.compute() + top.join();
+            return unionCount + mergeSeam(pixels, w, mid, forest);
+        }
+    }
+}
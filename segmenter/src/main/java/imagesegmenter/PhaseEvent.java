@@ -0,0 +1,27 @@
+/**
+ * PhaseEvent.java
+ * The Flight Recorder event for one run of a SegmentationStats.Phase.
+ */
+
+package imagesegmenter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("imagesegmenter.Phase")
+@Label("Segmentation Phase")
+@Category("Image Segmenter")
+@Description("One phase of reading, segmenting, recoloring or writing an image")
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+}
@@ -0,0 +1,51 @@
+/**
+ * PhaseTimer.java
+ * Times one run of a SegmentationStats.Phase. Stopping it adds the time to
+ * the stats, if there are any, and commits an imagesegmenter.Phase event to
+ * Flight Recorder, if a recording wants one.
+ */
+
+package imagesegmenter;
+
+public final class PhaseTimer {
+    private final SegmentationStats stats; // null when only Flight Recorder is told.
+    private final SegmentationStats.Phase phase;
+    private final PhaseEvent event;
+    private final long start;
+
+    private PhaseTimer(SegmentationStats stats, SegmentationStats.Phase phase, int w, int h) {
+        this.stats = stats;
+        this.phase = phase;
+        event = new PhaseEvent();
+        event.phase = phase.name();
+        event.width = w;
+        event.height = h;
+        event.begin();
+        start = System.nanoTime();
+    }
+
+    /**
+     * starts timing a phase.
+     * @param stats (SegmentationStats): where to add the time, or null
+     * @param phase (SegmentationStats.Phase): the phase
+     * @param w (int): width of the image it works on
+     * @param h (int): height of the image it works on
+     * @return (PhaseTimer): the running timer
+     */
+    static PhaseTimer start(SegmentationStats stats, SegmentationStats.Phase phase, int w, int h) {
+        return new PhaseTimer(stats, phase, w, h);
+    }
+
+    /**
+     * ends the phase. call it once.
+     * @return (long): how long the phase took, in nanoseconds
+     */
+    public long stop() {
+        long nanos = System.nanoTime() - start;
+        if (stats != null) {
+            stats.recordPhase(phase, nanos);
+        }
+        event.commit();
+        return nanos;
+    }
+}
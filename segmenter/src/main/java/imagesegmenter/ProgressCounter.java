@@ -0,0 +1,53 @@
+/**
+ * ProgressCounter.java
+ * Counts the work done in one stage of an engine call, possibly by many
+ * threads at once, and passes each new total on to a ProgressMonitor.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class ProgressCounter {
+    private final ProgressMonitor monitor;
+    private final ProgressMonitor.Stage stage;
+    private final long total;
+    private final AtomicLong done = new AtomicLong();
+
+    /**
+     * initializes this counter
+     * @param monitor (ProgressMonitor): where to report
+     * @param stage (ProgressMonitor.Stage): the stage being counted
+     * @param total (long): the amount of work in the stage
+     */
+    ProgressCounter(ProgressMonitor monitor, ProgressMonitor.Stage stage, long total) {
+        this.monitor = monitor;
+        this.stage = stage;
+        this.total = total;
+    }
+
+    /**
+     * adds to the work done, reports it, and stops the call if it was canceled.
+     * @param amount (long): work done since the last call
+     * @throws CancellationException if the monitor has canceled the call
+     */
+    void advance(long amount) {
+        checkpoint(monitor, stage, done.addAndGet(amount), total);
+    }
+
+    /**
+     * reports progress and stops the call if it was canceled.
+     * @param monitor (ProgressMonitor): where to report
+     * @param stage (ProgressMonitor.Stage): what the call is doing
+     * @param done (long): how much of the stage is done
+     * @param total (long): how much there is to do in the stage
+     * @throws CancellationException if the monitor has canceled the call
+     */
+    static void checkpoint(ProgressMonitor monitor, ProgressMonitor.Stage stage, long done, long total) {
+        monitor.progress(stage, done, total);
+        if (monitor.isCanceled()) {
+            throw new CancellationException("Canceled while " + stage);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * ProgressMonitor.java
+ * Watches a long SegmentationEngine call: it is told how far the call has
+ * got, and can ask it to stop.
+ *
+ * The engine reports at checkpoints a few times per row or every few tens of
+ * thousands of unions, and at each one asks isCanceled(). A canceled call
+ * gives up by throwing java.util.concurrent.CancellationException and leaves
+ * the image untouched. Reports can come from any of the engine's threads, so
+ * implementations must be thread-safe.
+ */
+
+package imagesegmenter;
+
+public interface ProgressMonitor {
+    /**
+     * A monitor that ignores every report and never cancels.
+     */
+    ProgressMonitor NONE = new ProgressMonitor() {
+        public void progress(Stage stage, long done, long total) {
+        }
+
+        public boolean isCanceled() {
+            return false;
+        }
+    };
+
+    /**
+     * The parts of an engine call, each reported with its own units.
+     */
+    enum Stage {
+        SCANNING,       // rows scanned for equal-colored neighbors.
+        BUILDING_EDGES, // passes over the rows while weighing and sorting edges: 2 per row.
+        MERGING,        // unions made; total - done more are needed, i.e. that many trees too many remain.
+        LABELING,       // rows numbered.
+        FILTERING,      // rows filtered, counted once for each pass over the image.
+        REFINING        // edges near region boundaries processed at one level of an image pyramid.
+    }
+
+    /**
+     * @param stage (Stage): what the call is doing
+     * @param done (long): how much of the stage is done
+     * @param total (long): how much there is to do in the stage
+     */
+    void progress(Stage stage, long done, long total);
+
+    /**
+     * @return (boolean): whether the call should stop
+     */
+    boolean isCanceled();
+}
@@ -10,6 +10,11 @@
  *
  * created Nov. 5, 2014.
  */
+
+package imagesegmenter;
+
+import java.util.Arrays;
+
 public class ProgressiveColors {
 	static int NBITS = 24; // Size of the full color space, in bits per pixel.
 	
@@ -69,6 +74,49 @@ public class ProgressiveColors {
 		int[] rgb_bits = triples[idx];
 		return rgb_bits;
 	}
+	// Each of the 8 triples above packed as one RGB int with a single bit per channel.
+	static final int[] PACKED_TRIPLES = new int[8];
+	static {
+		for (int i = 0; i < 8; i++) {
+			PACKED_TRIPLES[i] = (triples[i][0] << 16) | (triples[i][1] << 8) | triples[i][2];
+		}
+	}
+	
+	// Colors 0 .. palette.length-1, computed once and shared; grown by palette(n).
+	private static volatile int[] palette = new int[0];
+	// Colors repeat after 2^NBITS, so the palette never holds more; index it with k & PALETTE_MASK.
+	static final int PALETTE_MASK = (1 << NBITS) - 1;
+	
+	// Compute the kth progressive color packed as 0xRRGGBB, without allocating.
+	// Same color as progressiveColor(k): the low 3 bits of k pick the sign bit of
+	// each channel, and each further group of 3 bits supplies the next bit down.
+	static int progressiveColorInt(int k) {
+		int rgb = 0;
+		for (int i = 1; i < NBITS/3; i++) {
+			rgb |= PACKED_TRIPLES[(k >>> (3*i)) & 7] << (7-i);
+		}
+		return rgb ^ (PACKED_TRIPLES[k & 7] * 0xff); // 255 - x in the channels whose sign bit is set.
+	}
+	
+	// Return packed colors for at least 0 .. min(n, 2^NBITS)-1.  The array is shared: don't write to it.
+	static int[] palette(int n) {
+		n = Math.min(n, PALETTE_MASK + 1);
+		int[] colors = palette;
+		if (colors.length >= n) {
+			return colors;
+		}
+		synchronized (ProgressiveColors.class) {
+			colors = palette;
+			if (colors.length < n) {
+				int[] grown = Arrays.copyOf(colors, Math.min(Math.max(n, 2*colors.length), PALETTE_MASK + 1));
+				for (int k = colors.length; k < grown.length; k++) {
+					grown[k] = progressiveColorInt(k);
+				}
+				palette = colors = grown;
+			}
+			return colors;
+		}
+	}
 	// Main method is just for stand-alone testing.
 	public static void main(String[] args) {
 		ProgressiveColors pc = new ProgressiveColors();
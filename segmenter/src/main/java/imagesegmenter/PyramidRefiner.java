@@ -0,0 +1,189 @@
+/**
+ * PyramidRefiner.java
+ * Carries a segmentation one level down an ImagePyramid: the regions of the
+ * coarser level are doubled in size, and only the pixels near their
+ * boundaries are decided again at the finer level.
+ *
+ * A pixel that is more than BAND pixels from every boundary keeps the region
+ * of its 2x2 block, and all such pixels of a region are unioned into one
+ * anchored tree. The rest are free. Kruskal's algorithm then runs over just
+ * the edges that touch a free pixel, lightest first, and joins any two trees
+ * unless both are anchored. Every free pixel ends up in the region it is
+ * joined to by the lightest path, and the number of regions is unchanged.
+ */
+
+package imagesegmenter;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+class PyramidRefiner {
+    static final int BAND = 2; // how far either side of a coarse boundary pixels are decided again.
+    private static final int CHECK_INTERVAL = 1 << 16; // edges between cancellation checks.
+
+    private PyramidRefiner() {
+    }
+
+    /**
+     * refines a coarse segmentation into a forest over the pixels of the
+     * finer level, with one tree per region.
+     * @param coarseLabels (int[]): the region number (0 .. regionCount-1) of
+     * every pixel of the coarser level, row by row
+     * @param regionCount (int): the number of regions
+     * @param cw (int): width of the coarser level
+     * @param pixels (int[]): packed RGB pixels of the finer level, row by row
+     * @param w (int): width of the finer level
+     * @param h (int): height of the finer level
+     * @param forest (DisjointSets): forest over the pixelIDs of the finer
+     * level, with every pixel its own root
+     * @param monitor (ProgressMonitor): told the edges of the band processed
+     * @param stats (SegmentationStats): receives the number of edges used
+     * @return (int): the number of unions executed.
+     * @throws CancellationException if the monitor cancels the call
+     */
+    static int refine(int[] coarseLabels, int regionCount, int cw, int[] pixels, int w, int h,
+                      DisjointSets forest, ProgressMonitor monitor, SegmentationStats stats) {
+        // region[p] is the region of p while p is anchored, -1 while it is free;
+        // once unions start it is only meaningful at roots.
+        int[] region = new int[w*h];
+        for (int y = 0, p = 0; y < h; y++) {
+            int row = cw * (y >> 1);
+            for (int x = 0; x < w; x++, p++) {
+                region[p] = coarseLabels[row + (x >> 1)];
+            }
+        }
+        byte[] band = markBand(region, w, h);
+
+        // Union the anchored pixels of each region, then free the rest. A region
+        // lying wholly in the band keeps its first pixel as its anchor.
+        int unions = 0;
+        int[] anchor = new int[regionCount];
+        Arrays.fill(anchor, -1);
+        for (int p = 0; p < w*h; p++) {
+            if (band[p] == 0) {
+                int k = region[p];
+                if (anchor[k] == -1) {
+                    anchor[k] = p;
+                } else if (forest.union(anchor[k], p)) {
+                    unions++;
+                }
+            }
+        }
+        int free = 0;
+        for (int p = 0; p < w*h; p++) {
+            if (band[p] != 0) {
+                int k = region[p];
+                if (anchor[k] == -1) {
+                    anchor[k] = p;
+                } else {
+                    region[p] = -1;
+                }
+                free++;
+            }
+        }
+        for (int k = 0; k < regionCount; k++) {
+            region[forest.find(anchor[k])] = k;
+        }
+
+        int[] edges = bandEdges(pixels, w, h, band, free);
+        for (int i = 0; i < edges.length; i++) {
+            if (i % CHECK_INTERVAL == 0) {
+                ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.REFINING, i, edges.length);
+            }
+            int e = edges[i];
+            int p = e >>> 1;
+            int root1 = forest.find(p);
+            int root2 = forest.find((e & 1) == 0 ? p+1 : p+w);
+            if (root1 == root2 || (region[root1] >= 0 && region[root2] >= 0)) {
+                continue;
+            }
+            int k = Math.max(region[root1], region[root2]);
+            region[forest.link(root1, root2)] = k;
+            unions++;
+        }
+        monitor.progress(ProgressMonitor.Stage.REFINING, edges.length, edges.length);
+        stats.countEdges(edges.length);
+        return unions;
+    }
+
+    /**
+     * marks the pixels within BAND of a boundary between two regions, i.e.
+     * of an edge whose endpoints are in different regions.
+     * @return (byte[]): nonzero for the pixels in the band
+     */
+    private static byte[] markBand(int[] region, int w, int h) {
+        byte[] band = new byte[w*h];
+        for (int y = 0, p = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, p++) {
+                if (x+1 < w && region[p] != region[p+1]) {
+                    band[p] = band[p+1] = 1;
+                }
+                if (y+1 < h && region[p] != region[p+w]) {
+                    band[p] = band[p+w] = 1;
+                }
+            }
+        }
+        // Widen the band one pixel at a time; pixels added in step d are marked d+1.
+        for (int d = 1; d < BAND; d++) {
+            for (int y = 0, p = 0; y < h; y++) {
+                for (int x = 0; x < w; x++, p++) {
+                    if (band[p] == d) {
+                        if (x > 0 && band[p-1] == 0) band[p-1] = (byte) (d+1);
+                        if (x+1 < w && band[p+1] == 0) band[p+1] = (byte) (d+1);
+                        if (y > 0 && band[p-w] == 0) band[p-w] = (byte) (d+1);
+                        if (y+1 < h && band[p+w] == 0) band[p+w] = (byte) (d+1);
+                    }
+                }
+            }
+        }
+        return band;
+    }
+
+    /**
+     * collects the edges with at least one endpoint in the band and sorts
+     * them lightest first, by a stable counting sort on their weights.
+     * @return (int[]): the ids of the edges, lightest first
+     */
+    private static int[] bandEdges(int[] pixels, int w, int h, byte[] band, int free) {
+        int[] ids = new int[4 * free];
+        int[] weights = new int[4 * free];
+        int[] histogram = new int[EdgeList.MAX_WEIGHT + 2];
+        int n = 0;
+        for (int y = 0, p = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, p++) {
+                if (band[p] == 0) {
+                    continue;
+                }
+                // Edges out of p, and edges into p from anchored pixels, which
+                // are not visited.
+                if (x > 0 && band[p-1] == 0) {
+                    ids[n] = 2*(p-1);
+                    weights[n++] = EdgeList.weight(pixels[p-1], pixels[p]);
+                }
+                if (y > 0 && band[p-w] == 0) {
+                    ids[n] = 2*(p-w) + 1;
+                    weights[n++] = EdgeList.weight(pixels[p-w], pixels[p]);
+                }
+                if (x+1 < w) {
+                    ids[n] = 2*p;
+                    weights[n++] = EdgeList.weight(pixels[p], pixels[p+1]);
+                }
+                if (y+1 < h) {
+                    ids[n] = 2*p + 1;
+                    weights[n++] = EdgeList.weight(pixels[p], pixels[p+w]);
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            histogram[weights[i] + 1]++;
+        }
+        for (int i = 1; i < histogram.length; i++) {
+            histogram[i] += histogram[i-1];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[histogram[weights[i]]++] = ids[i];
+        }
+        return order;
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * RegionGraph.java
+ * The region adjacency graph of a segmentation: one node per region, and one
+ * edge per pair of regions that touch, carrying the number of pixel-graph
+ * edges along their common boundary and the sum and minimum of those edges'
+ * weights (squared RGB distances, as in EdgeList).
+ *
+ * Everything is kept in primitive arrays in compressed-row form: the pixels
+ * of region r are pixels[pixelStart[r] .. pixelStart[r+1]-1], and its
+ * neighbors are neighbor[adjStart[r] .. adjStart[r+1]-1].
+ *
+ * Regions can then be merged and the merges undone, most recent first,
+ * without going back to the image. Merged regions are kept in a forest of
+ * up-trees that links the smaller region under the larger and never
+ * compresses paths, so undoing a merge is cutting one link. A merge only
+ * repaints the pixels of the region that was absorbed, in the color of the
+ * one that absorbed it, and remembers the rectangle it repainted so a view
+ * can redraw just that. Not thread-safe.
+ */
+
+package imagesegmenter;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+public class RegionGraph {
+    private final int width, height;
+    private final int[] labels; // the region each pixel had when the graph was built.
+    private final int regionCount;
+    private final int unionCount; // unions that built the original regions.
+
+    private final int[] pixelStart, pixels; // pixelIDs of each region, in raster order.
+    private final int[] adjStart, neighbor; // neighbors of each region, in increasing order.
+    private final int[] boundaryLength, minWeight; // per neighbor entry.
+    private final long[] weightSum; // per neighbor entry.
+
+    // Merges: parent[r] == r for a region that has not been absorbed.
+    private final int[] parent;
+    private final int[] area; // pixels under each root.
+    private final int[] next; // circular list of the regions under each root.
+    private final int[] merged; // roots absorbed so far, most recent last.
+    private int mergeCount;
+    private final int[] seen; // scratch marks for neighbors(), one stamp per call.
+    private int stamp;
+    private final Rectangle repainted = new Rectangle(); // pixels the last merge or undo repainted.
+
+    private RegionGraph(int width, int height, int[] labels, int regionCount, int unionCount,
+                        int[] pixelStart, int[] pixels, int[] adjStart, int[] neighbor,
+                        int[] boundaryLength, int[] minWeight, long[] weightSum) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.regionCount = regionCount;
+        this.unionCount = unionCount;
+        this.pixelStart = pixelStart;
+        this.pixels = pixels;
+        this.adjStart = adjStart;
+        this.neighbor = neighbor;
+        this.boundaryLength = boundaryLength;
+        this.minWeight = minWeight;
+        this.weightSum = weightSum;
+        parent = new int[regionCount];
+        area = new int[regionCount];
+        next = new int[regionCount];
+        merged = new int[Math.max(0, regionCount - 1)];
+        seen = new int[regionCount];
+        for (int r = 0; r < regionCount; r++) {
+            parent[r] = r;
+            next[r] = r;
+            area[r] = pixelStart[r+1] - pixelStart[r];
+        }
+    }
+
+    /**
+     * builds the region adjacency graph of a segmentation.
+     * @param regions (LabelMap): the region of every pixel
+     * @param rgb (int[]): packed RGB pixels of the segmented image, row by row,
+     * for the boundary weights
+     * @return (RegionGraph): the graph, with no regions merged
+     */
+    public static RegionGraph build(LabelMap regions, int[] rgb) {
+        int w = regions.getWidth(), h = regions.getHeight(), k = regions.getComponentCount();
+        int[] labels = regions.getLabels();
+        if (rgb.length < (long) w * h) {
+            throw new IllegalArgumentException("Pixel buffer holds " + rgb.length
+                    + " pixels but the image is " + w + "x" + h);
+        }
+
+        // Bucket the pixels by region.
+        int[] pixelStart = new int[k + 1];
+        for (int p = 0; p < w*h; p++) {
+            pixelStart[labels[p] + 1]++;
+        }
+        for (int r = 0; r < k; r++) {
+            pixelStart[r+1] += pixelStart[r];
+        }
+        int[] pixels = new int[w*h];
+        int[] fill = Arrays.copyOf(pixelStart, k);
+        for (int p = 0; p < w*h; p++) {
+            pixels[fill[labels[p]]++] = p;
+        }
+
+        // Bucket every boundary edge under both of its regions, as the other
+        // region in the high half and the weight in the low half.
+        int[] degree = new int[k + 1];
+        for (int y = 0, p = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, p++) {
+                if (x+1 < w && labels[p] != labels[p+1]) {
+                    degree[labels[p] + 1]++;
+                    degree[labels[p+1] + 1]++;
+                }
+                if (y+1 < h && labels[p] != labels[p+w]) {
+                    degree[labels[p] + 1]++;
+                    degree[labels[p+w] + 1]++;
+                }
+            }
+        }
+        for (int r = 0; r < k; r++) {
+            degree[r+1] += degree[r];
+        }
+        long[] sides = new long[degree[k]];
+        fill = Arrays.copyOf(degree, k);
+        for (int y = 0, p = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, p++) {
+                if (x+1 < w && labels[p] != labels[p+1]) {
+                    int weight = EdgeList.weight(rgb[p], rgb[p+1]);
+                    sides[fill[labels[p]]++] = ((long) labels[p+1] << 32) | weight;
+                    sides[fill[labels[p+1]]++] = ((long) labels[p] << 32) | weight;
+                }
+                if (y+1 < h && labels[p] != labels[p+w]) {
+                    int weight = EdgeList.weight(rgb[p], rgb[p+w]);
+                    sides[fill[labels[p]]++] = ((long) labels[p+w] << 32) | weight;
+                    sides[fill[labels[p+w]]++] = ((long) labels[p] << 32) | weight;
+                }
+            }
+        }
+
+        // Sort each region's bucket by neighbor and fold the runs into one entry per neighbor.
+        int[] adjStart = new int[k + 1];
+        int entries = 0;
+        for (int r = 0; r < k; r++) {
+            Arrays.sort(sides, degree[r], degree[r+1]);
+            for (int i = degree[r]; i < degree[r+1]; i++) {
+                if (i == degree[r] || (sides[i] >>> 32) != (sides[i-1] >>> 32)) {
+                    entries++;
+                }
+            }
+            adjStart[r+1] = entries;
+        }
+        int[] neighbor = new int[entries];
+        int[] boundaryLength = new int[entries];
+        int[] minWeight = new int[entries];
+        long[] weightSum = new long[entries];
+        int entry = -1;
+        for (int r = 0; r < k; r++) {
+            for (int i = degree[r]; i < degree[r+1]; i++) {
+                int other = (int) (sides[i] >>> 32), weight = (int) sides[i];
+                if (i == degree[r] || other != neighbor[entry]) {
+                    entry++;
+                    neighbor[entry] = other;
+                    minWeight[entry] = weight; // the bucket is sorted, so the first weight is the least.
+                }
+                boundaryLength[entry]++;
+                weightSum[entry] += weight;
+            }
+        }
+        return new RegionGraph(w, h, labels, k, regions.getUnionCount(), pixelStart, pixels,
+                adjStart, neighbor, boundaryLength, minWeight, weightSum);
+    }
+
+    /**
+     * @return (int): width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return (int): height of the image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return (int): the number of regions the graph was built with
+     */
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * @return (int): the number of regions left after the merges so far
+     */
+    public int getCurrentRegionCount() {
+        return regionCount - mergeCount;
+    }
+
+    /**
+     * @return (int): the number of merges that can be undone
+     */
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    /**
+     * @param region (int): a region the graph was built with
+     * @return (int): the region it is part of now; a region that has not
+     * been absorbed is its own
+     */
+    public int find(int region) {
+        while (parent[region] != region) {
+            region = parent[region];
+        }
+        return region;
+    }
+
+    /**
+     * @param x (int): x-coord
+     * @param y (int): y-coord
+     * @return (int): the current region of the pixel at (x, y)
+     */
+    public int getRegionAt(int x, int y) {
+        return find(labels[width * y + x]);
+    }
+
+    /**
+     * @param region (int): a current region
+     * @return (int): the number of pixels in it
+     */
+    public int getArea(int region) {
+        return area[find(region)];
+    }
+
+    /**
+     * @param region (int): a current region
+     * @return (int): the color it is painted in
+     */
+    public int getColor(int region) {
+        return ProgressiveColors.palette(regionCount)[find(region) & ProgressiveColors.PALETTE_MASK];
+    }
+
+    /**
+     * @param region (int): a current region
+     * @return (int[]): the current regions that touch it, each once
+     */
+    public int[] neighbors(int region) {
+        int root = find(region);
+        stamp++;
+        seen[root] = stamp;
+        int[] found = new int[16];
+        int count = 0;
+        int r = root;
+        do {
+            for (int i = adjStart[r]; i < adjStart[r+1]; i++) {
+                int other = find(neighbor[i]);
+                if (seen[other] != stamp) {
+                    seen[other] = stamp;
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = other;
+                }
+            }
+            r = next[r];
+        } while (r != root);
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @param a (int): a current region
+     * @param b (int): another current region
+     * @return (int): the number of pixel-graph edges between them; 0 if they do not touch
+     */
+    public int getBoundaryLength(int a, int b) {
+        long[] totals = boundary(a, b);
+        return (int) totals[0];
+    }
+
+    /**
+     * @param a (int): a current region
+     * @param b (int): another current region
+     * @return (long): the summed weight of the edges between them
+     */
+    public long getBoundaryWeight(int a, int b) {
+        return boundary(a, b)[1];
+    }
+
+    /**
+     * @param a (int): a current region
+     * @param b (int): another current region
+     * @return (int): the lightest edge between them, or -1 if they do not touch
+     */
+    public int getMinBoundaryWeight(int a, int b) {
+        return (int) boundary(a, b)[2];
+    }
+
+    /**
+     * sums the neighbor entries between the members of two current regions,
+     * walking the members of a.
+     * @return (long[]): edge count, weight sum and least weight (-1 if none)
+     */
+    private long[] boundary(int a, int b) {
+        int rootA = find(a), rootB = find(b);
+        long[] totals = {0, 0, -1};
+        if (rootA == rootB) {
+            return totals;
+        }
+        int r = rootA;
+        do {
+            for (int i = adjStart[r]; i < adjStart[r+1]; i++) {
+                if (find(neighbor[i]) == rootB) {
+                    totals[0] += boundaryLength[i];
+                    totals[1] += weightSum[i];
+                    totals[2] = totals[2] < 0 ? minWeight[i] : Math.min(totals[2], minWeight[i]);
+                }
+            }
+            r = next[r];
+        } while (r != rootA);
+        return totals;
+    }
+
+    /**
+     * merges two touching regions. the smaller is absorbed into the larger
+     * and takes its color.
+     * @param a (int): a current region
+     * @param b (int): a current region touching a
+     * @param rgb (int[]): the image painted with getColor, repainted where the
+     * colors change; or null
+     * @return (int): the region that was absorbed, or -1 if the two are the
+     * same region or do not touch
+     */
+    public int merge(int a, int b, int[] rgb) {
+        int rootA = find(a), rootB = find(b);
+        if (area[rootA] < area[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        if (rootA == rootB || boundary(rootB, rootA)[0] == 0) {
+            return -1;
+        }
+        paint(rootB, rootA, rgb);
+        parent[rootB] = rootA;
+        area[rootA] += area[rootB];
+        splice(rootA, rootB);
+        merged[mergeCount++] = rootB;
+        return rootB;
+    }
+
+    /**
+     * undoes the most recent merge that has not been undone.
+     * @param rgb (int[]): the image painted with getColor, repainted where the
+     * colors change; or null
+     * @return (int): the region split back off, or -1 if there are no merges
+     */
+    public int undo(int[] rgb) {
+        if (mergeCount == 0) {
+            return -1;
+        }
+        int root = merged[--mergeCount];
+        int into = parent[root];
+        parent[root] = root;
+        area[into] -= area[root];
+        splice(into, root);
+        paint(root, root, rgb);
+        return root;
+    }
+
+    /**
+     * @return (Rectangle): the bounding box of the pixels the last merge or
+     * undo repainted; empty if it painted none
+     */
+    public Rectangle getRepaintedBounds() {
+        return new Rectangle(repainted);
+    }
+
+    /**
+     * exchanges the successors of a and b, which joins two circular lists
+     * into one, or splits one back into the two it was joined from.
+     */
+    private void splice(int a, int b) {
+        int after = next[a];
+        next[a] = next[b];
+        next[b] = after;
+    }
+
+    /**
+     * paints every pixel of the regions listed under root in the color of
+     * paintAs, and records their bounding box.
+     */
+    private void paint(int root, int paintAs, int[] rgb) {
+        repainted.setBounds(0, 0, 0, 0);
+        if (rgb == null) {
+            return;
+        }
+        int color = ProgressiveColors.palette(regionCount)[paintAs & ProgressiveColors.PALETTE_MASK];
+        int x0 = width, y0 = height, x1 = -1, y1 = -1;
+        int r = root;
+        do {
+            if (pixelStart[r] < pixelStart[r+1]) {
+                // the pixels are in raster order, so the first and last give the rows.
+                y0 = Math.min(y0, pixels[pixelStart[r]] / width);
+                y1 = Math.max(y1, pixels[pixelStart[r+1] - 1] / width);
+            }
+            for (int i = pixelStart[r]; i < pixelStart[r+1]; i++) {
+                int p = pixels[i];
+                rgb[p] = color;
+                int x = p % width;
+                x0 = Math.min(x0, x);
+                x1 = Math.max(x1, x);
+            }
+            r = next[r];
+        } while (r != root);
+        if (x1 >= 0) {
+            repainted.setBounds(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        }
+    }
+
+    /**
+     * paints every pixel in the color of its current region.
+     * @param rgb (int[]): receives the packed RGB color of each pixel, row by row
+     */
+    public void recolor(int[] rgb) {
+        int[] palette = ProgressiveColors.palette(regionCount);
+        for (int p = 0; p < width*height; p++) {
+            rgb[p] = palette[find(labels[p]) & ProgressiveColors.PALETTE_MASK];
+        }
+    }
+
+    /**
+     * @return (LabelMap): the current regions, numbered in the order they are
+     * first met, like every other LabelMap
+     */
+    public LabelMap toLabelMap() {
+        int[] number = new int[regionCount];
+        Arrays.fill(number, -1);
+        int[] current = new int[width*height];
+        int count = 0;
+        for (int p = 0; p < width*height; p++) {
+            int root = find(labels[p]);
+            if (number[root] == -1) {
+                number[root] = count++;
+            }
+            current[p] = number[root];
+        }
+        return new LabelMap(width, height, current, count, unionCount + mergeCount);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * ResultCache.java
+ * Keeps the results of a SegmentationEngine on disk, so that an image that
+ * comes back is answered without building or sorting its edges again.
+ *
+ * Results are addressed by content: the SHA-256 of the image's size and
+ * decoded pixels, plus the operation. Connected components and segmentations
+ * are kept as LabelMapFiles. Every segmentation also keeps the image's
+ * SegmentationHierarchy (its minimum spanning forest in merge order), so a
+ * region count not asked for before is cut from the saved hierarchy instead
+ * of running Kruskal's algorithm again.
+ *
+ * The files sit in one directory, which is bounded to maxBytes by deleting
+ * the least recently used ones; a hit touches the file's modification time,
+ * so the order survives restarts. Files are written under a temporary name
+ * and renamed into place, so a reader never sees half a file. A cache may be
+ * shared by threads.
+ */
+
+package imagesegmenter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ResultCache {
+    static final String LABELS = ".iclm", HIERARCHY = ".icsh", TEMPORARY = ".tmp";
+    private static final int HASH_BLOCK = 1 << 16; // pixels hashed at a time.
+
+    private final SegmentationEngine engine;
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // file name -> size, oldest use first.
+    private long size;
+    private long hits, misses;
+
+    /**
+     * opens a cache directory, creating it if needed, and indexes the
+     * results already in it.
+     * @param engine (SegmentationEngine): computes what is not in the cache
+     * @param directory (File): where the results are kept
+     * @param maxBytes (long): the most bytes of results to keep
+     */
+    public ResultCache(SegmentationEngine engine, File directory, long maxBytes) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        }
+        this.engine = engine;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory.toPath());
+        File[] files = directory.listFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMPORARY)) {
+                file.delete(); // left by a writer that died.
+            } else if (name.endsWith(LABELS) || name.endsWith(HIERARCHY)) {
+                entries.put(name, file.length());
+                size += file.length();
+            }
+        }
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * computes the connected components of the image, or reads them back.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (LabelMap): the component number of every pixel
+     */
+    public LabelMap connectedComponents(int[] pixels, int w, int h) throws IOException {
+        String name = key(pixels, w, h) + "-components" + LABELS;
+        LabelMap labels = readLabels(name);
+        if (labels == null) {
+            labels = engine.connectedComponents(pixels, w, h);
+            writeLabels(name, labels);
+        }
+        return labels;
+    }
+
+    /**
+     * segments the image into nRegions regions, or reads the regions back,
+     * or cuts them from the image's saved hierarchy.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions desired
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap segment(int[] pixels, int w, int h, int nRegions) throws IOException {
+        String key = key(pixels, w, h);
+        String name = key + "-segment-" + nRegions + LABELS;
+        LabelMap labels = readLabels(name);
+        if (labels == null) {
+            labels = buildHierarchy(key, pixels, w, h).labels(nRegions);
+            writeLabels(name, labels);
+        }
+        return labels;
+    }
+
+    /**
+     * finds the whole merge sequence of the image's segmentation, or reads it back.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (SegmentationHierarchy): the merge sequence
+     */
+    public SegmentationHierarchy buildHierarchy(int[] pixels, int w, int h) throws IOException {
+        return buildHierarchy(key(pixels, w, h), pixels, w, h);
+    }
+
+    private SegmentationHierarchy buildHierarchy(String key, int[] pixels, int w, int h) throws IOException {
+        String name = key + "-hierarchy" + HIERARCHY;
+        if (lookUp(name)) {
+            try {
+                return SegmentationHierarchy.read(new File(directory, name));
+            } catch (IOException e) {
+                forget(name); // deleted or damaged behind our back; compute it again.
+            }
+        }
+        SegmentationHierarchy hierarchy = engine.buildHierarchy(pixels, w, h);
+        File temporary = temporaryFile();
+        hierarchy.write(temporary);
+        store(name, temporary);
+        return hierarchy;
+    }
+
+    private LabelMap readLabels(String name) throws IOException {
+        if (lookUp(name)) {
+            try (LabelMapFile file = LabelMapFile.open(new File(directory, name))) {
+                return file.toLabelMap();
+            } catch (IOException e) {
+                forget(name);
+            }
+        }
+        return null;
+    }
+
+    private void writeLabels(String name, LabelMap labels) throws IOException {
+        File temporary = temporaryFile();
+        LabelMapFile.write(temporary, labels);
+        store(name, temporary);
+    }
+
+    private File temporaryFile() throws IOException {
+        return File.createTempFile("result", TEMPORARY, directory);
+    }
+
+    /**
+     * counts a hit or a miss, and on a hit marks the file as just used.
+     * @return (boolean): whether the file is in the cache
+     */
+    private synchronized boolean lookUp(String name) {
+        if (entries.get(name) == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        new File(directory, name).setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    private synchronized void forget(String name) {
+        Long length = entries.remove(name);
+        if (length != null) {
+            size -= length;
+            hits--;
+            misses++;
+        }
+    }
+
+    /**
+     * renames a finished file into place, then evicts the least recently
+     * used files until the cache fits.
+     */
+    private synchronized void store(String name, File temporary) throws IOException {
+        long length = temporary.length();
+        if (length > maxBytes) {
+            temporary.delete();
+            return;
+        }
+        Files.move(temporary.toPath(), new File(directory, name).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long old = entries.put(name, length);
+        size += length - (old != null ? old : 0);
+        evict();
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator(); size > maxBytes; ) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * @return (String): the SHA-256, in hex, of the image's width, height and pixels
+     */
+    static String key(int[] pixels, int w, int h) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JDK has SHA-256", e);
+        }
+        ByteBuffer block = ByteBuffer.allocate(4 * HASH_BLOCK);
+        block.putInt(w).putInt(h).flip();
+        digest.update(block);
+        for (int p = 0; p < w*h; p += HASH_BLOCK) {
+            block.clear();
+            block.asIntBuffer().put(pixels, p, Math.min(HASH_BLOCK, w*h - p));
+            block.limit(4 * Math.min(HASH_BLOCK, w*h - p));
+            digest.update(block);
+        }
+        return hex(digest.digest());
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return (long): the bytes of results kept
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return (long): the lookups answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return (long): the lookups that had to be computed
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * RunLabelMap.java
+ * Connected components stored per run rather than per pixel. Each row is cut
+ * into runs of equal color, and every run carries one component number, so a
+ * scanned page or flat-color graphic takes a few ints per run instead of one
+ * per pixel.
+ *
+ * Components are numbered exactly as in LabelMap (in the order they are first
+ * met in a raster scan), so toLabelMap() gives the same labels that
+ * SegmentationEngine.connectedComponents does.
+ */
+
+package imagesegmenter;
+
+import java.util.Arrays;
+
+public class RunLabelMap {
+    private final int width, height;
+    private final int[] rowStart; // runs of row y are rowStart[y] .. rowStart[y+1]-1.
+    private final int[] runX; // x-coord of the first pixel of each run.
+    private final int[] runLabels; // component number of each run.
+    private final int componentCount;
+    private final int unionCount;
+
+    /**
+     * initializes this RunLabelMap
+     * @param width (int): width of the labelled image
+     * @param height (int): height of the labelled image
+     * @param rowStart (int[]): index of the first run of each row, plus the
+     * total number of runs at index height
+     * @param runX (int[]): x-coord where each run starts; a run ends where the
+     * next run of its row starts, or at the right edge
+     * @param runLabels (int[]): the component number of each run
+     * @param componentCount (int): the number of distinct components
+     * @param unionCount (int): the number of unions of runs it took to find them
+     */
+    public RunLabelMap(int width, int height, int[] rowStart, int[] runX, int[] runLabels,
+                       int componentCount, int unionCount) {
+        this.width = width;
+        this.height = height;
+        this.rowStart = rowStart;
+        this.runX = runX;
+        this.runLabels = runLabels;
+        this.componentCount = componentCount;
+        this.unionCount = unionCount;
+    }
+
+    /**
+     * @return (int): width of the labelled image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return (int): height of the labelled image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return (int): the number of runs in the whole image
+     */
+    public int getRunCount() {
+        return rowStart[height];
+    }
+
+    /**
+     * @param x (int): x-coord
+     * @param y (int): y-coord
+     * @return (int): the component number of the pixel at (x, y)
+     */
+    public int getLabel(int x, int y) {
+        // the last run of the row starting at or before x.
+        int i = Arrays.binarySearch(runX, rowStart[y], rowStart[y+1], x);
+        return runLabels[i >= 0 ? i : -i - 2];
+    }
+
+    /**
+     * paints every run with the progressive color of its component, like
+     * LabelMap.recolor.
+     * @param rgb (int[]): receives the packed RGB color of each pixel, row by row
+     */
+    public void recolor(int[] rgb) {
+        recolor(rgb, 0, height);
+    }
+
+    /**
+     * paints the runs of rows y0 .. y1-1 only.
+     * @param rgb (int[]): receives the packed RGB color of each pixel, row by row
+     * @param y0 (int): first row to paint
+     * @param y1 (int): one past the last row to paint
+     */
+    public void recolor(int[] rgb, int y0, int y1) {
+        int[] palette = ProgressiveColors.palette(componentCount);
+        for (int y = y0; y < y1; y++) {
+            int end = rowStart[y+1];
+            for (int i = rowStart[y]; i < end; i++) {
+                int x1 = i+1 < end ? runX[i+1] : width;
+                Arrays.fill(rgb, width * y + runX[i], width * y + x1, palette[runLabels[i] & ProgressiveColors.PALETTE_MASK]);
+            }
+        }
+    }
+
+    /**
+     * expands the runs into one label per pixel.
+     * @return (LabelMap): the same components, labelled pixel by pixel
+     */
+    public LabelMap toLabelMap() {
+        int[] labels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int end = rowStart[y+1];
+            for (int i = rowStart[y]; i < end; i++) {
+                int x1 = i+1 < end ? runX[i+1] : width;
+                Arrays.fill(labels, width * y + runX[i], width * y + x1, runLabels[i]);
+            }
+        }
+        // a pixel-by-pixel scan would have made one union per merged pixel.
+        return new LabelMap(width, height, labels, componentCount, width * height - componentCount);
+    }
+
+    /**
+     * @return (int): the number of distinct components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return (int): the number of times UNION was called on runs to build the components
+     */
+    public int getUnionCount() {
+        return unionCount;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * RunLabeler.java
+ * Connected-component labeling of the strict pixel graph over runs: each row
+ * is encoded as maximal runs of one color, and the up-trees are built over
+ * runs instead of pixels.
+ *
+ * Neighboring runs in a row always differ in color, so the only unions are
+ * between equal-colored runs of adjacent rows whose x-ranges overlap. Both
+ * rows are walked together, so a row pair costs time in its number of runs.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.CancellationException;
+
+class RunLabeler {
+    private RunLabeler() {
+    }
+
+    /**
+     * finds the connected components of the image one run at a time.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param forest (DisjointSets): scratch forest, reset here to one tree per run
+     * @param monitor (ProgressMonitor): told the rows scanned for overlapping runs
+     * @return (RunLabelMap): the component number of every run
+     * @throws CancellationException if the monitor cancels the call
+     */
+    static RunLabelMap label(int[] pixels, int w, int h, DisjointSets forest, ProgressMonitor monitor) {
+        // First pass: count the runs so the arrays can be sized exactly.
+        int runCount = 0;
+        for (int y = 0, p = 0; y < h; y++) {
+            runCount++;
+            p++;
+            for (int x = 1; x < w; x++, p++) {
+                if (pixels[p] != pixels[p-1]) {
+                    runCount++;
+                }
+            }
+        }
+
+        // Second pass: record where each run starts.
+        int[] rowStart = new int[h+1];
+        int[] runX = new int[runCount];
+        int r = 0;
+        for (int y = 0, p = 0; y < h; y++) {
+            rowStart[y] = r;
+            runX[r++] = 0;
+            p++;
+            for (int x = 1; x < w; x++, p++) {
+                if (pixels[p] != pixels[p-1]) {
+                    runX[r++] = x;
+                }
+            }
+        }
+        rowStart[h] = r;
+
+        forest.reset(runCount);
+        int unionCount = 0;
+        for (int y = 1; y < h; y++) {
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.SCANNING, y, h);
+            unionCount += unionRows(pixels, w, y, rowStart, runX, forest);
+        }
+
+        int[] runLabels = new int[runCount];
+        int count = forest.label(runLabels);
+        return new RunLabelMap(w, h, rowStart, runX, runLabels, count, unionCount);
+    }
+
+    /**
+     * unions the equal-colored, overlapping runs of rows y-1 and y.
+     * @return (int): the number of unions executed.
+     */
+    private static int unionRows(int[] pixels, int w, int y, int[] rowStart, int[] runX, DisjointSets forest) {
+        int unionCount = 0;
+        int above = rowStart[y-1], aboveEnd = rowStart[y];
+        int below = rowStart[y], belowEnd = rowStart[y+1];
+        int rowAbove = w * (y-1), row = w * y;
+        while (above < aboveEnd && below < belowEnd) {
+            // runs above and below overlap here; they start at or before this x.
+            if (pixels[rowAbove + runX[above]] == pixels[row + runX[below]]
+                    && forest.union(above, below)) {
+                unionCount++;
+            }
+            int aboveX1 = above+1 < aboveEnd ? runX[above+1] : w;
+            int belowX1 = below+1 < belowEnd ? runX[below+1] : w;
+            if (aboveX1 <= belowX1) {
+                above++;
+            }
+            if (belowX1 <= aboveX1) {
+                below++;
+            }
+        }
+        return unionCount;
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * ScanlineReader.java
+ * Reads an image file from top to bottom a row at a time, for callers that
+ * must not hold the whole image in memory.
+ *
+ * An ImageReader that cannot seek to a row (PNG, JPEG) decodes from the top
+ * of the file on every read, so reading such a file a band at a time through
+ * source regions takes time quadratic in its height. A non-interlaced PNG or
+ * a single-scan JPEG is therefore read just once, into a destination whose
+ * raster keeps only the last RING_ROWS rows, and each row is handed on as
+ * the reader reports it decoded. Any other image is read in bands of source
+ * regions, as many rows at a time as fit in BAND_BYTES. Formats that store
+ * rows in strips or tiles, like TIFF, seek straight to each band.
+ *
+ * Rows come out as packed RGB with the alpha byte cleared, converted by the
+ * reader's own ColorModel exactly as ImageIO.read and getRGB would convert them.
+ */
+
+package imagesegmenter;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+final class ScanlineReader implements Closeable {
+    static final long BAND_BYTES = 64L << 20; // decoded pixels per band, as ints, when reading in bands.
+    static final int RING_ROWS = 16; // rows the destination of a one-pass read holds.
+
+    /**
+     * Takes the rows of an image in order.
+     */
+    interface RowHandler {
+        /**
+         * @param y (int): the row
+         * @param rgb (int[]): holds its packed RGB pixels; reused for later rows
+         * @param offset (int): where in rgb the row starts
+         */
+        void row(int y, int[] rgb, int offset) throws IOException;
+    }
+
+    private final ImageInputStream in;
+    private final ImageReader reader;
+    private final int w, h;
+
+    /**
+     * opens an image file and reads its header.
+     * @param imageFile (File): the image
+     */
+    ScanlineReader(File imageFile) throws IOException {
+        in = ImageIO.createImageInputStream(imageFile);
+        if (in == null) {
+            throw new IOException("Image could not be read: " + imageFile);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("No ImageReader for " + imageFile);
+            }
+            reader = readers.next();
+            reader.setInput(in, false, true);
+            w = reader.getWidth(0);
+            h = reader.getHeight(0);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return (int): width of the image
+     */
+    int getWidth() {
+        return w;
+    }
+
+    /**
+     * @return (int): height of the image
+     */
+    int getHeight() {
+        return h;
+    }
+
+    /**
+     * @return (boolean): whether read() decodes the image in one pass rather
+     * than a band at a time: true for non-interlaced PNGs and single-scan JPEGs
+     */
+    boolean isOnePass() throws IOException {
+        String format = reader.getFormatName().toLowerCase();
+        if (!format.equals("png") && !format.equals("jpeg")) {
+            return false;
+        }
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || metadata.getNativeMetadataFormatName() == null) {
+            return false;
+        }
+        Element root = (Element) metadata.getAsTree(metadata.getNativeMetadataFormatName());
+        if (format.equals("png")) {
+            Node header = root.getElementsByTagName("IHDR").item(0);
+            return header != null && "none".equals(((Element) header).getAttribute("interlaceMethod"));
+        }
+        // a progressive or multi-scan JPEG would send every row once per scan.
+        return root.getElementsByTagName("sos").getLength() == 1;
+    }
+
+    /**
+     * reads every row of the image, top to bottom.
+     * @param bandHeight (int): rows per band if the image is read in bands,
+     * or 0 for as many as fit in BAND_BYTES
+     * @param handler (RowHandler): takes the rows
+     */
+    void read(int bandHeight, RowHandler handler) throws IOException {
+        if (isOnePass()) {
+            readOnePass(handler);
+        } else {
+            readBands(bandHeight > 0 ? bandHeight : (int) Math.max(1, Math.min(h, BAND_BYTES / (4L * w))), handler);
+        }
+    }
+
+    /**
+     * reads the image a band of rows at a time, each band through a source region.
+     */
+    private void readBands(int bandHeight, RowHandler handler) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        int[] band = new int[w * Math.min(bandHeight, h)];
+        for (int y0 = 0; y0 < h; y0 += bandHeight) {
+            int rows = Math.min(bandHeight, h - y0);
+            param.setSourceRegion(new Rectangle(0, y0, w, rows));
+            BufferedImage image = reader.read(0, param);
+            image.getRGB(0, 0, w, rows, band, 0, w);
+            for (int i = 0; i < w * rows; i++) {
+                band[i] &= 0x00ffffff;
+            }
+            for (int r = 0; r < rows; r++) {
+                handler.row(y0 + r, band, w * r);
+            }
+        }
+    }
+
+    /**
+     * reads the image in one pass into a ring of rows, handing each row on
+     * when the reader reports it done.
+     */
+    private void readOnePass(RowHandler handler) throws IOException {
+        ImageTypeSpecifier type = reader.getImageTypes(0).next();
+        ColorModel colors = type.getColorModel();
+        RowRing ring = new RowRing(type.getSampleModel(w, Math.min(RING_ROWS, h)), w, h);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(new BufferedImage(colors, ring, colors.isAlphaPremultiplied(), null));
+        RowFeed feed = new RowFeed(ring, colors, handler);
+        reader.addIIOReadUpdateListener(feed);
+        try {
+            reader.read(0, param);
+        } catch (IIOException e) {
+            if (feed.failure == null) {
+                throw e;
+            }
+        } finally {
+            reader.removeIIOReadUpdateListener(feed);
+        }
+        if (feed.failure instanceof IOException) {
+            throw (IOException) feed.failure;
+        }
+        if (feed.failure != null) {
+            throw (RuntimeException) feed.failure;
+        }
+        if (feed.next != h) {
+            throw new IOException("Image ended at row " + feed.next + " of " + h);
+        }
+    }
+
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.dispose();
+        }
+        in.close();
+    }
+
+    /**
+     * A raster as big as the image that stores only its last few rows: row y
+     * lives in row y % height of the sample model. It remembers the highest
+     * row written, so that a reader writing ahead of its updates is caught
+     * rather than read back overwritten.
+     */
+    private static class RowRing extends WritableRaster {
+        final int rows; // rows held.
+        int highestWritten = -1;
+
+        RowRing(SampleModel model, int w, int h) {
+            super(model, model.createDataBuffer(), new Rectangle(0, 0, w, h), new Point(0, 0), null);
+            rows = model.getHeight();
+        }
+
+        private int slot(int y) {
+            if (y < 0 || y >= getHeight()) {
+                throw new ArrayIndexOutOfBoundsException("Row out of bounds: " + y);
+            }
+            highestWritten = Math.max(highestWritten, y);
+            return y % rows;
+        }
+
+        public void setPixel(int x, int y, int[] samples) {
+            sampleModel.setPixel(x, slot(y), samples, dataBuffer);
+        }
+
+        public void setPixels(int x, int y, int w, int h, int[] samples) {
+            for (int r = 0; r < h; r++) {
+                for (int i = 0; i < w; i++) {
+                    sampleModel.setPixel(x + i, slot(y + r), subPixel(samples, (w * r + i) * numBands), dataBuffer);
+                }
+            }
+        }
+
+        public void setSample(int x, int y, int b, int sample) {
+            sampleModel.setSample(x, slot(y), b, sample, dataBuffer);
+        }
+
+        public void setDataElements(int x, int y, Object data) {
+            sampleModel.setDataElements(x, slot(y), data, dataBuffer);
+        }
+
+        public void setDataElements(int x, int y, int w, int h, Object data) {
+            if (h != 1) {
+                throw new UnsupportedOperationException("Rows must be written one at a time");
+            }
+            sampleModel.setDataElements(x, slot(y), w, 1, data, dataBuffer);
+        }
+
+        private int[] pixel; // the samples of one pixel, for setPixels.
+
+        private int[] subPixel(int[] samples, int offset) {
+            if (pixel == null) {
+                pixel = new int[numBands];
+            }
+            System.arraycopy(samples, offset, pixel, 0, numBands);
+            return pixel;
+        }
+
+        /**
+         * converts a held row to packed RGB.
+         * @param y (int): the row
+         * @param colors (ColorModel): how its samples map to colors
+         * @param rgb (int[]): receives the row, alpha cleared
+         */
+        void getRGB(int y, ColorModel colors, int[] rgb) {
+            Object data = null;
+            int slot = y % rows;
+            for (int x = 0; x < rgb.length; x++) {
+                data = sampleModel.getDataElements(x, slot, data, dataBuffer);
+                rgb[x] = colors.getRGB(data) & 0x00ffffff;
+            }
+        }
+    }
+
+    /**
+     * Hands each row of a one-pass read to the handler when the reader
+     * reports it. A failure aborts the read and is kept to be thrown after it.
+     */
+    private class RowFeed implements IIOReadUpdateListener {
+        final RowRing ring;
+        final ColorModel colors;
+        final RowHandler handler;
+        final int[] row = new int[w];
+        int next; // the row expected next.
+        Exception failure;
+
+        RowFeed(RowRing ring, ColorModel colors, RowHandler handler) {
+            this.ring = ring;
+            this.colors = colors;
+            this.handler = handler;
+        }
+
+        public void imageUpdate(ImageReader source, BufferedImage image, int minX, int minY, int width, int height,
+                                int periodX, int periodY, int[] bands) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                if (minX != 0 || width != w || periodX != 1 || periodY != 1 || minY != next) {
+                    throw new IOException("Rows came out of order: " + width + "x" + height + " at (" + minX + ", " + minY
+                            + ") with row " + next + " next");
+                }
+                for (; next < minY + height; next++) {
+                    if (ring.highestWritten >= next + ring.rows) {
+                        throw new IOException("Row " + next + " was overwritten before it was reported");
+                    }
+                    ring.getRGB(next, colors, row);
+                    handler.row(next, row, 0);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                source.abort();
+            }
+        }
+
+        public void passStarted(ImageReader source, BufferedImage image, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        public void passComplete(ImageReader source, BufferedImage image) {
+        }
+
+        public void thumbnailPassStarted(ImageReader source, BufferedImage thumbnail, int pass, int minPass, int maxPass,
+                                         int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        public void thumbnailUpdate(ImageReader source, BufferedImage thumbnail, int minX, int minY, int width, int height,
+                                    int periodX, int periodY, int[] bands) {
+        }
+
+        public void thumbnailPassComplete(ImageReader source, BufferedImage thumbnail) {
+        }
+    }
+}
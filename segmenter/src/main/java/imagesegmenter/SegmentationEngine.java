@@ -0,0 +1,606 @@
+/**
+ * SegmentationEngine.java
+ * Headless connected-components and image segmentation engine.
+ *
+ * Works on a raw buffer of packed RGB pixels (row-major, pixelID = width * y + x)
+ * and never touches AWT or Swing, so it can be used on headless machines.
+ * An engine is thread-safe: every call borrows a forest of up-trees of its
+ * own, so a single instance may be shared by any number of threads. The
+ * engine keeps one finished forest to reset in place for the next call,
+ * unless it is bigger than KEPT_FOREST_LIMIT, so a long-lived engine does not
+ * pin the arrays of the largest image it ever saw.
+ *
+ * An engine built with a parallelism above 1 labels connected components on
+ * its own ForkJoinPool of that many threads, which close() shuts down.
+ * Segmentation runs either the serial Kruskal loop or parallel Boruvka
+ * rounds (see MstAlgorithm); both produce the same regions.
+ *
+ * Every long call has a form that takes a ProgressMonitor, which is told how
+ * far the call has got and can cancel it.
+ *
+ * The one thing an engine does accumulate is its SegmentationStats: phase
+ * times and union-find counts summed over all calls, which are thread-safe.
+ */
+
+package imagesegmenter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SegmentationEngine implements AutoCloseable {
+    static final int KEPT_FOREST_LIMIT = 1 << 22; // elements of the largest forest kept for the next call (about 20 MB).
+    private static final int CHECK_INTERVAL = 1 << 16; // edges between progress checkpoints in the Kruskal loops.
+
+    /**
+     * The ways segment() can find the minimum spanning forest.
+     */
+    public enum MstAlgorithm {
+        KRUSKAL, // one thread pops edges lightest first until nRegions trees remain.
+        BORUVKA  // parallel rounds of every tree taking its lightest outgoing edge, until nRegions trees are settled.
+    }
+
+    private final int parallelism;
+    private final MstAlgorithm mstAlgorithm;
+    private final ForkJoinPool pool; // null when running single-threaded.
+    private final SegmentationStats stats;
+    private final AtomicReference<DisjointSets> spareForest = new AtomicReference<>(); // a finished call's forest, or null.
+
+    public SegmentationEngine() {
+        this(1);
+    }
+
+    /**
+     * initializes this engine
+     * @param parallelism (int): the number of threads to use for each call
+     */
+    public SegmentationEngine(int parallelism) {
+        this(parallelism, MstAlgorithm.KRUSKAL);
+    }
+
+    /**
+     * initializes this engine
+     * @param parallelism (int): the number of threads to use for each call
+     * @param mstAlgorithm (MstAlgorithm): how segment() finds the minimum spanning forest
+     */
+    public SegmentationEngine(int parallelism, MstAlgorithm mstAlgorithm) {
+        this(parallelism, mstAlgorithm, new SegmentationStats());
+    }
+
+    /**
+     * initializes this engine
+     * @param parallelism (int): the number of threads to use for each call
+     * @param mstAlgorithm (MstAlgorithm): how segment() finds the minimum spanning forest
+     * @param stats (SegmentationStats): where to add the phase times and counts
+     * of every call; may be shared with other engines
+     */
+    public SegmentationEngine(int parallelism, MstAlgorithm mstAlgorithm, SegmentationStats stats) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.mstAlgorithm = mstAlgorithm;
+        this.stats = stats;
+        pool = parallelism > 1 || mstAlgorithm == MstAlgorithm.BORUVKA ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * shuts down this engine's threads. calls already running finish; later
+     * calls that need the threads fail with RejectedExecutionException.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return (int): the number of threads used for each call
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return (MstAlgorithm): how segment() finds the minimum spanning forest
+     */
+    public MstAlgorithm getMstAlgorithm() {
+        return mstAlgorithm;
+    }
+
+    /**
+     * @return (SegmentationStats): the phase times and counts of every call so far
+     */
+    public SegmentationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * computes the connected components of the image under the strict pixel graph
+     * (4-neighbors with exactly equal colors).
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (LabelMap): the component number of every pixel
+     */
+    public LabelMap connectedComponents(int[] pixels, int w, int h) {
+        return connectedComponents(pixels, w, h, false);
+    }
+
+    /**
+     * computes the connected components of the image under the strict pixel graph.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param withStats (boolean): whether to gather the area, bounding box,
+     * centroid and mean color of each component while numbering them
+     * @return (LabelMap): the component number of every pixel
+     */
+    public LabelMap connectedComponents(int[] pixels, int w, int h, boolean withStats) {
+        return connectedComponents(pixels, w, h, withStats, ProgressMonitor.NONE);
+    }
+
+    /**
+     * computes the connected components of the image under the strict pixel graph.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param withStats (boolean): whether to gather the statistics of each component
+     * @param monitor (ProgressMonitor): told the rows scanned; may cancel the call
+     * @return (LabelMap): the component number of every pixel
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public LabelMap connectedComponents(int[] pixels, int w, int h, boolean withStats, ProgressMonitor monitor) {
+        try (Job job = new Job(pixels, w, h, monitor)) {
+            return job.report("connectedComponents", job.labelComponents(job.findConnectedComponents(pool), withStats));
+        }
+    }
+
+    /**
+     * computes the connected components of the image under the strict pixel graph,
+     * like connectedComponents, but over runs of equal color instead of pixels.
+     * much less work on text and flat-color images, where rows are a few long runs.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (RunLabelMap): the component number of every run
+     */
+    public RunLabelMap connectedComponentRuns(int[] pixels, int w, int h) {
+        return connectedComponentRuns(pixels, w, h, ProgressMonitor.NONE);
+    }
+
+    /**
+     * computes the connected components of the image over runs of equal color.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): told the rows scanned; may cancel the call
+     * @return (RunLabelMap): the component number of every run
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public RunLabelMap connectedComponentRuns(int[] pixels, int w, int h, ProgressMonitor monitor) {
+        checkDimensions(pixels, w, h);
+        DisjointSets forest = borrowForest(0); // RunLabeler sizes it to the runs.
+        try {
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+            RunLabelMap runs = RunLabeler.label(pixels, w, h, forest, monitor);
+            timer.stop();
+            stats.recordCall("connectedComponentRuns", w, h, runs.getComponentCount(), runs.getUnionCount(), forest);
+            return runs;
+        } finally {
+            returnForest(forest);
+        }
+    }
+
+    /**
+     * computes the connected components of the image, like connectedComponents,
+     * and writes them straight from the forest to a LabelMapFile.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param labelFile (File): receives the labels, replaced if it exists
+     * @return (int): the number of components
+     */
+    public int writeConnectedComponents(int[] pixels, int w, int h, File labelFile) throws IOException {
+        try (Job job = new Job(pixels, w, h, ProgressMonitor.NONE)) {
+            return job.write("writeConnectedComponents", job.findConnectedComponents(pool), labelFile);
+        }
+    }
+
+    /**
+     * constructs a weighted pixel graph for the image and then derives a
+     * minimum spanning forest with as many trees as is passed.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions in the result
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap segment(int[] pixels, int w, int h, int nRegions) {
+        return segment(pixels, w, h, nRegions, false);
+    }
+
+    /**
+     * segments the image into nRegions regions.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions in the result
+     * @param withStats (boolean): whether to gather the area, bounding box,
+     * centroid and mean color of each region while numbering them
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap segment(int[] pixels, int w, int h, int nRegions, boolean withStats) {
+        return segment(pixels, w, h, nRegions, withStats, ProgressMonitor.NONE);
+    }
+
+    /**
+     * segments the image into nRegions regions.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions in the result
+     * @param withStats (boolean): whether to gather the statistics of each region
+     * @param monitor (ProgressMonitor): told the edges built and unions made;
+     * may cancel the call
+     * @return (LabelMap): the region number of every pixel
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public LabelMap segment(int[] pixels, int w, int h, int nRegions, boolean withStats, ProgressMonitor monitor) {
+        try (Job job = new Job(pixels, w, h, monitor)) {
+            int unionCount = job.segment(nRegions, mstAlgorithm == MstAlgorithm.BORUVKA ? pool : null);
+            return job.report("segment", job.labelComponents(unionCount, withStats));
+        }
+    }
+
+    /**
+     * segments the image, like segment, and writes the regions straight from
+     * the forest to a LabelMapFile.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions in the result
+     * @param labelFile (File): receives the labels, replaced if it exists
+     * @return (int): the number of regions
+     */
+    public int writeSegmentation(int[] pixels, int w, int h, int nRegions, File labelFile) throws IOException {
+        try (Job job = new Job(pixels, w, h, ProgressMonitor.NONE)) {
+            return job.write("writeSegmentation", job.segment(nRegions, mstAlgorithm == MstAlgorithm.BORUVKA ? pool : null),
+                    labelFile);
+        }
+    }
+
+    /**
+     * finds the whole merge sequence of the image's segmentation, so that it
+     * can afterwards be cut at any number of regions without redoing the work.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (SegmentationHierarchy): the merge sequence
+     */
+    public SegmentationHierarchy buildHierarchy(int[] pixels, int w, int h) {
+        return buildHierarchy(pixels, w, h, ProgressMonitor.NONE);
+    }
+
+    /**
+     * finds the whole merge sequence of the image's segmentation.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): told the edges built and unions made;
+     * may cancel the call
+     * @return (SegmentationHierarchy): the merge sequence
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public SegmentationHierarchy buildHierarchy(int[] pixels, int w, int h, ProgressMonitor monitor) {
+        try (Job job = new Job(pixels, w, h, monitor)) {
+            SegmentationHierarchy hierarchy = job.buildHierarchy(mstAlgorithm == MstAlgorithm.BORUVKA ? pool : null);
+            stats.recordCall("buildHierarchy", w, h, hierarchy.getMinRegions(), hierarchy.getMergeCount(), job.forest);
+            return hierarchy;
+        }
+    }
+
+    /**
+     * segments the image coarse to fine: the top level of the pyramid is
+     * segmented into nRegions regions, and the regions are then carried down
+     * to level 0, deciding only the pixels near their boundaries again at each
+     * level. the more levels the pyramid has, the faster and rougher the result.
+     * @param pyramid (ImagePyramid): the image and its halved copies
+     * @param nRegions (int): the number of regions in the result
+     * @return (LabelMap): the region number of every pixel of the image
+     */
+    public LabelMap segment(ImagePyramid pyramid, int nRegions) {
+        return segment(pyramid, 0, nRegions, false, ProgressMonitor.NONE);
+    }
+
+    /**
+     * segments a level of the pyramid coarse to fine. the segmentation
+     * starts at the highest level that still has nRegions pixels; asking
+     * for that level itself gives a quick preview.
+     * @param pyramid (ImagePyramid): the image and its halved copies
+     * @param level (int): the level to segment, 0 for the image itself
+     * @param nRegions (int): the number of regions in the result
+     * @param withStats (boolean): whether to gather the statistics of each region
+     * @param monitor (ProgressMonitor): told the edges built, unions made and
+     * boundaries refined; may cancel the call
+     * @return (LabelMap): the region number of every pixel of that level
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public LabelMap segment(ImagePyramid pyramid, int level, int nRegions, boolean withStats, ProgressMonitor monitor) {
+        int top = pyramid.getLevelCount() - 1;
+        if (level < 0 || level > top) {
+            throw new IllegalArgumentException("Pyramid has no level " + level + ": levels are 0 to " + top);
+        }
+        while (top > level && (long) pyramid.getWidth(top) * pyramid.getHeight(top) < nRegions) {
+            top--;
+        }
+        Job job = new Job(pyramid.getPixels(top), pyramid.getWidth(top), pyramid.getHeight(top), monitor);
+        try {
+            int unionCount = job.segment(nRegions, mstAlgorithm == MstAlgorithm.BORUVKA ? pool : null);
+            for (int k = top - 1; k >= level; k--) {
+                int[] coarseLabels = new int[job.w*job.h];
+                int regionCount = job.forest.label(coarseLabels);
+                stats.recordCall("segmentPyramid", job.w, job.h, regionCount, unionCount, job.forest);
+                int cw = job.w;
+                job.close(); // so the next level can take over its forest.
+                job = new Job(pyramid.getPixels(k), pyramid.getWidth(k), pyramid.getHeight(k), monitor);
+                PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, job.w, job.h);
+                unionCount = PyramidRefiner.refine(coarseLabels, regionCount, cw, job.pixels, job.w, job.h,
+                        job.forest, monitor, stats);
+                timer.stop();
+            }
+            return job.report("segmentPyramid", job.labelComponents(unionCount, withStats));
+        } finally {
+            job.close();
+        }
+    }
+
+    /**
+     * runs an image operator pipeline over the image, on this engine's threads.
+     * @param pipeline (ImageOpPipeline): the operators
+     * @param src (int[]): packed RGB pixels, row by row; never written unless it is dst
+     * @param dst (int[]): receives the filtered pixels
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     */
+    public void filter(ImageOpPipeline pipeline, int[] src, int[] dst, int w, int h) {
+        filter(pipeline, src, dst, w, h, ProgressMonitor.NONE);
+    }
+
+    /**
+     * runs an image operator pipeline over the image, on this engine's threads.
+     * @param pipeline (ImageOpPipeline): the operators
+     * @param src (int[]): packed RGB pixels, row by row; never written unless it is dst
+     * @param dst (int[]): receives the filtered pixels
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param monitor (ProgressMonitor): told the rows filtered; may cancel the call,
+     * in which case src is unchanged
+     * @throws CancellationException if the monitor cancels the call
+     */
+    public void filter(ImageOpPipeline pipeline, int[] src, int[] dst, int w, int h, ProgressMonitor monitor) {
+        checkDimensions(src, w, h);
+        checkDimensions(dst, w, h);
+        pipeline.apply(pool, src, dst, w, h, monitor);
+    }
+
+    /**
+     * checks that a pixel buffer matches the stated dimensions.
+     */
+    private static void checkDimensions(int[] pixels, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            throw new IllegalArgumentException("Image dimensions must be positive: " + w + "x" + h);
+        }
+        if (pixels.length < (long) w * h) {
+            throw new IllegalArgumentException("Pixel buffer holds " + pixels.length
+                    + " pixels but the image is " + w + "x" + h);
+        }
+    }
+
+    /**
+     * takes the forest a finished call left, or makes a new one.
+     * @param size (int): the number of elements wanted
+     * @return (DisjointSets): a forest of size single-element trees, counting
+     * finds if the stats ask for it
+     */
+    private DisjointSets borrowForest(int size) {
+        DisjointSets forest = spareForest.getAndSet(null);
+        if (forest == null) {
+            forest = new DisjointSets(size);
+        } else {
+            forest.reset(size);
+        }
+        forest.setCounting(stats.isCountingFinds());
+        return forest;
+    }
+
+    /**
+     * keeps a forest that is done with for the next call, unless it is too
+     * big to hold on to between calls.
+     * @param forest (DisjointSets): a forest from borrowForest, no longer used
+     */
+    private void returnForest(DisjointSets forest) {
+        if (forest.capacity() <= KEPT_FOREST_LIMIT) {
+            spareForest.set(forest);
+        }
+    }
+
+    /**
+     * The working state of a single engine call: the image being analyzed
+     * and its forest of up-trees. Never shared between threads. Closing it
+     * hands the forest back to the engine.
+     */
+    private class Job implements AutoCloseable {
+        final int[] pixels;
+        final int w; // width of the image.
+        final int h; // height of the image.
+        final DisjointSets forest; // one up-tree per component, indexed by pixelID.
+        final ProgressMonitor monitor;
+        private boolean closed;
+
+        Job(int[] pixels, int w, int h, ProgressMonitor monitor) {
+            checkDimensions(pixels, w, h);
+            this.pixels = pixels;
+            this.w = w;
+            this.h = h;
+            this.monitor = monitor;
+            forest = borrowForest(w*h);
+        }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                returnForest(forest);
+            }
+        }
+
+        /**
+         * adds this job to the engine's stats.
+         * @param operation (String): the engine method
+         * @param labelled (LabelMap): the job's result
+         * @return (LabelMap): labelled
+         */
+        LabelMap report(String operation, LabelMap labelled) {
+            stats.recordCall(operation, w, h, labelled.getComponentCount(), labelled.getUnionCount(), forest);
+            return labelled;
+        }
+
+        /**
+         * writes the trees of the forest to a LabelMapFile and adds this job
+         * to the engine's stats.
+         * @param operation (String): the engine method
+         * @param unionCount (int): the number of unions that built the forest
+         * @param labelFile (File): receives the labels, replaced if it exists
+         * @return (int): the number of trees
+         */
+        int write(String operation, int unionCount, File labelFile) throws IOException {
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.ENCODE, w, h);
+            int count = LabelMapFile.write(labelFile, forest, w, h);
+            timer.stop();
+            stats.recordCall(operation, w, h, count, unionCount, forest);
+            return count;
+        }
+
+        /**
+         * finds the connected components (under the strict pixel graph) and unions
+         * the pixels within them together.
+         * @param pool (ForkJoinPool): threads to label stripes on, or null for one raster scan
+         * @return (int): the number of unions executed.
+         */
+        int findConnectedComponents(ForkJoinPool pool) {
+            ProgressCounter progress = new ProgressCounter(monitor, ProgressMonitor.Stage.SCANNING, h);
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+            int unionCount = pool != null
+                    ? ParallelLabeler.label(pool, pixels, w, h, forest, progress)
+                    : ParallelLabeler.labelRows(pixels, w, 0, h, forest, progress);
+            timer.stop();
+            return unionCount;
+        }
+
+        /**
+         * unions the pixels into nRegions trees of the minimum spanning forest.
+         * @param nRegions (int): the number of regions desired
+         * @param pool (ForkJoinPool): threads for Boruvka rounds, or null for
+         * the serial Kruskal loop
+         * @return (int): the number of unions executed.
+         */
+        int segment(int nRegions, ForkJoinPool pool) {
+            if (pool == null) {
+                return segment(nRegions);
+            }
+            // the rounds stop once the lightest w*h - nRegions forest edges are known.
+            int[] treeEdges = BoruvkaForest.minimumSpanningForest(pool, pixels, w, h, forest, w*h - nRegions, monitor, stats);
+            forest.reset(w*h);
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+            int unionCount = new SegmentationHierarchy(w, h, treeEdges).cut(forest, nRegions);
+            timer.stop();
+            stats.countEdges(unionCount);
+            return unionCount;
+        }
+
+        /**
+         * runs Kruskal's algorithm over the weighted pixel graph until only
+         * nRegions trees remain.
+         * @param nRegions (int): the number of regions desired
+         * @return (int): the number of unions executed.
+         */
+        int segment(int nRegions) {
+            // every union takes an edge, so at least w*h - nRegions are consumed.
+            EdgeList edges = EdgeList.build(pixels, w, h, monitor, stats, Math.max(w*h - nRegions, 0));
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+            int nTrees = w*h;
+            int i = 0;
+            for (; nTrees > nRegions && i < edges.size(); i++) {
+                if (i % CHECK_INTERVAL == 0) {
+                    ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.MERGING, w*h - nTrees, w*h - nRegions);
+                }
+                int e = edges.edgeAt(i);
+                if (forest.union(edges.endpoint1(e), edges.endpoint2(e))) {
+                    nTrees -= 1;
+                }
+            }
+            timer.stop();
+            stats.countEdges(i);
+            return w*h - nTrees;
+        }
+
+        /**
+         * finds the edges of the minimum spanning forest in the order
+         * Kruskal's algorithm adds them.
+         * @param pool (ForkJoinPool): threads for Boruvka rounds, or null for
+         * a full serial Kruskal loop
+         * @return (SegmentationHierarchy): the merge sequence
+         */
+        SegmentationHierarchy buildHierarchy(ForkJoinPool pool) {
+            if (pool != null) {
+                return new SegmentationHierarchy(w, h,
+                        BoruvkaForest.minimumSpanningForest(pool, pixels, w, h, forest, w*h - 1, monitor, stats));
+            }
+            EdgeList edges = EdgeList.build(pixels, w, h, monitor, stats);
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.UNION, w, h);
+            int[] treeEdges = new int[w*h - 1];
+            int merges = 0;
+            int i = 0;
+            for (; merges < treeEdges.length && i < edges.size(); i++) {
+                if (i % CHECK_INTERVAL == 0) {
+                    ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.MERGING, merges, treeEdges.length);
+                }
+                int e = edges.edgeAt(i);
+                if (forest.union(edges.endpoint1(e), edges.endpoint2(e))) {
+                    treeEdges[merges++] = e;
+                }
+            }
+            timer.stop();
+            stats.countEdges(i);
+            return new SegmentationHierarchy(w, h, treeEdges);
+        }
+
+        /**
+         * numbers the trees of the forest in the order they are met
+         * (first component encountered = 0, second = 1, and so on) and labels
+         * every pixel with the number of its tree.
+         * @param unionCount (int): the number of unions that built the forest
+         * @param withStats (boolean): whether to gather each tree's statistics in the same pass
+         * @return (LabelMap): the labelled image
+         */
+        LabelMap labelComponents(int unionCount, boolean withStats) {
+            ProgressCounter.checkpoint(monitor, ProgressMonitor.Stage.LABELING, 0, h);
+            PhaseTimer timer = stats.start(SegmentationStats.Phase.RELABEL, w, h);
+            LabelMap labelled;
+            if (withStats) {
+                labelled = pool != null
+                        ? ComponentStats.label(pool, forest, pixels, w, h, unionCount)
+                        : ComponentStats.label(forest, pixels, w, h, unionCount);
+            } else {
+                int[] labels = new int[w*h];
+                int count = forest.label(labels);
+                labelled = new LabelMap(w, h, labels, count, unionCount);
+            }
+            timer.stop();
+            monitor.progress(ProgressMonitor.Stage.LABELING, h, h);
+            return labelled;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * SegmentationEvent.java
+ * The Flight Recorder event for one finished SegmentationEngine call, with
+ * the counts from its union loops. Finds and path steps are 0 unless
+ * SegmentationStats is counting them.
+ */
+
+package imagesegmenter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("imagesegmenter.Segmentation")
+@Label("Segmentation")
+@Category("Image Segmenter")
+@Description("A connected-components, segmentation or hierarchy call of the engine")
+class SegmentationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Components")
+    int components;
+
+    @Label("Unions")
+    long unions;
+
+    @Label("Finds")
+    long finds;
+
+    @Label("Path Steps")
+    long pathSteps;
+}
@@ -0,0 +1,200 @@
+/**
+ * SegmentationHierarchy.java
+ * The whole merge sequence of an image's segmentation, kept as the edges of
+ * its minimum spanning forest in the order Kruskal's algorithm adds them.
+ *
+ * Segmenting into k regions is the same as unioning the first n-k of these
+ * edges, so once the hierarchy is built any region count can be answered in
+ * one pass over the pixels, without rebuilding or sorting the edge list.
+ * A hierarchy never changes after it is built and may be shared by threads.
+ *
+ * A hierarchy can be saved to a file and mapped back in. All values are
+ * big-endian int32s: magic "ICSH", version, width, height, mergeCount, a
+ * reserved 0, then the edge ids in merge order.
+ */
+
+package imagesegmenter;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SegmentationHierarchy {
+    public static final int MAGIC = 0x49435348; // "ICSH"
+    public static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int MERGE_COUNT = 16; // offset of mergeCount in the header.
+
+    private final int w; // width of the image.
+    private final int h; // height of the image.
+    private final int[] treeEdges; // ids of the forest's edges, lightest first.
+
+    /**
+     * initializes this SegmentationHierarchy
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param treeEdges (int[]): edge ids (as in EdgeList) of the minimum spanning
+     * forest, in the order Kruskal's algorithm adds them
+     */
+    public SegmentationHierarchy(int w, int h, int[] treeEdges) {
+        this.w = w;
+        this.h = h;
+        this.treeEdges = treeEdges;
+    }
+
+    /**
+     * @return (int): width of the image
+     */
+    public int getWidth() {
+        return w;
+    }
+
+    /**
+     * @return (int): height of the image
+     */
+    public int getHeight() {
+        return h;
+    }
+
+    /**
+     * @return (int): the number of merges in the hierarchy
+     */
+    public int getMergeCount() {
+        return treeEdges.length;
+    }
+
+    /**
+     * @param i (int): position in the merge sequence
+     * @return (int): id of the edge that makes the i-th merge
+     */
+    public int getEdge(int i) {
+        return treeEdges[i];
+    }
+
+    /**
+     * @return (int): the fewest regions any cut of this hierarchy can have
+     */
+    public int getMinRegions() {
+        return w*h - treeEdges.length;
+    }
+
+    /**
+     * labels the image as it is segmented into nRegions regions.
+     * @param nRegions (int): the number of regions desired
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap labels(int nRegions) {
+        return labels(nRegions, new DisjointSets(w*h));
+    }
+
+    /**
+     * labels the image as it is segmented into nRegions regions, reusing a
+     * forest so that cutting the hierarchy again and again allocates only the
+     * labels.
+     * @param nRegions (int): the number of regions desired
+     * @param forest (DisjointSets): scratch forest, reset here
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap labels(int nRegions, DisjointSets forest) {
+        forest.reset(w*h);
+        int unionCount = cut(forest, nRegions);
+        int[] labels = new int[w*h];
+        int count = forest.label(labels);
+        return new LabelMap(w, h, labels, count, unionCount);
+    }
+
+    /**
+     * labels the image as it is segmented into nRegions regions, gathering the
+     * statistics of each region in the same pass.
+     * @param nRegions (int): the number of regions desired
+     * @param pixels (int[]): packed RGB pixels of the image, row by row
+     * @return (LabelMap): the region number of every pixel, with statistics
+     */
+    public LabelMap labels(int nRegions, int[] pixels) {
+        DisjointSets forest = new DisjointSets(w*h);
+        int unionCount = cut(forest, nRegions);
+        return ComponentStats.label(forest, pixels, w, h, unionCount);
+    }
+
+    /**
+     * unions the first merges of the hierarchy into forest until only
+     * nRegions trees remain.
+     * @param forest (DisjointSets): forest over the pixelIDs, reset by the caller
+     * @param nRegions (int): the number of regions desired
+     * @return (int): the number of unions executed.
+     */
+    int cut(DisjointSets forest, int nRegions) {
+        int unionCount = Math.max(0, Math.min(treeEdges.length, w*h - nRegions));
+        for (int i = 0; i < unionCount; i++) {
+            int e = treeEdges[i];
+            int p = e >>> 1;
+            forest.union(p, (e & 1) == 0 ? p+1 : p+w);
+        }
+        return unionCount;
+    }
+
+    /**
+     * saves this hierarchy to a file.
+     * @param path (File): the file, replaced if it exists
+     */
+    public void write(File path) throws IOException {
+        path.delete();
+        try (LargeMappedFile file = new LargeMappedFile(path, HEADER_SIZE + 4L * treeEdges.length)) {
+            file.putInt(0, MAGIC);
+            file.putInt(4, VERSION);
+            file.putInt(8, w);
+            file.putInt(12, h);
+            file.putInt(MERGE_COUNT, treeEdges.length);
+            file.putInt(20, 0);
+            file.putInts(HEADER_SIZE, treeEdges, 0, treeEdges.length);
+        }
+    }
+
+    /**
+     * maps a saved hierarchy back in.
+     * @param path (File): a file written by write
+     * @return (SegmentationHierarchy): the hierarchy
+     */
+    public static SegmentationHierarchy read(File path) throws IOException {
+        try (LargeMappedFile file = new LargeMappedFile(path, path.length(), true)) {
+            if (path.length() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+                throw new IOException("Not a segmentation hierarchy file: " + path);
+            }
+            if (file.getInt(4) != VERSION) {
+                throw new IOException("Unsupported segmentation hierarchy version " + file.getInt(4) + ": " + path);
+            }
+            int w = file.getInt(8), h = file.getInt(12), count = file.getInt(MERGE_COUNT);
+            if (w <= 0 || h <= 0 || (long) w * h > Integer.MAX_VALUE) {
+                throw new IOException("Segmentation hierarchy file has a bad size " + w + "x" + h + ": " + path);
+            }
+            if (count < 0 || count > w*h - 1) {
+                throw new IOException("Segmentation hierarchy file has " + count + " merges for " + w*h + " pixels: " + path);
+            }
+            if (HEADER_SIZE + 4L * count > path.length()) {
+                throw new IOException("Segmentation hierarchy file is truncated: " + path);
+            }
+            int[] treeEdges = new int[count];
+            file.getInts(HEADER_SIZE, treeEdges, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (!isEdge(treeEdges[i], w, h)) {
+                    throw new IOException("Segmentation hierarchy file has a bad edge " + treeEdges[i] + " at merge " + i + ": " + path);
+                }
+            }
+            return new SegmentationHierarchy(w, h, treeEdges);
+        }
+    }
+
+    /**
+     * @param e (int): an edge ID, 2 * pixelID for the edge to the right and
+     * 2 * pixelID + 1 for the edge down
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (boolean): whether e joins two pixels of a w x h image
+     */
+    static boolean isEdge(int e, int w, int h) {
+        int p = e >>> 1;
+        if (p >= w*h) {
+            return false;
+        }
+        return (e & 1) == 0 ? p % w != w - 1 : p / w != h - 1;
+    }
+}
@@ -0,0 +1,506 @@
+/**
+ * SegmentationService.java
+ * A local HTTP service in front of a SegmentationEngine, for programs that
+ * would otherwise drive the engine from their own server.
+ *
+ * POST an encoded image (PNG, JPEG, GIF, BMP) to
+ *   /components                  connected components of the strict pixel graph
+ *   /segment?regions=N           segmentation into N regions
+ * with output=stats (the default; a small JSON object), output=labels (a
+ * LabelMapFile) or output=png (the image recolored by component). GET /stats
+ * returns the engine's SegmentationStats table and the cache's hit counts.
+ *
+ * Each request is handled on a thread of its own: a virtual thread when the
+ * JDK has them (looked up reflectively, as the build targets Java 17), else a
+ * thread from a cached pool. Handler threads only parse and wait; the
+ * decoding and segmenting run on a fixed pool of cpuThreads threads with a
+ * bounded queue, so a burst of requests cannot oversubscribe the machine.
+ * A request must hold one of cpuThreads + queueLength permits before its
+ * body is even read, so the bodies held in memory are bounded too; one that
+ * finds none free, or finds the queue full, is answered 503 at once. The
+ * size of an image is read from its header before it is decoded, and an
+ * image of more than maxPixels pixels is answered 413 rather than decoded.
+ *
+ * Responses are kept in an LRU cache keyed by the SHA-256 of the request
+ * body and the normalized parameters, bounded by the total size of the
+ * responses, so a repeated request is answered without decoding anything.
+ * The X-Cache header says whether the response came from the cache. With a
+ * ResultCache as well, labels outlive the service and a new region count for
+ * a known image is cut from its saved hierarchy.
+ */
+
+package imagesegmenter;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class SegmentationService {
+    public static final int DEFAULT_PORT = 8373;
+    static final int MAX_BODY_BYTES = 64 << 20; // largest image accepted.
+    static final int MAX_REGIONS = 1 << 24;
+    public static final long DEFAULT_MAX_PIXELS = 1L << 26; // 256MB as TYPE_INT_RGB.
+
+    private final SegmentationEngine engine;
+    private final ThreadPoolExecutor cpuPool;
+    private final Semaphore admission; // one permit per request running or queued.
+    private final long maxPixels;
+    private final ResponseCache cache;
+    private final ResultCache results; // null to always ask the engine.
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    /**
+     * initializes this service; it does not listen until start is called.
+     * @param engine (SegmentationEngine): does the work; shared by all requests
+     * @param cpuThreads (int): the most requests decoded and segmented at once
+     * @param queueLength (int): the most requests waiting for a CPU thread
+     * @param cacheBytes (long): the most response bytes kept in the cache; 0 for no cache
+     */
+    public SegmentationService(SegmentationEngine engine, int cpuThreads, int queueLength, long cacheBytes) {
+        this(engine, null, cpuThreads, queueLength, cacheBytes);
+    }
+
+    /**
+     * initializes this service; it does not listen until start is called.
+     * @param engine (SegmentationEngine): does the work; shared by all requests
+     * @param results (ResultCache): on-disk results to look in before the
+     * engine, or null for none
+     * @param cpuThreads (int): the most requests decoded and segmented at once
+     * @param queueLength (int): the most requests waiting for a CPU thread
+     * @param cacheBytes (long): the most response bytes kept in the cache; 0 for no cache
+     */
+    public SegmentationService(SegmentationEngine engine, ResultCache results, int cpuThreads, int queueLength,
+                               long cacheBytes) {
+        this(engine, results, cpuThreads, queueLength, cacheBytes, DEFAULT_MAX_PIXELS);
+    }
+
+    /**
+     * initializes this service; it does not listen until start is called.
+     * @param engine (SegmentationEngine): does the work; shared by all requests
+     * @param results (ResultCache): on-disk results to look in before the
+     * engine, or null for none
+     * @param cpuThreads (int): the most requests decoded and segmented at once
+     * @param queueLength (int): the most requests waiting for a CPU thread
+     * @param cacheBytes (long): the most response bytes kept in the cache; 0 for no cache
+     * @param maxPixels (long): the most pixels in an image accepted
+     */
+    public SegmentationService(SegmentationEngine engine, ResultCache results, int cpuThreads, int queueLength,
+                               long cacheBytes, long maxPixels) {
+        if (cpuThreads < 1 || queueLength < 0 || cacheBytes < 0 || maxPixels < 1) {
+            throw new IllegalArgumentException("Bad service limits: " + cpuThreads + " threads, queue "
+                    + queueLength + ", cache " + cacheBytes + " bytes, " + maxPixels + " pixels");
+        }
+        this.engine = engine;
+        this.results = results;
+        this.maxPixels = maxPixels;
+        admission = new Semaphore(cpuThreads + queueLength);
+        cpuPool = new ThreadPoolExecutor(cpuThreads, cpuThreads, 0, TimeUnit.MILLISECONDS,
+                queueLength > 0 ? new ArrayBlockingQueue<>(queueLength) : new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "segmentation-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        cache = new ResponseCache(cacheBytes);
+    }
+
+    /**
+     * starts listening.
+     * @param address (InetSocketAddress): where to listen; port 0 picks a free one
+     * @return (InetSocketAddress): the address listened on
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(address, 0);
+        handlers = newHandlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext("/components", exchange -> handle(exchange, false));
+        server.createContext("/segment", exchange -> handle(exchange, true));
+        server.createContext("/stats", this::handleStats);
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * stops listening, waiting up to delaySeconds for requests in progress.
+     * @param delaySeconds (int): how long to wait
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+            handlers.shutdown();
+            server = null;
+        }
+        cpuPool.shutdown();
+    }
+
+    /**
+     * @return (ExecutorService): one new virtual thread per request when the
+     * JDK has them, else a cached pool of daemon threads
+     */
+    static ExecutorService newHandlerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "segmentation-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange, boolean segmenting) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "POST an image\n".getBytes(StandardCharsets.UTF_8), null);
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI());
+            String output = query.getOrDefault("output", "stats");
+            if (!output.equals("stats") && !output.equals("labels") && !output.equals("png")) {
+                send(exchange, 400, "text/plain", ("Unknown output: " + output + "\n").getBytes(StandardCharsets.UTF_8), null);
+                return;
+            }
+            int nRegions = 0;
+            if (segmenting) {
+                try {
+                    nRegions = Integer.parseInt(query.getOrDefault("regions", ""));
+                } catch (NumberFormatException e) {
+                    nRegions = 0;
+                }
+                if (nRegions < 1 || nRegions > MAX_REGIONS) {
+                    send(exchange, 400, "text/plain", "regions must be a positive integer\n".getBytes(StandardCharsets.UTF_8), null);
+                    return;
+                }
+            }
+            if (!admission.tryAcquire()) {
+                send(exchange, 503, "text/plain", "Too many requests waiting; try again\n".getBytes(StandardCharsets.UTF_8), null);
+                return;
+            }
+            try {
+                serve(exchange, nRegions, output);
+            } finally {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * answers an admitted request: reads its body, then answers from the
+     * cache or has the CPU pool compute the response.
+     * @param nRegions (int): the number of regions, or 0 for connected components
+     * @param output (String): "stats", "labels" or "png"
+     */
+    private void serve(HttpExchange exchange, int nRegions, String output) throws IOException {
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+            send(exchange, 413, "text/plain", ("Images are limited to " + MAX_BODY_BYTES + " bytes\n").getBytes(StandardCharsets.UTF_8), null);
+            return;
+        }
+        String key = sha256(body) + (nRegions > 0 ? " segment " + nRegions : " components") + " " + output;
+        Response response = cache.get(key);
+        if (response != null) {
+            send(exchange, 200, response.contentType, response.body, "hit");
+            return;
+        }
+        long pixels = pixelCount(body);
+        if (pixels < 0) {
+            send(exchange, 415, "text/plain", "Not an image this JDK can decode\n".getBytes(StandardCharsets.UTF_8), null);
+            return;
+        }
+        if (pixels > maxPixels) {
+            send(exchange, 413, "text/plain", ("Images are limited to " + maxPixels + " pixels\n").getBytes(StandardCharsets.UTF_8), null);
+            return;
+        }
+        Future<Response> work;
+        try {
+            work = cpuPool.submit(() -> compute(body, nRegions, output));
+        } catch (RejectedExecutionException e) {
+            send(exchange, 503, "text/plain", "Too many requests waiting; try again\n".getBytes(StandardCharsets.UTF_8), null);
+            return;
+        }
+        try {
+            response = work.get();
+        } catch (InterruptedException e) {
+            work.cancel(true);
+            // answer before restoring the flag: the exchange writes to an interruptible channel.
+            send(exchange, 503, "text/plain", "Shutting down; try again\n".getBytes(StandardCharsets.UTF_8), null);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            int status = cause instanceof IllegalArgumentException ? 415 : 500;
+            send(exchange, status, "text/plain", (cause + "\n").getBytes(StandardCharsets.UTF_8), null);
+            return;
+        }
+        cache.put(key, response);
+        send(exchange, 200, response.contentType, response.body, "miss");
+    }
+
+    /**
+     * reads the size of an encoded image from its header, without decoding it.
+     * @param encoded (byte[]): the image file
+     * @return (long): the number of pixels in its first image, or -1 if no
+     * ImageReader can read it
+     */
+    static long pixelCount(byte[] encoded) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return -1;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String text = engine.getStats() + "\ncache: " + cache.getHits() + " hits, " + cache.getMisses()
+                    + " misses, " + cache.getSize() + " bytes\n";
+            if (results != null) {
+                text += "results on disk: " + results.getHits() + " hits, " + results.getMisses()
+                        + " misses, " + results.getSize() + " bytes\n";
+            }
+            send(exchange, 200, "text/plain", text.getBytes(StandardCharsets.UTF_8), null);
+        }
+    }
+
+    /**
+     * decodes an image, labels it and encodes the requested output. runs on
+     * the CPU pool.
+     * @param encoded (byte[]): the image file
+     * @param nRegions (int): the number of regions, or 0 for connected components
+     * @param output (String): "stats", "labels" or "png"
+     * @return (Response): the encoded output
+     */
+    Response compute(byte[] encoded, int nRegions, String output) throws IOException {
+        SegmentationStats stats = engine.getStats();
+        PhaseTimer timer = stats.start(SegmentationStats.Phase.DECODE, 0, 0);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+        if (decoded == null) {
+            throw new IllegalArgumentException("Not an image this JDK can decode");
+        }
+        int w = decoded.getWidth(), h = decoded.getHeight();
+        BufferedImage image = decoded;
+        if (decoded.getType() != BufferedImage.TYPE_INT_RGB) {
+            image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.drawImage(decoded, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+        }
+        timer.stop();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        long start = System.nanoTime();
+        LabelMap labels;
+        if (results != null) {
+            labels = nRegions > 0 ? results.segment(pixels, w, h, nRegions) : results.connectedComponents(pixels, w, h);
+        } else {
+            labels = nRegions > 0 ? engine.segment(pixels, w, h, nRegions) : engine.connectedComponents(pixels, w, h);
+        }
+        long nanos = System.nanoTime() - start;
+
+        switch (output) {
+            case "labels": {
+                timer = stats.start(SegmentationStats.Phase.ENCODE, w, h);
+                File file = File.createTempFile("labels", ".iclm");
+                try {
+                    LabelMapFile.write(file, labels);
+                    byte[] bytes = Files.readAllBytes(file.toPath());
+                    timer.stop();
+                    return new Response("application/octet-stream", bytes);
+                } finally {
+                    file.delete();
+                }
+            }
+            case "png": {
+                timer = stats.start(SegmentationStats.Phase.RECOLOR, w, h);
+                labels.recolor(pixels);
+                timer.stop();
+                timer = stats.start(SegmentationStats.Phase.ENCODE, w, h);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", bytes);
+                timer.stop();
+                return new Response("image/png", bytes.toByteArray());
+            }
+            default:
+                String json = "{\"width\": " + w + ", \"height\": " + h
+                        + ", \"components\": " + labels.getComponentCount()
+                        + ", \"unions\": " + labels.getUnionCount()
+                        + ", \"millis\": " + String.format("%.3f", nanos / 1e6) + "}\n";
+                return new Response("application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body,
+                             String cacheStatus) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (cacheStatus != null) {
+            exchange.getResponseHeaders().set("X-Cache", cacheStatus);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return (byte[]): the whole request body, or null if it is over MAX_BODY_BYTES
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        return body.length > MAX_BODY_BYTES ? null : body;
+    }
+
+    static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return ResultCache.hex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JDK has SHA-256", e);
+        }
+    }
+
+    /**
+     * An encoded response, as kept in the cache.
+     */
+    static final class Response {
+        final String contentType;
+        final byte[] body;
+
+        Response(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Least-recently-used responses, bounded by their total size. A response
+     * bigger than the whole cache is not kept.
+     */
+    static final class ResponseCache {
+        private final long capacity;
+        private final LinkedHashMap<String, Response> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+        private long hits, misses;
+
+        ResponseCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized Response get(String key) {
+            Response response = entries.get(key);
+            if (response != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return response;
+        }
+
+        synchronized void put(String key, Response response) {
+            if (response.body.length > capacity) {
+                return;
+            }
+            Response old = entries.put(key, response);
+            size += response.body.length - (old != null ? old.body.length : 0);
+            for (Iterator<Response> it = entries.values().iterator(); size > capacity; ) {
+                size -= it.next().body.length;
+                it.remove();
+            }
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
+
+        synchronized long getMisses() {
+            return misses;
+        }
+    }
+
+    /* Stand-alone use: java SegmentationService [port [cpuThreads [cacheMegabytes [resultDirectory [resultMegabytes]]]]] */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int cpuThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long cacheBytes = (args.length > 2 ? Long.parseLong(args[2]) : 256) << 20;
+        SegmentationEngine engine = new SegmentationEngine();
+        ResultCache results = args.length > 3
+                ? new ResultCache(engine, new File(args[3]), (args.length > 4 ? Long.parseLong(args[4]) : 1024) << 20)
+                : null;
+        SegmentationService service = new SegmentationService(engine, results, cpuThreads, 4 * cpuThreads, cacheBytes);
+        InetSocketAddress address = service.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        System.out.println("Listening on http://" + address.getHostString() + ":" + address.getPort() + "/");
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * SegmentationStats.java
+ * Running totals of what a SegmentationEngine has done: how long each phase
+ * took, summed over all calls, and how many finds, unions, path steps and
+ * edges the union loops used.
+ *
+ * The same numbers go to JDK Flight Recorder as they happen, as one
+ * imagesegmenter.Phase event per phase and one imagesegmenter.Segmentation
+ * event per engine call, so a recording of a running program shows them
+ * without attaching a profiler. The events cost next to nothing when no
+ * recording is on.
+ *
+ * Counting finds and path steps touches every find, so it is off until
+ * setCountingFinds(true) is called; everything else is always kept. All
+ * methods are thread-safe, and several engines may share one instance.
+ */
+
+package imagesegmenter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class SegmentationStats {
+    /**
+     * The timed parts of segmenting an image, from reading it to writing the result.
+     */
+    public enum Phase {
+        DECODE,      // reading an image file into pixels.
+        BUILD_EDGES, // weighing the edges of the pixel graph.
+        SORT_EDGES,  // putting edges in order of weight.
+        UNION,       // union loops: scanning for equal neighbors, Kruskal, Boruvka rounds, refining.
+        RELABEL,     // numbering the trees and labelling every pixel.
+        RECOLOR,     // painting the labels into an image.
+        ENCODE       // writing an image or a label file.
+    }
+
+    private final LongAdder[] phaseNanos = adders(Phase.values().length);
+    private final LongAdder[] phaseCounts = adders(Phase.values().length);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder finds = new LongAdder();
+    private final LongAdder unions = new LongAdder();
+    private final LongAdder pathSteps = new LongAdder();
+    private final LongAdder edges = new LongAdder();
+    private volatile boolean countingFinds;
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * starts timing a phase. the caller stops the timer when the phase ends.
+     * @param phase (Phase): the phase
+     * @param w (int): width of the image it works on
+     * @param h (int): height of the image it works on
+     * @return (PhaseTimer): the running timer
+     */
+    public PhaseTimer start(Phase phase, int w, int h) {
+        return PhaseTimer.start(this, phase, w, h);
+    }
+
+    /**
+     * adds one run of a phase to the totals.
+     * @param phase (Phase): the phase
+     * @param nanos (long): how long it took
+     */
+    void recordPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+        phaseCounts[phase.ordinal()].increment();
+    }
+
+    /**
+     * adds one engine call to the totals and reports it to Flight Recorder.
+     * @param operation (String): the engine method
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param components (int): the number of components or regions found
+     * @param unionCount (long): the unions it made
+     * @param forest (DisjointSets): the forest it used, holding its find counts
+     */
+    void recordCall(String operation, int w, int h, int components, long unionCount, DisjointSets forest) {
+        calls.increment();
+        unions.add(unionCount);
+        finds.add(forest.getFindCount());
+        pathSteps.add(forest.getPathSteps());
+        SegmentationEvent event = new SegmentationEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.width = w;
+            event.height = h;
+            event.components = components;
+            event.unions = unionCount;
+            event.finds = forest.getFindCount();
+            event.pathSteps = forest.getPathSteps();
+            event.commit();
+        }
+    }
+
+    /**
+     * @param count (long): edges taken off a sorted list, or scanned in a Boruvka round
+     */
+    void countEdges(long count) {
+        edges.add(count);
+    }
+
+    /**
+     * @param countingFinds (boolean): whether later engine calls should count
+     * their finds and path steps. those counts are approximate while
+     * connected components are labelled on several threads.
+     */
+    public void setCountingFinds(boolean countingFinds) {
+        this.countingFinds = countingFinds;
+    }
+
+    /**
+     * @return (boolean): whether engine calls count their finds and path steps
+     */
+    public boolean isCountingFinds() {
+        return countingFinds;
+    }
+
+    /**
+     * @param phase (Phase): a phase
+     * @return (long): the nanoseconds spent in it, summed over every run
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @param phase (Phase): a phase
+     * @return (long): the number of times it ran
+     */
+    public long getPhaseCount(Phase phase) {
+        return phaseCounts[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return (long): the number of engine calls that finished
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return (long): the number of successful unions
+     */
+    public long getUnionCount() {
+        return unions.sum();
+    }
+
+    /**
+     * @return (long): the number of finds, while they are being counted
+     */
+    public long getFindCount() {
+        return finds.sum();
+    }
+
+    /**
+     * @return (long): the number of parent links those finds walked
+     */
+    public long getPathSteps() {
+        return pathSteps.sum();
+    }
+
+    /**
+     * @return (long): the number of edges the union loops used
+     */
+    public long getEdgesConsumed() {
+        return edges.sum();
+    }
+
+    /**
+     * zeroes every total.
+     */
+    public void reset() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i].reset();
+            phaseCounts[i].reset();
+        }
+        calls.reset();
+        finds.reset();
+        unions.reset();
+        pathSteps.reset();
+        edges.reset();
+    }
+
+    /**
+     * @return (String): the totals, one per line
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            long count = getPhaseCount(phase);
+            if (count > 0) {
+                sb.append(String.format("%-12s %10.1f ms in %d runs%n", phase, getPhaseNanos(phase) / 1e6, count));
+            }
+        }
+        sb.append("calls: ").append(getCallCount())
+          .append(", unions: ").append(getUnionCount())
+          .append(", edges consumed: ").append(getEdgesConsumed());
+        if (countingFinds || getFindCount() > 0) {
+            long findCount = getFindCount();
+            sb.append(String.format(", finds: %d, path steps: %d (%.2f per find)", findCount, getPathSteps(),
+                    findCount > 0 ? (double) getPathSteps() / findCount : 0.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * StreamingLabeler.java
+ * Connected components (strict pixel graph) of images too big to hold in
+ * memory, computed a few scanlines at a time.
+ *
+ * The image is read top to bottom through a ScanlineReader, so only a few
+ * rows are ever decoded into the heap. Pass 1 gives each pixel a provisional
+ * label from its left and upper neighbors, writes the provisional labels to a
+ * temporary file, and keeps the equivalences between provisional labels in a
+ * file-backed union-find table along with each label's color. The table is
+ * then resolved into dense component numbers, and pass 2 streams the
+ * provisional labels back out as final ones into a LabelMapFile, gathering
+ * the statistics of each component as it goes.
+ *
+ * The heap holds only a handful of rows, so memory use is proportional to
+ * the width of the image. The working tables cost 8 bytes per provisional
+ * label and 56 per component, and live in memory-mapped temporary files that
+ * the operating system pages as needed. Pixel ids and areas are longs, so an
+ * image may have more than 2^31 pixels; only the provisional labels, and so
+ * the components, are limited to 2^31.
+ *
+ * Components are numbered exactly as SegmentationEngine.connectedComponents
+ * numbers them, in the order they are first met in a raster scan.
+ */
+
+package imagesegmenter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+public class StreamingLabeler {
+    // Layout of one record in the component statistics table, in bytes.
+    static final int AREA = 0, FIRST_PIXEL = 8, MIN_X = 16, MIN_Y = 20, MAX_X = 24, MAX_Y = 28;
+    static final int SUM_X = 32, SUM_Y = 40, COLOR = 48;
+    static final int RECORD_SIZE = 56;
+
+    private final int bandHeight;
+    private final File tempDir; // null for the system default.
+
+    public StreamingLabeler() {
+        this(0, null);
+    }
+
+    /**
+     * initializes this StreamingLabeler
+     * @param bandHeight (int): the number of rows to decode at a time from an
+     * image that cannot be read in one pass, or 0 for as many as fit in
+     * ScanlineReader.BAND_BYTES
+     * @param tempDir (File): where to keep the working files, or null for the
+     * system default
+     */
+    public StreamingLabeler(int bandHeight, File tempDir) {
+        if (bandHeight < 0) {
+            throw new IllegalArgumentException("Band height must not be negative: " + bandHeight);
+        }
+        this.bandHeight = bandHeight;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * What a streaming run found.
+     */
+    public static class Result {
+        private final int width, height, componentCount;
+        private final long unionCount;
+
+        Result(int width, int height, int componentCount, long unionCount) {
+            this.width = width;
+            this.height = height;
+            this.componentCount = componentCount;
+            this.unionCount = unionCount;
+        }
+
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getComponentCount() { return componentCount; }
+        public long getUnionCount() { return unionCount; }
+    }
+
+    /**
+     * labels the connected components of an image file.
+     * @param imageFile (File): the image to label
+     * @param labelsFile (File): receives the component number of every pixel
+     * as a LabelMapFile
+     * @param statsFile (File): receives the component count as an int32, then
+     * one record per component: area as an int64, minX, minY, maxX, maxY as
+     * int32s and sumX, sumY, sumR, sumG, sumB as int64s
+     * @return (Result): the size of the image and the number of components
+     */
+    public Result label(File imageFile, File labelsFile, File statsFile) throws IOException {
+        File provisionalFile = File.createTempFile("provisional", ".labels", tempDir);
+        File parentFile = File.createTempFile("parent", ".table", tempDir);
+        File colorFile = File.createTempFile("colors", ".table", tempDir);
+        File recordFile = File.createTempFile("stats", ".table", tempDir);
+        try {
+            Pass pass = new Pass(provisionalFile, parentFile, colorFile);
+            try {
+                pass.scan(imageFile);
+                pass.resolve();
+                pass.writeLabels(labelsFile, recordFile);
+                pass.writeStats(statsFile);
+            } finally {
+                pass.close();
+            }
+            // a pixel-by-pixel forest would have needed one union per pixel beyond the first of each component.
+            return new Result(pass.w, pass.h, pass.componentCount, (long) pass.w * pass.h - pass.componentCount);
+        } finally {
+            provisionalFile.delete();
+            parentFile.delete();
+            colorFile.delete();
+            recordFile.delete();
+        }
+    }
+
+    /**
+     * The working state of one streaming run.
+     */
+    private class Pass {
+        final File provisionalFile;
+        final LargeMappedFile parent; // union-find over provisional labels, then their component numbers, 4 bytes each.
+        final LargeMappedFile colors; // color of each provisional label.
+        LargeMappedFile records; // statistics of each component, made in pass 2.
+        int w, h;
+        int labelCount; // provisional labels handed out.
+        int componentCount;
+
+        Pass(File provisionalFile, File parentFile, File colorFile) throws IOException {
+            this.provisionalFile = provisionalFile;
+            parent = LargeMappedFile.growing(parentFile);
+            colors = LargeMappedFile.growing(colorFile);
+        }
+
+        /**
+         * pass 1: reads the image row by row and gives every pixel a
+         * provisional label, recording which labels touch.
+         */
+        void scan(File imageFile) throws IOException {
+            try (ScanlineReader reader = new ScanlineReader(imageFile);
+                 FileChannel out = new RandomAccessFile(provisionalFile, "rw").getChannel()) {
+                w = reader.getWidth();
+                h = reader.getHeight();
+                int[][] rows = {new int[w], new int[w]}; // the current row and the one above.
+                int[][] labels = {new int[w], new int[w]};
+                ByteBuffer rowBytes = ByteBuffer.allocate(4 * w);
+                reader.read(bandHeight, (y, rgb, offset) -> {
+                    int[] current = rows[y & 1], currentLabels = labels[y & 1];
+                    System.arraycopy(rgb, offset, current, 0, w);
+                    labelRow(y, rows[~y & 1], current, labels[~y & 1], currentLabels);
+                    rowBytes.clear();
+                    rowBytes.asIntBuffer().put(currentLabels);
+                    while (rowBytes.hasRemaining()) {
+                        out.write(rowBytes);
+                    }
+                });
+            }
+        }
+
+        /**
+         * labels one row from the row above it.
+         */
+        void labelRow(int y, int[] previous, int[] current, int[] previousLabels, int[] currentLabels) throws IOException {
+            for (int x = 0; x < w; x++) {
+                int color = current[x];
+                boolean left = x > 0 && color == current[x-1];
+                boolean up = y > 0 && color == previous[x];
+                int label;
+                if (left) {
+                    label = currentLabels[x-1];
+                    if (up && previousLabels[x] != label) {
+                        union(label, previousLabels[x]);
+                    }
+                } else if (up) {
+                    label = previousLabels[x];
+                } else {
+                    label = newLabel(color);
+                }
+                currentLabels[x] = label;
+            }
+        }
+
+        int newLabel(int rgb) throws IOException {
+            if (labelCount == Integer.MAX_VALUE) {
+                throw new IOException("Image has more than 2^31 provisional labels");
+            }
+            int label = labelCount++;
+            parent.putInt(4L * label, label);
+            colors.putInt(4L * label, rgb);
+            return label;
+        }
+
+        int find(int label) throws IOException {
+            int next = parent.getInt(4L * label);
+            while (next != label) {
+                int grandparent = parent.getInt(4L * next);
+                parent.putInt(4L * label, grandparent);
+                label = next;
+                next = grandparent;
+            }
+            return label;
+        }
+
+        /**
+         * joins two provisional labels s.t. the smaller root, the one met
+         * first in the raster scan, stays the root.
+         */
+        void union(int label1, int label2) throws IOException {
+            int root1 = find(label1);
+            int root2 = find(label2);
+            if (root1 != root2) {
+                parent.putInt(4L * Math.max(root1, root2), Math.min(root1, root2));
+            }
+        }
+
+        /**
+         * numbers the roots in the order they were created and replaces every
+         * label's parent by its component number. a label's parent is always
+         * smaller than the label, so one ascending sweep numbers each parent
+         * before the labels under it.
+         */
+        void resolve() throws IOException {
+            for (int label = 0; label < labelCount; label++) {
+                int up = parent.getInt(4L * label);
+                parent.putInt(4L * label, up == label ? componentCount++ : parent.getInt(4L * up));
+            }
+        }
+
+        /**
+         * pass 2: rewrites the provisional labels as component numbers and
+         * gathers the statistics of every component.
+         */
+        void writeLabels(File labelsFile, File recordFile) throws IOException {
+            records = new LargeMappedFile(recordFile, (long) RECORD_SIZE * componentCount);
+            try (FileChannel in = new RandomAccessFile(provisionalFile, "r").getChannel();
+                 LabelMapFile out = LabelMapFile.create(labelsFile, w, h, componentCount)) {
+                ByteBuffer rowBytes = ByteBuffer.allocate(4 * w);
+                IntBuffer row = rowBytes.asIntBuffer();
+                long pixelID = 0;
+                for (int y = 0; y < h; y++) {
+                    rowBytes.clear();
+                    while (rowBytes.hasRemaining()) {
+                        if (in.read(rowBytes) < 0) {
+                            throw new IOException("Provisional labels ended early at row " + y);
+                        }
+                    }
+                    int runLabel = row.get(0), runStart = 0;
+                    for (int x = 0; x < w; x++) {
+                        int label = row.get(x);
+                        if (label != runLabel) {
+                            addRun(runLabel, y, runStart, x - 1);
+                            runLabel = label;
+                            runStart = x;
+                        }
+                        out.putLabel(pixelID++, parent.getInt(4L * label));
+                    }
+                    addRun(runLabel, y, runStart, w - 1);
+                }
+                for (int k = 0; k < componentCount; k++) {
+                    long base = (long) RECORD_SIZE * k;
+                    out.putComponent(k, records.getLong(base + FIRST_PIXEL), records.getLong(base + AREA));
+                }
+            }
+        }
+
+        /**
+         * adds the pixels x0 .. x1 of row y, all with one provisional label,
+         * to its component's statistics.
+         */
+        void addRun(int label, int y, int x0, int x1) throws IOException {
+            long base = (long) RECORD_SIZE * parent.getInt(4L * label);
+            long n = x1 - x0 + 1;
+            long area = records.getLong(base + AREA);
+            if (area == 0) { // the first run of the component; the table starts out zeroed.
+                records.putLong(base + FIRST_PIXEL, (long) w * y + x0);
+                records.putInt(base + MIN_X, x0);
+                records.putInt(base + MIN_Y, y);
+                records.putInt(base + COLOR, colors.getInt(4L * label));
+            }
+            records.putLong(base + AREA, area + n);
+            records.putInt(base + MIN_X, Math.min(records.getInt(base + MIN_X), x0));
+            records.putInt(base + MAX_X, Math.max(records.getInt(base + MAX_X), x1));
+            records.putInt(base + MAX_Y, y);
+            records.putLong(base + SUM_X, records.getLong(base + SUM_X) + (x0 + x1) * n / 2);
+            records.putLong(base + SUM_Y, records.getLong(base + SUM_Y) + y * n);
+        }
+
+        /**
+         * writes the statistics of every component, in component order. a
+         * component has one color, so its color sums are its area times that color.
+         */
+        void writeStats(File statsFile) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(statsFile)))) {
+                out.writeInt(componentCount);
+                for (int k = 0; k < componentCount; k++) {
+                    long base = (long) RECORD_SIZE * k;
+                    long area = records.getLong(base + AREA);
+                    out.writeLong(area);
+                    for (int offset = MIN_X; offset <= MAX_Y; offset += 4) {
+                        out.writeInt(records.getInt(base + offset));
+                    }
+                    out.writeLong(records.getLong(base + SUM_X));
+                    out.writeLong(records.getLong(base + SUM_Y));
+                    int rgb = records.getInt(base + COLOR);
+                    out.writeLong(area * ((rgb >> 16) & 0xff));
+                    out.writeLong(area * ((rgb >> 8) & 0xff));
+                    out.writeLong(area * (rgb & 0xff));
+                }
+            }
+        }
+
+        void close() throws IOException {
+            parent.close();
+            colors.close();
+            if (records != null) {
+                records.close();
+            }
+        }
+    }
+
+    /* Stand-alone use: java StreamingLabeler image labels-out stats-out [bandHeight] */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java StreamingLabeler image labels-out stats-out [bandHeight]");
+            System.exit(1);
+        }
+        int bandHeight = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        Result result = new StreamingLabeler(bandHeight, null).label(new File(args[0]), new File(args[1]), new File(args[2]));
+        System.out.println("The number of times that the method UNION was called for this image is: " + result.getUnionCount());
+        System.out.println("The number of connected components in this image is: " + result.getComponentCount());
+    }
+}
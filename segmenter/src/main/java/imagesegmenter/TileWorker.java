@@ -0,0 +1,121 @@
+/**
+ * TileWorker.java
+ * The worker process of a TiledSegmenter: labels or segments one tile of an
+ * image at a time, in a JVM of its own.
+ *
+ * Requests come in on stdin and replies go out on stdout, both as
+ * DataStreams. The pixels are not sent down the pipe: the coordinator leaves
+ * the whole image in a raw file (big-endian int32 pixels, row by row) and a
+ * request only names the tile, which the worker copies out of the mapped
+ * file. Results go back the same way, as files named by the request.
+ *
+ *   request: op, then for COMPONENTS and FOREST the raw file's path (UTF),
+ *       the image width, the tile's x0, y0, width and height, and the
+ *       output file's path (UTF)
+ *   reply: true and an int, or false and a message (UTF)
+ *
+ * COMPONENTS writes the tile's connected components as a LabelMapFile and
+ * replies with their count. FOREST writes the tile's minimum spanning forest,
+ * in the order Kruskal's algorithm adds its edges, as big-endian int64 keys
+ * of weight << 32 | edge id, with edge ids numbered over the whole image, and
+ * replies with the number of edges. A worker serves requests until QUIT or
+ * the end of its input.
+ */
+
+package imagesegmenter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+class TileWorker {
+    static final int QUIT = 0, COMPONENTS = 1, FOREST = 2; // request ops.
+
+    private TileWorker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err); // stdout carries the replies; anything else printed goes to the log.
+        SegmentationEngine engine = new SegmentationEngine();
+        while (true) {
+            int op;
+            try {
+                op = in.readInt();
+            } catch (EOFException e) {
+                break; // the coordinator is gone.
+            }
+            if (op == QUIT) {
+                break;
+            }
+            File raw = new File(in.readUTF());
+            int imageWidth = in.readInt();
+            int x0 = in.readInt(), y0 = in.readInt(), tw = in.readInt(), th = in.readInt();
+            File output = new File(in.readUTF());
+            try {
+                int[] pixels = readTile(raw, imageWidth, x0, y0, tw, th);
+                int result;
+                if (op == COMPONENTS) {
+                    result = engine.writeConnectedComponents(pixels, tw, th, output);
+                } else if (op == FOREST) {
+                    result = writeForest(engine.buildHierarchy(pixels, tw, th), pixels, imageWidth, x0, y0, output);
+                } else {
+                    throw new IllegalArgumentException("Unknown request: " + op);
+                }
+                out.writeBoolean(true);
+                out.writeInt(result);
+            } catch (IOException | RuntimeException e) {
+                out.writeBoolean(false);
+                out.writeUTF(String.valueOf(e));
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * copies a tile out of a raw image file.
+     * @param raw (File): the image's pixels as big-endian int32s, row by row
+     * @param imageWidth (int): width of the image
+     * @param x0 (int): x-coord of the tile's upper left pixel
+     * @param y0 (int): y-coord of the tile's upper left pixel
+     * @param tw (int): width of the tile
+     * @param th (int): height of the tile
+     * @return (int[]): the tile's pixels, row by row
+     */
+    static int[] readTile(File raw, int imageWidth, int x0, int y0, int tw, int th) throws IOException {
+        int[] pixels = new int[tw * th];
+        try (LargeMappedFile file = new LargeMappedFile(raw, raw.length(), true)) {
+            for (int y = 0; y < th; y++) {
+                file.getInts(4L * ((long) imageWidth * (y0 + y) + x0), pixels, tw * y, tw);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * writes a tile's minimum spanning forest with its edges renumbered over
+     * the whole image. a tile's rows and edges are in the same relative order
+     * as in the image, so the keys come out sorted.
+     * @return (int): the number of edges written
+     */
+    private static int writeForest(SegmentationHierarchy forest, int[] pixels, int imageWidth, int x0, int y0, File output) throws IOException {
+        int tw = forest.getWidth(), count = forest.getMergeCount();
+        try (LargeMappedFile file = new LargeMappedFile(output, 8L * count)) {
+            for (int i = 0; i < count; i++) {
+                int e = forest.getEdge(i);
+                int p = e >>> 1;
+                int q = (e & 1) == 0 ? p + 1 : p + tw;
+                int global = 2 * (imageWidth * (y0 + p / tw) + x0 + p % tw) + (e & 1);
+                file.putLong(8L * i, (long) EdgeList.weight(pixels[p], pixels[q]) << 32 | global);
+            }
+        }
+        return count;
+    }
+}
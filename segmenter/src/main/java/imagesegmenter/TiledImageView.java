@@ -0,0 +1,465 @@
+/**
+ * TiledImageView.java
+ * A scrollable, zoomable view of an image too big to draw in one piece,
+ * painted from a cache of small tiles cut from a pyramid of halved copies.
+ *
+ * The view zooms in powers of two. At 1/2^L it draws the tiles of pyramid
+ * level L one to one, and zoomed in it stretches the tiles of level 0, so a
+ * repaint only ever touches the tiles in the visible rectangle, whatever the
+ * size of the image. A level's pixels are built on demand, a tile at a time,
+ * by averaging a few samples of each 2^L square of the image, so no level is
+ * ever held whole.
+ *
+ * Tiles are built on one background thread, most recently requested first,
+ * and kept in a bounded LRU cache. Until a tile is ready its area is drawn
+ * stretched from the nearest coarser tile in the cache, or left blank.
+ *
+ * The view reads the image's pixels straight from the caller's array, and is
+ * told when some of them change. It keeps a fingerprint of each tile of level
+ * 0 and throws away only the tiles, at every level, over the tiles whose
+ * fingerprints changed, so a recolor that leaves most of the image as it was
+ * rebuilds little. All methods must be called on the event dispatch thread.
+ */
+
+package imagesegmenter;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+public class TiledImageView extends JComponent implements Scrollable {
+    public static final int TILE = 256; // width and height of a tile, in pixels of its level.
+    public static final int MAX_ZOOM = 4; // most doublings when zooming in.
+    static final int MAX_CACHED_TILES = 512; // 128MB of tiles at most.
+    static final int SAMPLES = 4; // samples across and down averaged for each pixel of a coarser level.
+
+    private int[] pixels; // the image, row by row; the caller's own array.
+    private int w, h;
+    private int maxLevel; // the level at which the whole image fits in one tile.
+    private int zoom; // the view is 2^zoom times the image's size.
+    private BufferedImage preview; // a rough image stretched over the whole view, or null.
+
+    private final Map<Long, BufferedImage> cache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    private final Set<Long> requested = new HashSet<>(); // tiles queued or being built.
+    private final Set<Long> stale = new HashSet<>(); // requested tiles whose pixels changed since.
+    private int generation; // counts images shown, so builds for an old one are dropped.
+    private volatile Rectangle wanted = new Rectangle(); // the visible part of the image, for skipping tiles scrolled away from.
+    private volatile int wantedLevel; // the level being drawn.
+
+    // The builder thread owns the fingerprints.
+    private final ThreadPoolExecutor builder = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingDeque<Runnable>() {
+        public boolean offer(Runnable task) {
+            return offerFirst(task); // the newest request is what is on screen now.
+        }
+    }, r -> {
+        Thread thread = new Thread(r, "tile-builder");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private long[] fingerprints = new long[0]; // of each level-0 tile, where known.
+    private BitSet known = new BitSet();
+    private int fingerprintGeneration; // the image the fingerprints are of.
+
+    public TiledImageView() {
+        builder.allowCoreThreadTimeOut(true);
+        setOpaque(true);
+        setBackground(Color.GRAY);
+    }
+
+    /**
+     * shows an image. an image of the size already shown keeps the tiles
+     * whose pixels are the same; any other starts afresh.
+     * @param pixels (int[]): packed RGB pixels, row by row; read, not copied
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     */
+    public void setImage(int[] pixels, int w, int h) {
+        if (w == this.w && h == this.h && this.pixels != null) {
+            this.pixels = pixels;
+            imageChanged(0, 0, w, h);
+            return;
+        }
+        this.pixels = pixels;
+        this.w = w;
+        this.h = h;
+        maxLevel = 0;
+        while ((Math.max(w, h) - 1) >> maxLevel >= TILE) {
+            maxLevel++;
+        }
+        zoom = Math.max(-maxLevel, Math.min(zoom, MAX_ZOOM));
+        generation++;
+        cache.clear();
+        requested.clear();
+        stale.clear();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * tells the view that some pixels of the image have changed. the tiles
+     * over the rectangle are compared with their fingerprints in the
+     * background, and the ones that changed are rebuilt.
+     * @param x (int): x-coord of the changed rectangle, in image pixels
+     * @param y (int): y-coord of the changed rectangle
+     * @param width (int): width of the changed rectangle
+     * @param height (int): height of the changed rectangle
+     */
+    public void imageChanged(int x, int y, int width, int height) {
+        if (pixels == null) {
+            return;
+        }
+        final int[] image = pixels;
+        final int imageW = w, imageH = h, expected = generation, across = tilesAcross(0);
+        final int tiles = across * tilesDown(0);
+        builder.execute(() -> {
+            if (expected - fingerprintGeneration < 0) {
+                return; // queued for an image no longer shown.
+            }
+            if (expected != fingerprintGeneration) {
+                fingerprintGeneration = expected;
+                fingerprints = new long[tiles];
+                known = new BitSet(tiles);
+            }
+            final BitSet changed = refingerprint(fingerprints, known, image, imageW, imageH, x, y, width, height);
+            if (!changed.isEmpty()) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == expected) {
+                        changed.stream().forEach(t -> invalidate(t % across, t / across));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * tells the view that any of the image's pixels may have changed.
+     */
+    public void imageChanged() {
+        imageChanged(0, 0, w, h);
+    }
+
+    /**
+     * shows a rough image stretched over the whole view until it is taken
+     * away, or takes it away.
+     * @param preview (BufferedImage): the rough image, at any size, or null
+     */
+    public void setPreview(BufferedImage preview) {
+        this.preview = preview;
+        repaint();
+    }
+
+    /**
+     * @return (int): the zoom, as a power of two; negative when zoomed out
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * zooms the view, keeping the image pixel under a point of the view
+     * where it is.
+     * @param zoom (int): the new zoom, as a power of two; clamped to the levels there are
+     * @param anchor (Point): a point of the view, or null for the middle of the visible part
+     */
+    public void setZoom(int zoom, Point anchor) {
+        zoom = Math.max(-maxLevel, Math.min(zoom, MAX_ZOOM));
+        if (zoom == this.zoom) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        if (anchor == null) {
+            anchor = new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+        }
+        double imageX = toImage(anchor.x), imageY = toImage(anchor.y);
+        int offsetX = anchor.x - visible.x, offsetY = anchor.y - visible.y;
+        this.zoom = zoom;
+        revalidate();
+        if (getParent() != null) {
+            getParent().validate(); // so the new size is scrollable at once.
+        }
+        scrollRectToVisible(new Rectangle((int) toView(imageX) - offsetX, (int) toView(imageY) - offsetY,
+                visible.width, visible.height));
+        repaint();
+    }
+
+    /**
+     * zooms out by whole powers of two until the image fits in the given size.
+     * @param size (Dimension): the room available
+     */
+    public void zoomToFit(Dimension size) {
+        int fit = 0;
+        while (fit > -maxLevel && (w > size.width << -fit || h > size.height << -fit)) {
+            fit--;
+        }
+        setZoom(fit, null);
+    }
+
+    /**
+     * @param viewX (int): a coordinate of the view
+     * @return (int): the image coordinate it shows
+     */
+    public int toImage(int viewX) {
+        return zoom >= 0 ? viewX >> zoom : viewX << -zoom;
+    }
+
+    private double toView(double imageX) {
+        return zoom >= 0 ? imageX * (1 << zoom) : imageX / (1 << -zoom);
+    }
+
+    private int level() {
+        return Math.max(0, -zoom);
+    }
+
+    private int tilesAcross(int level) {
+        return ((w + (1 << level) - 1 >> level) + TILE - 1) / TILE;
+    }
+
+    private int tilesDown(int level) {
+        return ((h + (1 << level) - 1 >> level) + TILE - 1) / TILE;
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return (long) level << 56 | (long) ty << 28 | tx;
+    }
+
+    /**
+     * @return (Rectangle): where tile (tx, ty) of a level lies in the view
+     */
+    private Rectangle tileBounds(int level, int tx, int ty) {
+        int x0 = tx * TILE << level, y0 = ty * TILE << level;
+        int x1 = Math.min(w, (tx + 1) * TILE << level), y1 = Math.min(h, (ty + 1) * TILE << level);
+        int vx0 = (int) toView(x0), vy0 = (int) toView(y0);
+        return new Rectangle(vx0, vy0, (int) Math.ceil(toView(x1)) - vx0, (int) Math.ceil(toView(y1)) - vy0);
+    }
+
+    /**
+     * drops the tiles of every level over tile (tx, ty) of level 0, and
+     * repaints where they were.
+     */
+    private void invalidate(int tx, int ty) {
+        for (int level = 0; level <= maxLevel; level++) {
+            long key = key(level, tx >> level, ty >> level);
+            cache.remove(key);
+            if (requested.contains(key)) {
+                stale.add(key);
+            }
+        }
+        repaint(tileBounds(0, tx, ty));
+    }
+
+    public Dimension getPreferredSize() {
+        return new Dimension((int) Math.ceil(toView(w)), (int) Math.ceil(toView(h)));
+    }
+
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (pixels == null) {
+            return;
+        }
+        if (preview != null) {
+            g.drawImage(preview, 0, 0, (int) toView(w), (int) toView(h), null);
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        int level = level();
+        wanted = new Rectangle(toImage(visible.x), toImage(visible.y),
+                toImage(visible.width) + 1, toImage(visible.height) + 1);
+        wantedLevel = level;
+        int span = (int) toView(TILE << level); // view pixels per tile of this level.
+        int tx0 = clip.x / span, tx1 = Math.min(tilesAcross(level), (clip.x + clip.width + span - 1) / span);
+        int ty0 = clip.y / span, ty1 = Math.min(tilesDown(level), (clip.y + clip.height + span - 1) / span);
+        for (int ty = ty0; ty < ty1; ty++) {
+            for (int tx = tx0; tx < tx1; tx++) {
+                Rectangle r = tileBounds(level, tx, ty);
+                BufferedImage tile = cache.get(key(level, tx, ty));
+                if (tile != null) {
+                    g.drawImage(tile, r.x, r.y, r.width, r.height, null);
+                } else {
+                    paintFromCoarser(g, level, tx, ty, r);
+                    request(level, tx, ty);
+                }
+            }
+        }
+    }
+
+    /**
+     * fills tile (tx, ty) of a level with the matching part of the nearest
+     * coarser tile that is in the cache, if any.
+     */
+    private void paintFromCoarser(Graphics g, int level, int tx, int ty, Rectangle r) {
+        for (int up = 1; level + up <= maxLevel; up++) {
+            BufferedImage coarse = cache.get(key(level + up, tx >> up, ty >> up));
+            if (coarse != null) {
+                int part = TILE >> up; // a whole tile's side, in the coarser tile's pixels.
+                int sx = (tx & (1 << up) - 1) * part, sy = (ty & (1 << up) - 1) * part;
+                int tw = Math.min(TILE, (w + (1 << level) - 1 >> level) - tx * TILE);
+                int th = Math.min(TILE, (h + (1 << level) - 1 >> level) - ty * TILE);
+                int sw = Math.max(1, Math.min(coarse.getWidth() - sx, (tw + (1 << up) - 1) >> up));
+                int sh = Math.max(1, Math.min(coarse.getHeight() - sy, (th + (1 << up) - 1) >> up));
+                g.drawImage(coarse, r.x, r.y, r.x + r.width, r.y + r.height, sx, sy, sx + sw, sy + sh, null);
+                return;
+            }
+        }
+    }
+
+    /**
+     * queues tile (tx, ty) of a level to be built, unless it already is.
+     */
+    private void request(int level, int tx, int ty) {
+        final long key = key(level, tx, ty);
+        if (!requested.add(key)) {
+            return;
+        }
+        final int[] image = pixels;
+        final int imageW = w, imageH = h, expected = generation;
+        final Rectangle area = new Rectangle(tx * TILE << level, ty * TILE << level, TILE << level, TILE << level);
+        builder.execute(() -> {
+            BufferedImage tile = level == wantedLevel && area.intersects(wanted)
+                    ? buildTile(image, imageW, imageH, level, tx, ty) : null;
+            SwingUtilities.invokeLater(() -> {
+                if (generation != expected) {
+                    return;
+                }
+                requested.remove(key);
+                if (stale.remove(key) || tile == null) {
+                    repaint(tileBounds(level, tx, ty)); // asks for it again if it is still in view.
+                } else {
+                    cache.put(key, tile);
+                    repaint(tileBounds(level, tx, ty));
+                }
+            });
+        });
+    }
+
+    /**
+     * builds tile (tx, ty) of a level: a copy of the pixels at level 0,
+     * else each pixel the average of up to SAMPLES x SAMPLES pixels spread
+     * over the square of the image it stands for.
+     * @return (BufferedImage): the tile
+     */
+    static BufferedImage buildTile(int[] pixels, int w, int h, int level, int tx, int ty) {
+        int step = 1 << level;
+        int levelW = (w + step - 1) >> level, levelH = (h + step - 1) >> level;
+        int tw = Math.min(TILE, levelW - tx * TILE), th = Math.min(TILE, levelH - ty * TILE);
+        BufferedImage tile = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+        int[] out = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        int x0 = tx * TILE << level, y0 = ty * TILE << level;
+        if (level == 0) {
+            for (int y = 0; y < th; y++) {
+                System.arraycopy(pixels, w * (y0 + y) + x0, out, tw * y, tw);
+            }
+            return tile;
+        }
+        int samples = Math.min(step, SAMPLES), spacing = step / samples;
+        for (int y = 0; y < th; y++) {
+            for (int x = 0; x < tw; x++) {
+                int r = 0, g = 0, b = 0, n = 0;
+                for (int sy = y0 + (y << level) + spacing / 2, j = 0; j < samples && sy < h; j++, sy += spacing) {
+                    for (int sx = x0 + (x << level) + spacing / 2, i = 0; i < samples && sx < w; i++, sx += spacing) {
+                        int rgb = pixels[w * sy + sx];
+                        r += (rgb >> 16) & 0xff;
+                        g += (rgb >> 8) & 0xff;
+                        b += rgb & 0xff;
+                        n++;
+                    }
+                }
+                if (n == 0) { // the square's samples all fall past the edge; take its corner.
+                    int rgb = pixels[w * Math.min(h - 1, y0 + (y << level)) + Math.min(w - 1, x0 + (x << level))];
+                    r = (rgb >> 16) & 0xff;
+                    g = (rgb >> 8) & 0xff;
+                    b = rgb & 0xff;
+                    n = 1;
+                }
+                out[tw * y + x] = (r / n) << 16 | (g / n) << 8 | (b / n);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * fingerprints the level-0 tiles over a rectangle of the image again.
+     * @param fingerprints (long[]): the fingerprint of each tile, by ty * tilesAcross + tx; updated
+     * @param known (BitSet): the tiles fingerprinted before; updated
+     * @return (BitSet): the tiles whose fingerprints were unknown or changed
+     */
+    static BitSet refingerprint(long[] fingerprints, BitSet known, int[] pixels, int w, int h,
+                                int x, int y, int width, int height) {
+        int across = (w + TILE - 1) / TILE, down = (h + TILE - 1) / TILE;
+        int tx0 = Math.max(0, x / TILE), tx1 = Math.min(across, (x + width + TILE - 1) / TILE);
+        int ty0 = Math.max(0, y / TILE), ty1 = Math.min(down, (y + height + TILE - 1) / TILE);
+        BitSet changed = new BitSet();
+        for (int ty = ty0; ty < ty1; ty++) {
+            for (int tx = tx0; tx < tx1; tx++) {
+                int t = ty * across + tx;
+                long fingerprint = fingerprint(pixels, w, h, tx, ty);
+                if (!known.get(t) || fingerprints[t] != fingerprint) {
+                    fingerprints[t] = fingerprint;
+                    known.set(t);
+                    changed.set(t);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return (long): a hash of the pixels under tile (tx, ty) of level 0
+     */
+    static long fingerprint(int[] pixels, int w, int h, int tx, int ty) {
+        int x0 = tx * TILE, x1 = Math.min(w, x0 + TILE), y1 = Math.min(h, (ty + 1) * TILE);
+        long hash = 0;
+        for (int y = ty * TILE; y < y1; y++) {
+            for (int p = w * y + x0; p < w * y + x1; p++) {
+                hash = (hash ^ pixels[p]) * 0x9e3779b97f4a7c15L;
+            }
+        }
+        return hash;
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return TILE / 8;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? visible.width - TILE / 8 : visible.height - TILE / 8;
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,654 @@
+/**
+ * TiledSegmenter.java
+ * Connected components and segmentations of images too big for one JVM,
+ * split into tiles that are worked on by TileWorker processes on the same
+ * machine.
+ *
+ * The image is cut into a grid of tiles of tileSize pixels square, and every
+ * tile also takes the first column of its right neighbor and the first row
+ * of the one below, so neighboring tiles overlap by one pixel. Every edge of
+ * the pixel graph then lies inside some tile, and the pixels in an overlap
+ * are what ties the tiles' results back together.
+ *
+ * For connected components, each worker labels a tile on its own and writes
+ * the labels to a LabelMapFile. The coordinator keeps a union-find over the
+ * tiles' components only, unions the two components every overlap pixel
+ * belongs to, and then numbers the unions in a raster scan of the tiles'
+ * files, so the result is exactly SegmentationEngine.connectedComponents.
+ * For segmentations, each worker finds its tile's minimum spanning forest,
+ * which holds every edge of the image's own forest that lies in the tile.
+ * The coordinator merges the tiles' forests, already sorted by weight and
+ * edge id, and runs Kruskal's algorithm over them only, which gives the same
+ * merge sequence as SegmentationEngine.buildHierarchy. Its union-find over
+ * the pixels is a memory-mapped working file, and the merges are streamed
+ * out to a SegmentationHierarchy file as they are found, so the coordinator's
+ * heap holds a few values per tile however big the image. Edge ids are int32s
+ * in that file, which still limits segmentations to 2^30 pixels.
+ *
+ * Workers are started on first use with the coordinator's java and class
+ * path, are handed tiles one at a time as they finish, and live until
+ * close(). Pixels and results pass through files in a working directory, so
+ * the coordinator never holds a tile's pixels, and when labeling from an
+ * image file never holds the image either. A worker that dies fails the call
+ * and is started again by the next one.
+ */
+
+package imagesegmenter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TiledSegmenter implements Closeable {
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    private final int tileSize;
+    private final File tempDir; // null for the system default.
+    private final List<String> command; // starts one worker.
+    private final Worker[] workers;
+    private final ExecutorService dispatchers; // one thread per worker feeds it tiles.
+
+    /**
+     * initializes this TiledSegmenter; no worker is started until it is needed.
+     * @param workerCount (int): the number of worker processes
+     * @param tileSize (int): width and height of a tile, not counting the overlap
+     * @param tempDir (File): where to keep the working files, or null for the
+     * system default
+     * @param workerOptions (String...): extra options for the workers' JVMs, such as -Xmx
+     */
+    public TiledSegmenter(int workerCount, int tileSize, File tempDir, String... workerOptions) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        this.tempDir = tempDir;
+        command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        if (ModuleLayer.boot().findModule(EdgeWeights.VECTOR_MODULE).isPresent()) {
+            command.add("--add-modules");
+            command.add(EdgeWeights.VECTOR_MODULE);
+        }
+        command.addAll(List.of(workerOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TileWorker.class.getName());
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker();
+        }
+        dispatchers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "tile-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * computes the connected components of the image under the strict pixel
+     * graph, like SegmentationEngine.connectedComponents.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (LabelMap): the component number of every pixel
+     */
+    public LabelMap connectedComponents(int[] pixels, int w, int h) throws IOException {
+        checkDimensions(pixels, w, h);
+        try (Job job = new Job(w, h)) {
+            job.writeRaw(pixels);
+            int[] labels = new int[w*h];
+            int count = job.labelComponents(labels, null);
+            return new LabelMap(w, h, labels, count, w*h - count);
+        }
+    }
+
+    /**
+     * labels the connected components of an image file, decoding it a few
+     * rows at a time so that neither it nor its labels are ever held in the
+     * heap.
+     * @param imageFile (File): the image to label
+     * @param labelsFile (File): receives the component number of every pixel
+     * as a LabelMapFile, replaced if it exists
+     * @return (int): the number of components
+     */
+    public int writeConnectedComponents(File imageFile, File labelsFile) throws IOException {
+        int[] size = readSize(imageFile);
+        try (Job job = new Job(size[0], size[1])) {
+            job.decodeRaw(imageFile);
+            return job.labelComponents(null, labelsFile);
+        }
+    }
+
+    /**
+     * finds the whole merge sequence of the image's segmentation, like
+     * SegmentationEngine.buildHierarchy.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (SegmentationHierarchy): the merge sequence
+     */
+    public SegmentationHierarchy buildHierarchy(int[] pixels, int w, int h) throws IOException {
+        checkDimensions(pixels, w, h);
+        checkEdgeIds(w, h);
+        try (Job job = new Job(w, h)) {
+            job.writeRaw(pixels);
+            return job.readHierarchy();
+        }
+    }
+
+    /**
+     * finds the whole merge sequence of an image file's segmentation, decoding
+     * it a few rows at a time.
+     * @param imageFile (File): the image to segment
+     * @return (SegmentationHierarchy): the merge sequence
+     */
+    public SegmentationHierarchy buildHierarchy(File imageFile) throws IOException {
+        int[] size = readSize(imageFile);
+        checkEdgeIds(size[0], size[1]);
+        try (Job job = new Job(size[0], size[1])) {
+            job.decodeRaw(imageFile);
+            return job.readHierarchy();
+        }
+    }
+
+    /**
+     * writes the whole merge sequence of an image file's segmentation to a
+     * file, decoding the image a few rows at a time so that neither it nor
+     * the merge sequence is ever held in the heap.
+     * @param imageFile (File): the image to segment
+     * @param hierarchyFile (File): receives the merge sequence as a
+     * SegmentationHierarchy file, replaced if it exists
+     * @return (int): the number of merges
+     */
+    public int writeHierarchy(File imageFile, File hierarchyFile) throws IOException {
+        int[] size = readSize(imageFile);
+        checkEdgeIds(size[0], size[1]);
+        try (Job job = new Job(size[0], size[1])) {
+            job.decodeRaw(imageFile);
+            return job.mergeForests(hierarchyFile);
+        }
+    }
+
+    /**
+     * segments the image into nRegions regions, like SegmentationEngine.segment.
+     * @param pixels (int[]): packed RGB pixels, row by row
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param nRegions (int): the number of regions in the result
+     * @return (LabelMap): the region number of every pixel
+     */
+    public LabelMap segment(int[] pixels, int w, int h, int nRegions) throws IOException {
+        return buildHierarchy(pixels, w, h).labels(nRegions);
+    }
+
+    /**
+     * @return (int): the number of worker processes
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return (int): width and height of a tile, not counting the overlap
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * asks the workers to quit and stops the ones that don't.
+     */
+    public void close() {
+        dispatchers.shutdownNow();
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    private static void checkDimensions(int[] pixels, int w, int h) {
+        if (w < 1 || h < 1 || (long) w * h != pixels.length) {
+            throw new IllegalArgumentException("Image is " + w + "x" + h + " but has " + pixels.length + " pixels");
+        }
+    }
+
+    private static void checkEdgeIds(int w, int h) {
+        if ((long) w * h > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Image is too large for an edge list: " + w + "x" + h);
+        }
+    }
+
+    /**
+     * @return (int[]): width and height of an image file, read from its header
+     */
+    private static int[] readSize(File imageFile) throws IOException {
+        try (ScanlineReader reader = new ScanlineReader(imageFile)) {
+            return new int[] {reader.getWidth(), reader.getHeight()};
+        }
+    }
+
+    /**
+     * One call: the tile grid of an image and its working directory.
+     */
+    private class Job implements Closeable {
+        final int w, h;
+        final int cols, rows; // tiles across and down.
+        final File directory;
+        final File raw; // the image's pixels, for the workers to map.
+
+        Job(int w, int h) throws IOException {
+            this.w = w;
+            this.h = h;
+            cols = (w + tileSize - 1) / tileSize;
+            rows = (h + tileSize - 1) / tileSize;
+            directory = tempDir == null
+                    ? Files.createTempDirectory("tiles").toFile()
+                    : Files.createTempDirectory(tempDir.toPath(), "tiles").toFile();
+            raw = new File(directory, "image.raw");
+        }
+
+        int x0(int t) {
+            return t % cols * tileSize;
+        }
+
+        int y0(int t) {
+            return t / cols * tileSize;
+        }
+
+        /** @return (int): width of tile t, with the column it shares with its right neighbor */
+        int width(int t) {
+            return Math.min(x0(t) + tileSize + 1, w) - x0(t);
+        }
+
+        /** @return (int): height of tile t, with the row it shares with the tile below */
+        int height(int t) {
+            return Math.min(y0(t) + tileSize + 1, h) - y0(t);
+        }
+
+        File output(int t) {
+            return new File(directory, "tile-" + t);
+        }
+
+        void writeRaw(int[] pixels) throws IOException {
+            try (LargeMappedFile file = new LargeMappedFile(raw, 4L * pixels.length)) {
+                file.putInts(0, pixels, 0, pixels.length);
+            }
+        }
+
+        /**
+         * decodes an image file into the raw file a row at a time.
+         */
+        void decodeRaw(File imageFile) throws IOException {
+            try (ScanlineReader reader = new ScanlineReader(imageFile);
+                 LargeMappedFile file = new LargeMappedFile(raw, 4L * w * h)) {
+                if (reader.getWidth() != w || reader.getHeight() != h) {
+                    throw new IOException("Image changed size while being read: " + imageFile);
+                }
+                reader.read(0, (y, rgb, offset) -> file.putInts(4L * w * y, rgb, offset, w));
+            }
+        }
+
+        /**
+         * has the workers run op on every tile.
+         * @return (int[]): each tile's reply
+         */
+        int[] runTiles(int op) throws IOException {
+            int[] results = new int[cols * rows];
+            AtomicInteger next = new AtomicInteger();
+            List<Future<Void>> running = new ArrayList<>();
+            for (Worker worker : workers) {
+                running.add(dispatchers.submit(() -> {
+                    for (int t; (t = next.getAndIncrement()) < results.length; ) {
+                        results[t] = worker.run(op, raw, w, x0(t), y0(t), width(t), height(t), output(t));
+                    }
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<Void> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    next.set(results.length); // stop handing out tiles.
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause() : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the tile workers", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        }
+
+        /**
+         * labels every tile, joins the tiles' components through the pixels
+         * they share, and numbers the joined components in raster order.
+         * @param labels (int[]): receives the component numbers, or null
+         * @param labelsFile (File): receives the component numbers as a
+         * LabelMapFile, or null
+         * @return (int): the number of components
+         */
+        int labelComponents(int[] labels, File labelsFile) throws IOException {
+            int[] counts = runTiles(TileWorker.COMPONENTS);
+            int[] offsets = new int[counts.length + 1]; // tile t's components are nodes offsets[t] .. offsets[t+1]-1.
+            for (int t = 0; t < counts.length; t++) {
+                offsets[t+1] = Math.addExact(offsets[t], counts[t]);
+            }
+            LabelMapFile[] tiles = new LabelMapFile[counts.length];
+            LabelMapFile out = null;
+            try {
+                for (int t = 0; t < tiles.length; t++) {
+                    tiles[t] = LabelMapFile.open(output(t));
+                }
+                DisjointSets forest = new DisjointSets(offsets[tiles.length]);
+                for (int t = 0; t < tiles.length; t++) {
+                    joinOverlaps(t, tiles, offsets, forest);
+                }
+                int count = 0; // every tree holds a pixel some tile owns, so it is a component.
+                for (int node = 0; node < offsets[tiles.length]; node++) {
+                    if (forest.isRoot(node)) {
+                        count++;
+                    }
+                }
+                if (labelsFile != null) {
+                    out = LabelMapFile.create(labelsFile, w, h, count);
+                }
+                int[] number = new int[offsets[tiles.length]]; // component number of each root, plus one.
+                int next = 0;
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x += tileSize) {
+                        int t = y / tileSize * cols + x / tileSize;
+                        int ly = y - y0(t), owned = Math.min(tileSize, w - x);
+                        for (int lx = 0; lx < owned; lx++) {
+                            int root = forest.find(offsets[t] + tiles[t].getLabel(lx, ly));
+                            if (number[root] == 0) {
+                                number[root] = ++next;
+                            }
+                            int p = w*y + x + lx;
+                            if (labels != null) {
+                                labels[p] = number[root] - 1;
+                            }
+                            if (out != null) {
+                                out.putLabel(p, number[root] - 1);
+                                out.countPixel(number[root] - 1, p);
+                            }
+                        }
+                    }
+                }
+                return count;
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+                for (LabelMapFile tile : tiles) {
+                    if (tile != null) {
+                        tile.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * unions the components of tile t with those of its right and lower
+         * neighbors along the column and row they share.
+         */
+        void joinOverlaps(int t, LabelMapFile[] tiles, int[] offsets, DisjointSets forest) throws IOException {
+            int tw = width(t), th = height(t);
+            if (t % cols + 1 < cols) {
+                int right = t + 1;
+                for (int ly = 0; ly < th; ly++) {
+                    forest.union(offsets[t] + tiles[t].getLabel(tw - 1, ly), offsets[right] + tiles[right].getLabel(0, ly));
+                }
+            }
+            if (t / cols + 1 < rows) {
+                int below = t + cols;
+                for (int lx = 0; lx < tw; lx++) {
+                    forest.union(offsets[t] + tiles[t].getLabel(lx, th - 1), offsets[below] + tiles[below].getLabel(lx, 0));
+                }
+            }
+        }
+
+        /**
+         * @return (SegmentationHierarchy): the image's merge sequence, found
+         * by mergeForests and read back in
+         */
+        SegmentationHierarchy readHierarchy() throws IOException {
+            File hierarchyFile = new File(directory, "hierarchy");
+            mergeForests(hierarchyFile);
+            return SegmentationHierarchy.read(hierarchyFile);
+        }
+
+        /**
+         * finds every tile's minimum spanning forest, then runs Kruskal's
+         * algorithm over their edges, merged in weight and id order, writing
+         * each merge out as it is found. an edge in an overlap comes from
+         * both tiles and is taken once.
+         * @param hierarchyFile (File): receives the merge sequence as a
+         * SegmentationHierarchy file, replaced if it exists
+         * @return (int): the number of merges
+         */
+        int mergeForests(File hierarchyFile) throws IOException {
+            int[] counts = runTiles(TileWorker.FOREST);
+            LargeMappedFile[] runs = new LargeMappedFile[counts.length];
+            int merges = 0;
+            hierarchyFile.delete();
+            // each pixel's parent plus one, or 0 for a root, so the table starts out as all roots.
+            try (LargeMappedFile parent = new LargeMappedFile(new File(directory, "parent.table"), 4L * w * h);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hierarchyFile)))) {
+                int[] heap = new int[counts.length]; // tiles with keys left, by their next key.
+                int[] read = new int[counts.length]; // keys taken from each tile so far.
+                long[] head = new long[counts.length];
+                int size = 0;
+                for (int t = 0; t < counts.length; t++) {
+                    runs[t] = new LargeMappedFile(output(t), 8L * counts[t], true);
+                    if (counts[t] > 0) {
+                        head[t] = runs[t].getLong(0);
+                        heap[size++] = t;
+                    }
+                }
+                for (int i = size / 2 - 1; i >= 0; i--) {
+                    siftDown(heap, size, i, head);
+                }
+                out.writeInt(SegmentationHierarchy.MAGIC);
+                out.writeInt(SegmentationHierarchy.VERSION);
+                out.writeInt(w);
+                out.writeInt(h);
+                out.writeInt(0); // the merge count, filled in below.
+                out.writeInt(0);
+                long last = -1;
+                while (merges < w*h - 1 && size > 0) {
+                    int t = heap[0];
+                    long key = head[t];
+                    if (++read[t] < counts[t]) {
+                        head[t] = runs[t].getLong(8L * read[t]);
+                    } else {
+                        heap[0] = heap[--size];
+                    }
+                    siftDown(heap, size, 0, head);
+                    if (key == last) {
+                        continue;
+                    }
+                    last = key;
+                    int e = (int) key;
+                    int p = e >>> 1;
+                    if (union(parent, p, (e & 1) == 0 ? p+1 : p+w)) {
+                        out.writeInt(e);
+                        merges++;
+                    }
+                }
+            } finally {
+                for (LargeMappedFile run : runs) {
+                    if (run != null) {
+                        run.close();
+                    }
+                }
+            }
+            try (RandomAccessFile file = new RandomAccessFile(hierarchyFile, "rw")) {
+                file.seek(SegmentationHierarchy.MERGE_COUNT);
+                file.writeInt(merges);
+            }
+            return merges;
+        }
+
+        /**
+         * deletes the working directory.
+         */
+        public void close() {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * @return (int): the root of pixel p in a parent table, halving the path
+     * on the way up
+     */
+    private static int find(LargeMappedFile parent, int p) throws IOException {
+        for (int up; (up = parent.getInt(4L * p)) != 0; ) {
+            int grandparent = parent.getInt(4L * (up - 1));
+            if (grandparent == 0) {
+                return up - 1;
+            }
+            parent.putInt(4L * p, grandparent);
+            p = grandparent - 1;
+        }
+        return p;
+    }
+
+    /**
+     * joins the trees of pixels p and q in a parent table, under the smaller root.
+     * @return (boolean): whether they were in different trees
+     */
+    private static boolean union(LargeMappedFile parent, int p, int q) throws IOException {
+        int root1 = find(parent, p), root2 = find(parent, q);
+        if (root1 == root2) {
+            return false;
+        }
+        parent.putInt(4L * Math.max(root1, root2), Math.min(root1, root2) + 1);
+        return true;
+    }
+
+    private static void siftDown(int[] heap, int size, int i, long[] head) {
+        int t = heap[i];
+        while (2*i + 1 < size) {
+            int child = 2*i + 1;
+            if (child + 1 < size && head[heap[child+1]] < head[heap[child]]) {
+                child++;
+            }
+            if (head[heap[child]] >= head[t]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = t;
+    }
+
+    /**
+     * One worker process and the pipes to it.
+     */
+    private class Worker {
+        private Process process;
+        private DataOutputStream requests;
+        private DataInputStream replies;
+
+        /**
+         * sends one request and waits for the reply, starting the process first if needed.
+         * @return (int): the worker's result
+         */
+        synchronized int run(int op, File raw, int imageWidth, int x0, int y0, int tw, int th, File output) throws IOException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+            boolean ok;
+            int result = 0;
+            String message = null;
+            try {
+                requests.writeInt(op);
+                requests.writeUTF(raw.getPath());
+                requests.writeInt(imageWidth);
+                requests.writeInt(x0);
+                requests.writeInt(y0);
+                requests.writeInt(tw);
+                requests.writeInt(th);
+                requests.writeUTF(output.getPath());
+                requests.flush();
+                ok = replies.readBoolean();
+                if (ok) {
+                    result = replies.readInt();
+                } else {
+                    message = replies.readUTF();
+                }
+            } catch (IOException e) {
+                stop(); // the pipes are gone or out of step; the next call starts afresh.
+                throw new IOException("Tile worker exited", e);
+            }
+            if (!ok) {
+                throw new IOException("Tile worker failed on " + tw + "x" + th + " at (" + x0 + ", " + y0 + "): " + message);
+            }
+            return result;
+        }
+
+        private void start() throws IOException {
+            process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            replies = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        synchronized void stop() {
+            if (process == null) {
+                return;
+            }
+            try {
+                requests.writeInt(TileWorker.QUIT);
+                requests.close();
+                replies.close();
+            } catch (IOException e) {
+                // already gone.
+            }
+            process.destroy();
+            process = null;
+        }
+    }
+
+    /* Stand-alone use: java TiledSegmenter image labels-out [workers [tileSize]] */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java TiledSegmenter image labels-out [workers [tileSize]]");
+            System.exit(1);
+        }
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int tileSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_TILE_SIZE;
+        try (TiledSegmenter segmenter = new TiledSegmenter(workers, tileSize, null)) {
+            int count = segmenter.writeConnectedComponents(new File(args[0]), new File(args[1]));
+            System.out.println("The number of connected components in this image is: " + count);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * VectorEdgeWeights.java
+ * The EdgeWeights kernel written with the incubating Vector API: a vector of
+ * pixel pairs is unpacked into red, green and blue lanes, subtracted, squared
+ * and summed at once, and the pairs left over at the end of the run are
+ * weighed one by one. Integer arithmetic, so the weights are exactly those of
+ * EdgeList.weight.
+ *
+ * Only loaded by EdgeWeights, and only when jdk.incubator.vector is in the
+ * boot layer; nothing else may refer to this class.
+ */
+
+package imagesegmenter;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorEdgeWeights implements EdgeWeights.Kernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    public void weigh(int[] a, int aOffset, int[] b, int bOffset, int[] out, int outOffset, int count) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+            IntVector u = IntVector.fromArray(SPECIES, a, aOffset + i);
+            IntVector v = IntVector.fromArray(SPECIES, b, bOffset + i);
+            IntVector dr = u.lanewise(VectorOperators.LSHR, 16).and(0xff)
+                    .sub(v.lanewise(VectorOperators.LSHR, 16).and(0xff));
+            IntVector dg = u.lanewise(VectorOperators.LSHR, 8).and(0xff)
+                    .sub(v.lanewise(VectorOperators.LSHR, 8).and(0xff));
+            IntVector db = u.and(0xff).sub(v.and(0xff));
+            dr.mul(dr).add(dg.mul(dg)).add(db.mul(db)).intoArray(out, outOffset + i);
+        }
+        for (; i < count; i++) {
+            out[outOffset + i] = EdgeList.weight(a[aOffset + i], b[bOffset + i]);
+        }
+    }
+}
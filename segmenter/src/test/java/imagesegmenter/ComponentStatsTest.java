@@ -0,0 +1,154 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ComponentStatsTest {
+    static final int[][] SIZES = {{1, 1}, {1, 97}, {97, 1}, {64, 48}, {203, 117}};
+
+    static SegmentationEngine serial;
+    static SegmentationEngine parallel; // gathers the statistics in stripes when there are few components.
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void startEngines() {
+        serial = new SegmentationEngine(1);
+        parallel = new SegmentationEngine(4);
+    }
+
+    @AfterAll
+    static void closeEngines() {
+        serial.close();
+        parallel.close();
+    }
+
+    /**
+     * checks the statistics a LabelMap carries against ones summed up pixel
+     * by pixel from its labels.
+     */
+    private static void assertBruteForceStats(LabelMap labelled, int[] pixels, String what) {
+        int w = labelled.getWidth(), h = labelled.getHeight(), count = labelled.getComponentCount();
+        int[] labels = labelled.getLabels();
+        int[] area = new int[count], minX = new int[count], minY = new int[count], maxX = new int[count], maxY = new int[count];
+        long[] sumX = new long[count], sumY = new long[count], sumR = new long[count], sumG = new long[count], sumB = new long[count];
+        for (int k = 0; k < count; k++) {
+            minX[k] = minY[k] = Integer.MAX_VALUE;
+            maxX[k] = maxY[k] = -1;
+        }
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int k = labels[w*y + x], rgb = pixels[w*y + x];
+                area[k]++;
+                minX[k] = Math.min(minX[k], x);
+                minY[k] = Math.min(minY[k], y);
+                maxX[k] = Math.max(maxX[k], x);
+                maxY[k] = Math.max(maxY[k], y);
+                sumX[k] += x;
+                sumY[k] += y;
+                sumR[k] += (rgb >> 16) & 0xff;
+                sumG[k] += (rgb >> 8) & 0xff;
+                sumB[k] += rgb & 0xff;
+            }
+        }
+        ComponentStats stats = labelled.getStats();
+        assertEquals(count, stats.getCount(), what);
+        for (int k = 0; k < count; k++) {
+            String where = what + " component " + k;
+            assertEquals(area[k], stats.getArea(k), where);
+            assertEquals(minX[k], stats.getMinX(k), where);
+            assertEquals(minY[k], stats.getMinY(k), where);
+            assertEquals(maxX[k], stats.getMaxX(k), where);
+            assertEquals(maxY[k], stats.getMaxY(k), where);
+            assertEquals((double) sumX[k] / area[k], stats.getCentroidX(k), where);
+            assertEquals((double) sumY[k] / area[k], stats.getCentroidY(k), where);
+            assertEquals((double) sumR[k] / area[k], stats.getMeanRed(k), where);
+            assertEquals((double) sumG[k] / area[k], stats.getMeanGreen(k), where);
+            assertEquals((double) sumB[k] / area[k], stats.getMeanBlue(k), where);
+            int a = area[k];
+            int mean = (int) ((sumR[k] + a/2) / a) << 16 | (int) ((sumG[k] + a/2) / a) << 8 | (int) ((sumB[k] + a/2) / a);
+            assertEquals(mean, stats.getMeanColor(k), where);
+        }
+    }
+
+    /**
+     * checks the statistics of components and of segmentations, gathered in
+     * one pass and in parallel stripes.
+     */
+    private static void assertStatsOnBothEngines(String name, int[] pixels, int w, int h) {
+        for (SegmentationEngine engine : new SegmentationEngine[] {serial, parallel}) {
+            String what = name + " on " + engine.getParallelism() + " threads";
+            assertBruteForceStats(engine.connectedComponents(pixels, w, h, true), pixels, what);
+            for (int nRegions : new int[] {1, 25, 1000}) {
+                assertBruteForceStats(engine.segment(pixels, w, h, nRegions, true), pixels,
+                        what + " in " + nRegions + " regions");
+            }
+        }
+    }
+
+    @Test
+    void matchesBruteForceOnTheCorpus() throws IOException {
+        for (String name : TestImages.CORPUS) {
+            BufferedImage bi = TestImages.read(name);
+            assertStatsOnBothEngines(name, TestImages.pixels(bi), bi.getWidth(), bi.getHeight());
+        }
+    }
+
+    @Test
+    void matchesBruteForceOnRandomImages() {
+        Random random = new Random(11);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            assertStatsOnBothEngines("single-color " + w + "x" + h, TestImages.synthetic("single-color", w, h), w, h);
+            assertStatsOnBothEngines("random " + w + "x" + h, TestImages.random(random, w, h, 2), w, h);
+        }
+    }
+
+    private File statsFile(int count, int records) throws IOException {
+        return statsFile(count, records, 2);
+    }
+
+    private File statsFile(int count, int records, long area) throws IOException {
+        File file = dir.resolve("stats").toFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(count);
+            for (int k = 0; k < records; k++) {
+                out.writeLong(area);
+                for (int i = 0; i < 4; i++) {
+                    out.writeInt(k + 1);
+                }
+                for (int i = 0; i < 5; i++) {
+                    out.writeLong(k + 1);
+                }
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void readChecksTheCountAgainstTheFile() throws IOException {
+        ComponentStats stats = ComponentStats.read(statsFile(2, 2));
+        assertEquals(2, stats.getCount());
+        assertEquals(2, stats.getArea(1));
+        assertEquals(0, ComponentStats.read(statsFile(0, 0)).getCount());
+        assertThrows(IOException.class, () -> ComponentStats.read(statsFile(-1, 0)));
+        assertThrows(IOException.class, () -> ComponentStats.read(statsFile(Integer.MAX_VALUE, 1)));
+        assertThrows(IOException.class, () -> ComponentStats.read(statsFile(3, 2)));
+        assertThrows(IOException.class, () -> ComponentStats.read(statsFile(1, 2)));
+        assertThrows(IOException.class, () -> ComponentStats.read(statsFile(1, 1, 1L << 31)));
+    }
+}
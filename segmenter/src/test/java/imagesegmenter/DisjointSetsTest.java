@@ -0,0 +1,86 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DisjointSetsTest {
+
+    @Test
+    void unionJoinsTreesOnce() {
+        DisjointSets forest = new DisjointSets(5);
+        assertTrue(forest.union(0, 1));
+        assertTrue(forest.union(3, 4));
+        assertFalse(forest.union(1, 0));
+        assertTrue(forest.union(1, 4));
+        assertEquals(forest.find(0), forest.find(3));
+        assertTrue(forest.isRoot(2));
+        assertEquals(forest.find(0), forest.root(4));
+    }
+
+    @Test
+    void labelNumbersTreesInScanOrder() {
+        DisjointSets forest = new DisjointSets(6);
+        forest.union(5, 1);
+        forest.union(2, 4);
+        int[] labels = new int[6];
+        assertEquals(4, forest.label(labels));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 2, 1}, labels);
+    }
+
+    @Test
+    void resetReusesTheArrays() {
+        DisjointSets forest = new DisjointSets(8);
+        for (int i = 1; i < 8; i++) {
+            forest.union(0, i);
+        }
+        forest.reset(4);
+        assertEquals(4, forest.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(forest.isRoot(i));
+        }
+        forest.reset(16);
+        assertEquals(16, forest.size());
+        assertTrue(forest.union(15, 0));
+    }
+
+    @Test
+    void matchesANaiveForest() {
+        Random random = new Random(17);
+        int n = 2000;
+        DisjointSets forest = new DisjointSets(n);
+        int[] naive = new int[n]; // the set of each element, relabeled on every union.
+        for (int i = 0; i < n; i++) {
+            naive[i] = i;
+        }
+        for (int k = 0; k < 3000; k++) {
+            int a = random.nextInt(n), b = random.nextInt(n);
+            assertEquals(naive[a] != naive[b], forest.union(a, b));
+            int from = naive[b], to = naive[a];
+            for (int i = 0; i < n; i++) {
+                if (naive[i] == from) {
+                    naive[i] = to;
+                }
+            }
+        }
+        for (int k = 0; k < 3000; k++) {
+            int a = random.nextInt(n), b = random.nextInt(n);
+            assertEquals(naive[a] == naive[b], forest.find(a) == forest.find(b));
+        }
+    }
+
+    @Test
+    void countsFindsWhenAsked() {
+        DisjointSets forest = new DisjointSets(4);
+        forest.union(0, 1);
+        assertEquals(0, forest.getFindCount());
+        forest.setCounting(true);
+        forest.union(2, 3);
+        assertEquals(2, forest.getFindCount());
+    }
+}
@@ -0,0 +1,87 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class EdgeListTest {
+
+    /**
+     * sorts the edges of an image the slow way: by weight, then by id.
+     */
+    private static Integer[] referenceOrder(int[] pixels, int w, int h) {
+        Integer[] ids = new Integer[EdgeList.edgeCount(w, h)];
+        int[] weights = new int[2 * w * h];
+        int n = 0;
+        for (int p = 0; p < w * h; p++) {
+            int x = p % w, y = p / w;
+            if (x + 1 < w) {
+                weights[2*p] = EdgeList.weight(pixels[p], pixels[p+1]);
+                ids[n++] = 2*p;
+            }
+            if (y + 1 < h) {
+                weights[2*p+1] = EdgeList.weight(pixels[p], pixels[p+w]);
+                ids[n++] = 2*p+1;
+            }
+        }
+        Arrays.sort(ids, Comparator.<Integer>comparingInt(e -> weights[e]).thenComparingInt(e -> e));
+        return ids;
+    }
+
+    private static void assertSorted(int[] pixels, int w, int h, EdgeList edges) {
+        Integer[] expected = referenceOrder(pixels, w, h);
+        assertEquals(expected.length, edges.size());
+        for (int i = 0; i < expected.length; i++) {
+            int e = edges.edgeAt(i);
+            assertEquals(expected[i].intValue(), e, "edge " + i);
+            int p = edges.endpoint1(e), q = edges.endpoint2(e);
+            assertEquals(EdgeList.weight(pixels[p], pixels[q]), edges.weight(e));
+        }
+    }
+
+    @Test
+    void sortsByWeightThenId() {
+        Random random = new Random(3);
+        for (int[] size : new int[][] {{1, 1}, {1, 9}, {9, 1}, {2, 2}, {31, 17}, {64, 40}}) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.random(random, w, h, 5);
+            assertSorted(pixels, w, h, EdgeList.build(pixels, w, h));
+        }
+    }
+
+    @Test
+    void sortsTheSyntheticImages() {
+        for (String name : TestImages.SYNTHETIC) {
+            int[] pixels = TestImages.synthetic(name, 45, 38);
+            assertSorted(pixels, 45, 38, EdgeList.build(pixels, 45, 38));
+        }
+    }
+
+    @Test
+    void sortsLazilyWhenFewEdgesAreExpected() {
+        Random random = new Random(23);
+        for (int[] size : new int[][] {{1, 1}, {1, 9}, {9, 1}, {31, 17}, {90, 70}}) {
+            int w = size[0], h = size[1];
+            int[][] images = {TestImages.synthetic("noise", w, h), TestImages.synthetic("single-color", w, h),
+                              TestImages.random(random, w, h, 5)};
+            int count = EdgeList.edgeCount(w, h);
+            for (int[] pixels : images) {
+                for (int expected : new int[] {0, 1, count / 20, count / 3}) {
+                    assertSorted(pixels, w, h, EdgeList.build(pixels, w, h, ProgressMonitor.NONE, null, expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsPositionsPastTheEnd() {
+        int[] pixels = TestImages.synthetic("noise", 4, 4);
+        EdgeList edges = EdgeList.build(pixels, 4, 4);
+        assertThrows(IndexOutOfBoundsException.class, () -> edges.edgeAt(edges.size()));
+    }
+}
@@ -0,0 +1,61 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Surefire runs this twice: with jdk.incubator.vector, where KERNEL must be
+ * the vector kernel, and without it, where it must fall back to SCALAR. The
+ * imagesegmenter.expectVector property says which run this is.
+ */
+class EdgeWeightsTest {
+
+    @Test
+    void loadsTheKernelItShould() {
+        String expected = System.getProperty("imagesegmenter.expectVector");
+        if (expected != null) {
+            assertEquals(Boolean.parseBoolean(expected), EdgeWeights.isVectorized());
+        }
+    }
+
+    @Test
+    void kernelMatchesScalarOnRandomRows() {
+        Random random = new Random(22);
+        for (int trial = 0; trial < 2000; trial++) {
+            // lengths around the vector sizes and their loop bounds, and a few long rows.
+            int count = trial % 100 == 0 ? 1000 + random.nextInt(5000) : random.nextInt(70);
+            int aOffset = random.nextInt(9), bOffset = random.nextInt(9), outOffset = random.nextInt(9);
+            int[] a = new int[aOffset + count + random.nextInt(3)];
+            int[] b = new int[bOffset + count + random.nextInt(3)];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextInt(); // the alpha byte must be ignored too.
+            }
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextBoolean() ? random.nextInt() : random.nextInt(4) * 0x7f7f7f;
+            }
+            int[] expected = new int[outOffset + count + 4], actual = new int[expected.length];
+            Arrays.fill(expected, -1);
+            Arrays.fill(actual, -1);
+            EdgeWeights.SCALAR.weigh(a, aOffset, b, bOffset, expected, outOffset, count);
+            EdgeWeights.KERNEL.weigh(a, aOffset, b, bOffset, actual, outOffset, count);
+            assertArrayEquals(expected, actual, "count " + count + ", offsets " + aOffset + ", " + bOffset + ", " + outOffset);
+        }
+    }
+
+    @Test
+    void rightEdgesOfARowMatchEdgeList() {
+        int[] row = TestImages.synthetic("noise", 203, 1);
+        int[] weights = new int[row.length - 1];
+        EdgeWeights.weigh(row, 0, row, 1, weights, 0, weights.length);
+        for (int x = 0; x < weights.length; x++) {
+            assertEquals(EdgeList.weight(row[x], row[x + 1]), weights[x]);
+        }
+        assertEquals(0, EdgeList.weight(0, 0));
+        assertEquals(EdgeList.MAX_WEIGHT, EdgeList.weight(0x000000, 0xffffff));
+    }
+}
@@ -0,0 +1,115 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class FrameSequenceTest {
+    static final int T = FrameSequence.TILE;
+    // Most are not multiples of TILE, so the last tiles are ragged.
+    static final int[][] SIZES = {{1, 1}, {T, T}, {T + 1, 1}, {1, 2*T + 3}, {3*T + 11, 2*T + 22}, {2*T + 2, T + 1}};
+    static final int FRAMES = 8;
+
+    static SegmentationEngine engine;
+
+    @BeforeAll
+    static void startEngine() {
+        engine = new SegmentationEngine(1);
+    }
+
+    @AfterAll
+    static void closeEngine() {
+        engine.close();
+    }
+
+    /**
+     * repaints a few random rectangles of a frame in a few colors.
+     */
+    private static void edit(Random random, int[] frame, int w, int h) {
+        for (int k = 1 + random.nextInt(3); k > 0; k--) {
+            int x0 = random.nextInt(w), y0 = random.nextInt(h);
+            int x1 = Math.min(w, x0 + 1 + random.nextInt(T)), y1 = Math.min(h, y0 + 1 + random.nextInt(T));
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    frame[w*y + x] = random.nextInt(3) * 0x3f1f0f & 0xffffff;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return (int): the number of tiles in which frame differs from previous
+     */
+    private static int changedTiles(int[] previous, int[] frame, int w, int h) {
+        int count = 0;
+        for (int ty = 0; ty < h; ty += T) {
+            for (int tx = 0; tx < w; tx += T) {
+                boolean differs = false;
+                for (int y = ty; y < Math.min(h, ty + T); y++) {
+                    for (int x = tx; x < Math.min(w, tx + T); x++) {
+                        differs |= previous[w*y + x] != frame[w*y + x];
+                    }
+                }
+                count += differs ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void componentsMatchTheEngineFrameByFrame() {
+        Random random = new Random(19);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            FrameSequence sequence = FrameSequence.components(engine, w, h);
+            int[] frame = TestImages.random(random, w, h, 3);
+            int[] previous = null;
+            for (int f = 0; f < FRAMES; f++) {
+                String what = w + "x" + h + " frame " + f;
+                LabelMap expected = engine.connectedComponents(frame, w, h);
+                LabelMap actual = sequence.next(frame);
+                assertEquals(expected.getComponentCount(), actual.getComponentCount(), what);
+                assertArrayEquals(expected.getLabels(), actual.getLabels(), what);
+                assertEquals(previous == null ? sequence.getTileCount() : changedTiles(previous, frame, w, h),
+                        sequence.getChangedTileCount(), what);
+                previous = frame.clone();
+                edit(random, frame, w, h);
+            }
+            assertEquals(FRAMES, sequence.getFrameCount());
+        }
+    }
+
+    @Test
+    void segmentationKeepsEveryRegion() {
+        Random random = new Random(20);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            for (int nRegions : new int[] {1, 7, 40}) {
+                FrameSequence sequence = FrameSequence.segmentation(engine, w, h, nRegions, FRAMES);
+                int[] frame = TestImages.random(random, w, h, 3);
+                for (int f = 0; f < 2 * FRAMES; f++) {
+                    String what = w + "x" + h + " in " + nRegions + " regions, frame " + f;
+                    LabelMap regions = sequence.next(frame);
+                    if (f % FRAMES == 0) {
+                        assertArrayEquals(engine.segment(frame, w, h, nRegions).getLabels(), regions.getLabels(), what);
+                    }
+                    int count = Math.min(nRegions, w*h);
+                    assertEquals(count, regions.getComponentCount(), what);
+                    int[] area = new int[count];
+                    for (int label : regions.getLabels()) {
+                        area[label]++;
+                    }
+                    assertTrue(Arrays.stream(area).allMatch(a -> a > 0), what + ": an empty region");
+                    edit(random, frame, w, h);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ImageOpPipelineTest {
+    // Tiny images are all edge for EDGE_NO_OP; 37x150 spans several tiles of rows.
+    static final int[][] SIZES = {{1, 1}, {2, 2}, {3, 1}, {1, 3}, {5, 4}, {67, 41}, {37, 150}};
+
+    static SegmentationEngine engine;
+    static BufferedImageOp[] ops;
+    static final String[] NAMES = {"low-pass", "high-pass", "photonegative", "RGB threshold"};
+
+    @BeforeAll
+    static void start() {
+        engine = new SegmentationEngine(2);
+        ImageComponents.initializeImageOps();
+        ops = new BufferedImageOp[] {ImageComponents.LOWPASS_OP, ImageComponents.HIGHPASS_OP,
+                                     ImageComponents.PHOTONEG_OP, ImageComponents.RGBTHRESH_OP};
+    }
+
+    @AfterAll
+    static void closeEngine() {
+        engine.close();
+    }
+
+    /**
+     * runs a chain of operators the Java2D way, one filter call each.
+     */
+    private static int[] filterOneByOne(int[] chain, int[] pixels, int w, int h) {
+        BufferedImage src = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        src.setRGB(0, 0, w, h, pixels, 0, w);
+        for (int op : chain) {
+            BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            ops[op].filter(src, dst);
+            src = dst;
+        }
+        return TestImages.pixels(src).clone();
+    }
+
+    /**
+     * checks every chain of up to three of the viewer's operators, applied
+     * by the pipeline alone and on the engine's threads, against Java2D.
+     */
+    private static void assertSameAsJava2D(String name, int[] pixels, int w, int h) {
+        for (int length = 1; length <= 3; length++) {
+            int[] chain = new int[length];
+            for (int code = 0; code < 1 << (2 * length); code++) {
+                ImageOpPipeline pipeline = new ImageOpPipeline();
+                StringBuilder what = new StringBuilder(name);
+                for (int i = 0; i < length; i++) {
+                    chain[i] = (code >> (2 * i)) & 3;
+                    pipeline = pipeline.then(ops[chain[i]]);
+                    what.append(i == 0 ? ": " : ", ").append(NAMES[chain[i]]);
+                }
+                int[] expected = filterOneByOne(chain, pixels, w, h);
+                int[] src = pixels.clone(), dst = new int[w*h];
+                pipeline.apply(src, dst, w, h);
+                assertArrayEquals(expected, dst, what.toString());
+                assertArrayEquals(pixels, src, what + ": source written");
+                dst = new int[w*h];
+                engine.filter(pipeline, src, dst, w, h);
+                assertArrayEquals(expected, dst, what + " on the engine");
+            }
+        }
+    }
+
+    @Test
+    void matchesJava2DOnRandomImages() {
+        Random random = new Random(15);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = new int[w*h];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = random.nextInt() & 0xffffff;
+            }
+            assertSameAsJava2D("random " + w + "x" + h, pixels, w, h);
+        }
+    }
+
+    @Test
+    void matchesJava2DOnAPicture() throws IOException {
+        BufferedImage bi = TestImages.read("donut2.png");
+        assertSameAsJava2D("donut2.png", TestImages.pixels(bi), bi.getWidth(), bi.getHeight());
+    }
+
+    @Test
+    void foldsTablesIntoConvolutions() {
+        ImageOpPipeline pipeline = new ImageOpPipeline().then(ImageComponents.PHOTONEG_OP)
+                .then(ImageComponents.RGBTHRESH_OP).then(ImageComponents.LOWPASS_OP)
+                .then(ImageComponents.RGBTHRESH_OP).then(ImageComponents.HIGHPASS_OP);
+        assertEquals(2, pipeline.getPassCount());
+        assertEquals(1, new ImageOpPipeline().then(ImageComponents.PHOTONEG_OP)
+                .then(ImageComponents.RGBTHRESH_OP).getPassCount());
+    }
+}
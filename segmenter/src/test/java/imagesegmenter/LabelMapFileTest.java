@@ -0,0 +1,97 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LabelMapFileTest {
+    static final int W = 67, H = 41;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * checks a file's labels and component table against a LabelMap.
+     */
+    private static void assertSameLabels(LabelMap expected, File path) throws IOException {
+        int[] labels = expected.getLabels();
+        long[] firstPixel = new long[expected.getComponentCount()], area = new long[expected.getComponentCount()];
+        for (int p = labels.length - 1; p >= 0; p--) {
+            firstPixel[labels[p]] = p;
+            area[labels[p]]++;
+        }
+        try (LabelMapFile file = LabelMapFile.open(path)) {
+            assertEquals(expected.getComponentCount(), file.getComponentCount());
+            assertArrayEquals(labels, file.toLabelMap().getLabels());
+            for (int k = 0; k < expected.getComponentCount(); k++) {
+                assertEquals(firstPixel[k], file.getFirstPixel(k), "component " + k);
+                assertEquals(area[k], file.getArea(k), "component " + k);
+            }
+        }
+    }
+
+    @Test
+    void writesTheComponentTable() throws IOException {
+        SegmentationEngine engine = new SegmentationEngine(1);
+        try {
+            // 4 colors give over a thousand components: labels of two bytes.
+            int[] pixels = TestImages.random(new Random(10), W, H, 4);
+            LabelMap labels = engine.connectedComponents(pixels, W, H);
+            File path = dir.resolve("labels").toFile();
+            LabelMapFile.write(path, labels);
+            assertSameLabels(labels, path);
+
+            // the same components as a forest, joined to their left and upper neighbors.
+            int[] label = labels.getLabels();
+            DisjointSets forest = new DisjointSets(W*H);
+            for (int p = 0; p < W*H; p++) {
+                if (p % W > 0 && label[p - 1] == label[p]) {
+                    forest.union(p - 1, p);
+                }
+                if (p >= W && label[p - W] == label[p]) {
+                    forest.union(p - W, p);
+                }
+            }
+            File fromForest = dir.resolve("forest").toFile();
+            assertEquals(labels.getComponentCount(), LabelMapFile.write(fromForest, forest, W, H));
+            assertSameLabels(labels, fromForest);
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    void keepsFirstPixelsAndAreasPast32Bits() throws IOException {
+        File path = dir.resolve("wide").toFile();
+        try (LabelMapFile file = LabelMapFile.create(path, W, H, 2)) {
+            file.putComponent(0, 0, 1L << 32);
+            file.putComponent(1, (1L << 33) + 5, 3);
+        }
+        try (LabelMapFile file = LabelMapFile.open(path)) {
+            assertEquals(0, file.getFirstPixel(0));
+            assertEquals(1L << 32, file.getArea(0));
+            assertEquals((1L << 33) + 5, file.getFirstPixel(1));
+            assertEquals(3, file.getArea(1));
+        }
+    }
+
+    @Test
+    void refusesOtherVersions() throws IOException {
+        File path = dir.resolve("old").toFile();
+        LabelMapFile.create(path, W, H, 1).close();
+        try (RandomAccessFile out = new RandomAccessFile(path, "rw")) {
+            out.seek(4);
+            out.writeInt(LabelMapFile.VERSION - 1);
+        }
+        assertThrows(IOException.class, () -> LabelMapFile.open(path));
+    }
+}
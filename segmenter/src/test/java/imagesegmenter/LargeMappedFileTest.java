@@ -0,0 +1,46 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LargeMappedFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void fixedLengthFileIsMappedNoFurther() throws IOException {
+        File path = dir.resolve("fixed").toFile();
+        try (LargeMappedFile file = new LargeMappedFile(path, 12)) {
+            // the file has its length before anything is mapped, and keeps it.
+            assertEquals(12, path.length());
+            file.putInt(0, 7);
+            file.putLong(4, -3L);
+            assertThrows(IndexOutOfBoundsException.class, () -> file.putInt(12, 1));
+        }
+        assertEquals(12, path.length());
+        try (LargeMappedFile file = new LargeMappedFile(path, path.length(), true)) {
+            assertEquals(7, file.getInt(0));
+            assertEquals(-3L, file.getLong(4));
+        }
+    }
+
+    @Test
+    void growingFileSpansChunks() throws IOException {
+        File path = dir.resolve("growing").toFile();
+        long far = LargeMappedFile.CHUNK_SIZE + 8;
+        try (LargeMappedFile file = LargeMappedFile.growing(path)) {
+            file.putInt(0, 1);
+            file.putLong(far, 42L);
+            assertEquals(1, file.getInt(0));
+            assertEquals(42L, file.getLong(far));
+        }
+        assertEquals(2L * LargeMappedFile.CHUNK_SIZE, path.length());
+    }
+}
@@ -0,0 +1,49 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ProgressiveColorsTest {
+
+    @Test
+    void packedColorMatchesTheArrayColor() {
+        ProgressiveColors pc = new ProgressiveColors();
+        Random random = new Random(11);
+        for (int n = 0; n < 5000; n++) {
+            int k = n < 1000 ? n : random.nextInt(1 << ProgressiveColors.NBITS);
+            int[] c = pc.progressiveColor(k);
+            assertEquals(c[0] << 16 | c[1] << 8 | c[2], ProgressiveColors.progressiveColorInt(k), "color " + k);
+        }
+    }
+
+    @Test
+    void colorsRepeatPastTheColorSpace() {
+        for (int k : new int[] {0, 1, 77, ProgressiveColors.PALETTE_MASK}) {
+            assertEquals(ProgressiveColors.progressiveColorInt(k),
+                    ProgressiveColors.progressiveColorInt(k + ProgressiveColors.PALETTE_MASK + 1));
+        }
+    }
+
+    @Test
+    void paletteHoldsTheColors() {
+        int[] palette = ProgressiveColors.palette(3000);
+        assertTrue(palette.length >= 3000);
+        for (int k = 0; k < 3000; k++) {
+            assertEquals(ProgressiveColors.progressiveColorInt(k), palette[k]);
+        }
+    }
+
+    @Test
+    void recolorWrapsLabelsPastThePalette() {
+        int big = ProgressiveColors.PALETTE_MASK + 1 + 2; // the colors of 2 and big are the same.
+        LabelMap labels = new LabelMap(2, 1, new int[] {2, big}, big + 1, 0);
+        int[] rgb = new int[2];
+        labels.recolor(rgb, 0, 1);
+        assertEquals(ProgressiveColors.progressiveColorInt(2), rgb[0]);
+        assertEquals(rgb[0], rgb[1]);
+    }
+}
@@ -0,0 +1,186 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RegionGraphTest {
+    static final int[][] SIZES = {{1, 1}, {1, 60}, {60, 1}, {37, 23}, {64, 48}};
+
+    static SegmentationEngine engine;
+
+    @BeforeAll
+    static void startEngine() {
+        engine = new SegmentationEngine(1);
+    }
+
+    @AfterAll
+    static void closeEngine() {
+        engine.close();
+    }
+
+    /**
+     * @param owner (int[]): the current region of each original region
+     * @return (int[]): the current region of each pixel, numbered in the
+     * order they are first met
+     */
+    private static int[] relabel(int[] labels, int[] owner) {
+        int[] number = new int[owner.length];
+        Arrays.fill(number, -1);
+        int[] current = new int[labels.length];
+        int count = 0;
+        for (int p = 0; p < labels.length; p++) {
+            int r = owner[labels[p]];
+            if (number[r] == -1) {
+                number[r] = count++;
+            }
+            current[p] = number[r];
+        }
+        return current;
+    }
+
+    /**
+     * @return (int): the number of pixels whose region was region in before
+     */
+    private static int area(int[] labels, int[] before, int region) {
+        int area = 0;
+        for (int label : labels) {
+            if (before[label] == region) {
+                area++;
+            }
+        }
+        return area;
+    }
+
+    /**
+     * @return (Rectangle): the bounding box of the pixels whose region was
+     * region in before; empty if there are none
+     */
+    private static Rectangle bounds(int[] labels, int[] before, int region, int w) {
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1;
+        for (int p = 0; p < labels.length; p++) {
+            if (before[labels[p]] == region) {
+                x0 = Math.min(x0, p % w);
+                y0 = Math.min(y0, p / w);
+                x1 = Math.max(x1, p % w);
+                y1 = Math.max(y1, p / w);
+            }
+        }
+        return x1 < 0 ? new Rectangle() : new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    /**
+     * checks the graph's regions and painting against the ones worked out
+     * pixel by pixel.
+     */
+    private static void assertSameRegions(RegionGraph graph, int[] labels, int[] owner, int[] rgb, String what) {
+        int[] palette = ProgressiveColors.palette(graph.getRegionCount());
+        int[] expected = new int[labels.length];
+        for (int p = 0; p < labels.length; p++) {
+            expected[p] = palette[owner[labels[p]] & ProgressiveColors.PALETTE_MASK];
+        }
+        assertArrayEquals(expected, rgb, what + ": repainted pixels");
+        LabelMap current = graph.toLabelMap();
+        assertArrayEquals(relabel(labels, owner), current.getLabels(), what + ": labels");
+        assertEquals(graph.getCurrentRegionCount(), current.getComponentCount(), what);
+    }
+
+    /**
+     * merges random touching regions until one is left, checking every step
+     * against a relabeling from scratch, then undoes every merge.
+     */
+    private static void assertMergesAndUndoes(String name, LabelMap regions, int[] pixels, Random random) {
+        int w = regions.getWidth(), h = regions.getHeight();
+        int[] labels = regions.getLabels();
+        RegionGraph graph = RegionGraph.build(regions, pixels);
+        int[] rgb = new int[w*h];
+        graph.recolor(rgb);
+        int[] original = rgb.clone();
+        int[] owner = new int[regions.getComponentCount()];
+        for (int r = 0; r < owner.length; r++) {
+            owner[r] = r;
+        }
+        assertSameRegions(graph, labels, owner, rgb, name);
+
+        Deque<int[]> owners = new ArrayDeque<>();
+        Deque<Integer> absorbedRegions = new ArrayDeque<>();
+        while (graph.getCurrentRegionCount() > 1) {
+            // Find two touching pixels of different regions, from a random start.
+            int start = random.nextInt(w*h), p = -1, q = -1;
+            for (int k = 0; k < w*h && q == -1; k++) {
+                p = (start + k) % (w*h);
+                if (p % w != w - 1 && owner[labels[p]] != owner[labels[p+1]]) {
+                    q = p + 1;
+                } else if (p / w != h - 1 && owner[labels[p]] != owner[labels[p+w]]) {
+                    q = p + w;
+                }
+            }
+            int a = owner[labels[p]], b = owner[labels[q]];
+            String what = name + " merging " + a + " and " + b;
+            assertEquals(a, graph.getRegionAt(p % w, p / w), what);
+            assertEquals(-1, graph.merge(a, a, rgb), what);
+
+            int absorbed = graph.merge(a, b, rgb);
+            assertTrue(absorbed == a || absorbed == b, what);
+            int kept = absorbed == a ? b : a;
+            int[] before = owner.clone();
+            int absorbedArea = area(labels, before, absorbed), keptArea = area(labels, before, kept);
+            assertTrue(absorbedArea <= keptArea, what + ": the smaller region is absorbed");
+            assertEquals(absorbedArea + keptArea, graph.getArea(kept), what);
+            for (int r = 0; r < owner.length; r++) {
+                if (owner[r] == absorbed) {
+                    owner[r] = kept;
+                }
+            }
+            owners.push(before);
+            absorbedRegions.push(absorbed);
+            assertEquals(bounds(labels, before, absorbed, w), graph.getRepaintedBounds(), what + ": repainted bounds");
+            assertSameRegions(graph, labels, owner, rgb, what);
+        }
+
+        while (!owners.isEmpty()) {
+            int[] before = owners.pop();
+            int split = graph.undo(rgb);
+            String what = name + " undoing the split of " + split;
+            assertEquals((int) absorbedRegions.pop(), split, what);
+            owner = before;
+            assertEquals(bounds(labels, owner, split, w), graph.getRepaintedBounds(), what + ": repainted bounds");
+            assertSameRegions(graph, labels, owner, rgb, what);
+        }
+        assertEquals(-1, graph.undo(rgb), name);
+        assertArrayEquals(original, rgb, name + ": after undoing every merge");
+    }
+
+    @Test
+    void mergesAndUndoesSegmentations() {
+        Random random = new Random(18);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.synthetic("noise", w, h);
+            for (int nRegions : new int[] {1, 2, 30}) {
+                assertMergesAndUndoes("noise " + w + "x" + h + " in " + nRegions, engine.segment(pixels, w, h, nRegions),
+                        pixels, random);
+            }
+        }
+    }
+
+    @Test
+    void mergesAndUndoesConnectedComponents() {
+        Random random = new Random(19);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.random(random, w, h, 3);
+            assertMergesAndUndoes("random " + w + "x" + h, engine.connectedComponents(pixels, w, h), pixels, random);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultCacheTest {
+    static final int W = 64, H = 48;
+
+    static SegmentationEngine engine;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void startEngine() {
+        engine = new SegmentationEngine(1);
+    }
+
+    @AfterAll
+    static void closeEngine() {
+        engine.close();
+    }
+
+    private File cached(String suffix) {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(suffix));
+        assertEquals(1, files.length, suffix);
+        return files[0];
+    }
+
+    private File componentsFile(int[] pixels) {
+        return dir.resolve(ResultCache.key(pixels, W, H) + "-components" + ResultCache.LABELS).toFile();
+    }
+
+    private static void putInt(File file, long offset, int value) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(offset);
+            out.writeInt(value);
+        }
+    }
+
+    @Test
+    void isEdgeRejectsEdgesOffTheImage() {
+        assertTrue(SegmentationHierarchy.isEdge(0, W, H));
+        assertFalse(SegmentationHierarchy.isEdge(2 * (W - 1), W, H)); // right of the last column.
+        assertTrue(SegmentationHierarchy.isEdge(2 * (W - 1) + 1, W, H));
+        assertFalse(SegmentationHierarchy.isEdge(2 * (W * (H - 1)) + 1, W, H)); // below the last row.
+        assertFalse(SegmentationHierarchy.isEdge(2 * W * H, W, H));
+        assertFalse(SegmentationHierarchy.isEdge(-1, W, H));
+    }
+
+    @Test
+    void damagedHierarchyIsBuiltAgain() throws IOException {
+        int[] pixels = TestImages.random(new Random(3), W, H, 4);
+        ResultCache cache = new ResultCache(engine, dir.toFile(), 1 << 20);
+        cache.segment(pixels, W, H, 25);
+        File hierarchy = cached(ResultCache.HIERARCHY);
+        long firstEdge = SegmentationHierarchy.HEADER_SIZE;
+
+        putInt(hierarchy, firstEdge, 2 * (W - 1));
+        assertThrows(IOException.class, () -> SegmentationHierarchy.read(hierarchy));
+        assertArrayEquals(engine.segment(pixels, W, H, 30).getLabels(), cache.segment(pixels, W, H, 30).getLabels());
+
+        putInt(cached(ResultCache.HIERARCHY), 16, W * H); // more merges than pixels.
+        assertThrows(IOException.class, () -> SegmentationHierarchy.read(cached(ResultCache.HIERARCHY)));
+        assertArrayEquals(engine.segment(pixels, W, H, 35).getLabels(), cache.segment(pixels, W, H, 35).getLabels());
+    }
+
+    @Test
+    void damagedLabelsAreComputedAgain() throws IOException {
+        int[] pixels = TestImages.random(new Random(5), W, H, 4);
+        ResultCache cache = new ResultCache(engine, dir.toFile(), 1 << 20);
+        cache.connectedComponents(pixels, W, H);
+        File labels = cached(ResultCache.LABELS);
+
+        putInt(labels, LabelMapFile.HEADER_SIZE, -1); // the first label, whatever its width, is out of range.
+        try (LabelMapFile file = LabelMapFile.open(labels)) {
+            assertThrows(IOException.class, file::toLabelMap);
+        }
+        assertArrayEquals(engine.connectedComponents(pixels, W, H).getLabels(),
+                          cache.connectedComponents(pixels, W, H).getLabels());
+    }
+
+    @Test
+    void warmHitsSkipTheEngine() throws IOException {
+        int[] pixels = TestImages.random(new Random(7), W, H, 4);
+        SegmentationStats stats = new SegmentationStats();
+        SegmentationEngine counted = new SegmentationEngine(1, SegmentationEngine.MstAlgorithm.KRUSKAL, stats);
+        try {
+            ResultCache cache = new ResultCache(counted, dir.toFile(), 1 << 20);
+            cache.connectedComponents(pixels, W, H);
+            cache.segment(pixels, W, H, 25);
+            assertEquals(2, stats.getCallCount());
+            cache.segment(pixels, W, H, 30); // cut from the saved hierarchy.
+            assertEquals(2, stats.getCallCount());
+
+            ResultCache reopened = new ResultCache(counted, dir.toFile(), 1 << 20);
+            assertEquals(cache.getSize(), reopened.getSize());
+            assertArrayEquals(engine.connectedComponents(pixels, W, H).getLabels(),
+                              reopened.connectedComponents(pixels, W, H).getLabels());
+            assertArrayEquals(engine.segment(pixels, W, H, 25).getLabels(), reopened.segment(pixels, W, H, 25).getLabels());
+            assertArrayEquals(engine.segment(pixels, W, H, 40).getLabels(), reopened.segment(pixels, W, H, 40).getLabels());
+            assertEquals(2, stats.getCallCount());
+            assertEquals(3, reopened.getHits()); // components, 25 regions, and the hierarchy for 40.
+            assertEquals(1, reopened.getMisses()); // the labels of 40 regions.
+        } finally {
+            counted.close();
+        }
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsed() throws IOException {
+        int[][] images = new int[3][W*H];
+        for (int i = 0; i < images.length; i++) {
+            Arrays.fill(images[i], 0x102030 * (i + 1));
+        }
+        File one = dir.resolve("one").toFile();
+        LabelMapFile.write(one, engine.connectedComponents(images[0], W, H));
+        long length = one.length(); // every image is one component, so every file is this long.
+        one.delete();
+
+        ResultCache cache = new ResultCache(engine, dir.toFile(), 2 * length + length / 2);
+        cache.connectedComponents(images[0], W, H);
+        cache.connectedComponents(images[1], W, H);
+        assertEquals(2 * length, cache.getSize());
+        cache.connectedComponents(images[0], W, H); // now images[1] is the oldest.
+        cache.connectedComponents(images[2], W, H);
+        assertEquals(2 * length, cache.getSize());
+        assertTrue(componentsFile(images[0]).exists());
+        assertFalse(componentsFile(images[1]).exists());
+        assertTrue(componentsFile(images[2]).exists());
+
+        assertEquals(length, new ResultCache(engine, dir.toFile(), length).getSize());
+        assertEquals(1, dir.toFile().listFiles().length);
+        ResultCache tiny = new ResultCache(engine, dir.toFile(), length - 1);
+        assertEquals(0, tiny.getSize());
+        tiny.connectedComponents(images[1], W, H); // too big to keep at all.
+        assertEquals(0, tiny.getSize());
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+}
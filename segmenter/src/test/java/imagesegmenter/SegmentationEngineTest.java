@@ -0,0 +1,172 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SegmentationEngineTest {
+    static final int[] REGION_COUNTS = {1, 2, 25, 1000};
+
+    static final int[][] LABELING_SIZES = {{1, 1}, {1, 97}, {97, 1}, {2, 64}, {64, 48}, {203, 117}};
+
+    static SegmentationEngine kruskal;
+    static SegmentationEngine boruvka;
+    static SegmentationEngine parallel;
+
+    @BeforeAll
+    static void startEngines() {
+        kruskal = new SegmentationEngine(1);
+        boruvka = new SegmentationEngine(2, SegmentationEngine.MstAlgorithm.BORUVKA);
+        parallel = new SegmentationEngine(4);
+    }
+
+    @AfterAll
+    static void closeEngines() {
+        kruskal.close();
+        boruvka.close();
+        parallel.close();
+    }
+
+    /**
+     * checks that both algorithms cut the image into the same regions,
+     * numbered the same way.
+     */
+    private static void assertSameRegions(String name, int[] pixels, int w, int h) {
+        for (int nRegions : REGION_COUNTS) {
+            LabelMap expected = kruskal.segment(pixels, w, h, nRegions);
+            LabelMap actual = boruvka.segment(pixels, w, h, nRegions);
+            String where = name + " at " + nRegions + " regions";
+            assertEquals(Math.min(nRegions, w*h), expected.getComponentCount(), where);
+            assertEquals(expected.getComponentCount(), actual.getComponentCount(), where);
+            assertArrayEquals(expected.getLabels(), actual.getLabels(), where);
+        }
+    }
+
+    @Test
+    void boruvkaMatchesKruskalOnTheCorpus() throws IOException {
+        for (String name : TestImages.CORPUS) {
+            BufferedImage bi = TestImages.read(name);
+            assertSameRegions(name, TestImages.pixels(bi), bi.getWidth(), bi.getHeight());
+        }
+    }
+
+    @Test
+    void boruvkaMatchesKruskalOnSyntheticImages() {
+        for (String name : TestImages.SYNTHETIC) {
+            for (int[] size : new int[][] {{1, 1}, {7, 1}, {1, 7}, {64, 48}, {203, 117}}) {
+                int w = size[0], h = size[1];
+                assertSameRegions(name + " " + w + "x" + h, TestImages.synthetic(name, w, h), w, h);
+            }
+        }
+    }
+
+    @Test
+    void boruvkaMatchesKruskalOnRandomColors() {
+        Random random = new Random(5);
+        for (int k = 0; k < 10; k++) {
+            int w = 1 + random.nextInt(80), h = 1 + random.nextInt(80);
+            assertSameRegions("random " + k, TestImages.random(random, w, h, 2 + random.nextInt(6)), w, h);
+        }
+    }
+
+    /**
+     * checks that labeling in parallel stripes and labeling runs find the
+     * components of the serial scan, numbered the same way.
+     */
+    private static void assertSameComponents(String name, int[] pixels, int w, int h) {
+        LabelMap expected = kruskal.connectedComponents(pixels, w, h);
+        LabelMap actual = parallel.connectedComponents(pixels, w, h);
+        assertEquals(expected.getComponentCount(), actual.getComponentCount(), name);
+        assertArrayEquals(expected.getLabels(), actual.getLabels(), name);
+
+        RunLabelMap runs = kruskal.connectedComponentRuns(pixels, w, h);
+        assertEquals(expected.getComponentCount(), runs.getComponentCount(), name + " by runs");
+        assertArrayEquals(expected.getLabels(), runs.toLabelMap().getLabels(), name + " by runs");
+        int[] labels = expected.getLabels();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (runs.getLabel(x, y) != labels[w*y + x]) {
+                    assertEquals(labels[w*y + x], runs.getLabel(x, y), name + " by runs at " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void labelersAgreeOnTheCorpus() throws IOException {
+        for (String name : TestImages.CORPUS) {
+            BufferedImage bi = TestImages.read(name);
+            assertSameComponents(name, TestImages.pixels(bi), bi.getWidth(), bi.getHeight());
+        }
+    }
+
+    @Test
+    void labelersAgreeOnRandomColors() {
+        Random random = new Random(4);
+        for (int[] size : LABELING_SIZES) {
+            int w = size[0], h = size[1];
+            for (int colors = 1; colors <= 4; colors++) {
+                assertSameComponents("random " + w + "x" + h + " in " + colors + " colors",
+                        TestImages.random(random, w, h, colors), w, h);
+            }
+        }
+    }
+
+    @Test
+    void hierarchyCutMatchesSegment() {
+        int[] pixels = TestImages.synthetic("noise", 90, 70);
+        SegmentationHierarchy hierarchy = kruskal.buildHierarchy(pixels, 90, 70);
+        // From 90*70/2 regions up, Kruskal stops early enough to leave heavy edges unsorted.
+        for (int nRegions : new int[] {1, 2, 25, 1000, 90*70/2, 90*70*3/4, 90*70 - 1, 90*70}) {
+            assertArrayEquals(kruskal.segment(pixels, 90, 70, nRegions).getLabels(),
+                    hierarchy.labels(nRegions).getLabels(), nRegions + " regions");
+        }
+    }
+
+    @Test
+    void pyramidKeepsEveryRegionOnOddLevels() {
+        for (int[] size : new int[][] {{1, 1}, {1, 37}, {37, 1}, {3, 3}, {91, 67}, {203, 117}}) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.synthetic("noise", w, h);
+            for (int levels = 1; levels <= 3; levels++) {
+                ImagePyramid pyramid = ImagePyramid.build(pixels, w, h, levels);
+                for (int nRegions : REGION_COUNTS) {
+                    for (int level = pyramid.getLevelCount() - 1; level >= 0; level--) {
+                        String where = w + "x" + h + " level " + level + " of " + levels + " at " + nRegions + " regions";
+                        int lw = pyramid.getWidth(level), lh = pyramid.getHeight(level);
+                        LabelMap regions = kruskal.segment(pyramid, level, nRegions, false, ProgressMonitor.NONE);
+                        assertEquals(lw, regions.getWidth(), where);
+                        assertEquals(lh, regions.getHeight(), where);
+                        assertEquals(Math.min(nRegions, lw*lh), regions.getComponentCount(), where);
+                        int[] area = new int[regions.getComponentCount()];
+                        for (int label : regions.getLabels()) {
+                            area[label]++;
+                        }
+                        for (int k = 0; k < area.length; k++) {
+                            assertTrue(area[k] > 0, where + ": region " + k + " is empty");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void closedEngineRejectsParallelCalls() {
+        SegmentationEngine engine = new SegmentationEngine(2, SegmentationEngine.MstAlgorithm.BORUVKA);
+        int[] pixels = TestImages.synthetic("noise", 16, 16);
+        engine.segment(pixels, 16, 16, 4);
+        engine.close();
+        assertThrows(RejectedExecutionException.class, () -> engine.segment(pixels, 16, 16, 4));
+    }
+}
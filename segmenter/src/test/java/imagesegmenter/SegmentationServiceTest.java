@@ -0,0 +1,143 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SegmentationServiceTest {
+    static final long MAX_PIXELS = 400;
+
+    SegmentationEngine engine;
+    SegmentationService service;
+    InetSocketAddress address;
+    String cacheStatus; // the X-Cache header of the last reply.
+
+    @BeforeEach
+    void startService() throws IOException {
+        engine = new SegmentationEngine(1);
+        service = new SegmentationService(engine, null, 1, 1, 1 << 20, MAX_PIXELS);
+        address = service.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void stopService() {
+        service.stop(0);
+        engine.close();
+    }
+
+    private static byte[] png(int w, int h) throws IOException {
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        bi.setRGB(0, 0, w, h, TestImages.synthetic("checkerboard", w, h), 0, w);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(bi, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * posts a body to the service.
+     * @return (String): the status code, a space, and the response body
+     */
+    private String post(String path, byte[] body) throws IOException {
+        URL url = new URL("http", address.getHostString(), address.getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            cacheStatus = connection.getHeaderField("X-Cache");
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return status + " " + new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    void readsTheSizeFromTheHeader() throws IOException {
+        assertEquals(20L * 19, SegmentationService.pixelCount(png(20, 19)));
+        assertEquals(-1, SegmentationService.pixelCount("not an image".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void answersImagesUpToTheCap() throws IOException {
+        String reply = post("/components", png(20, 20));
+        assertTrue(reply.startsWith("200 "), reply);
+        assertTrue(reply.contains("\"components\": 400"), reply);
+    }
+
+    @Test
+    void refusesImagesOverTheCap() throws IOException {
+        String reply = post("/components", png(21, 20));
+        assertTrue(reply.startsWith("413 "), reply);
+    }
+
+    @Test
+    void refusesWhatItCannotDecode() throws IOException {
+        String reply = post("/segment?regions=2", "not an image".getBytes(StandardCharsets.UTF_8));
+        assertTrue(reply.startsWith("415 "), reply);
+    }
+
+    @Test
+    void answersARepeatedRequestFromTheCache() throws IOException {
+        byte[] body = png(20, 20);
+        String reply = post("/segment?regions=3", body);
+        assertTrue(reply.startsWith("200 "), reply);
+        assertEquals("miss", cacheStatus);
+        assertEquals(reply, post("/segment?regions=3", body));
+        assertEquals("hit", cacheStatus);
+        post("/segment?regions=4", body);
+        assertEquals("miss", cacheStatus);
+    }
+
+    private static SegmentationService.Response response(int size) {
+        return new SegmentationService.Response("text/plain", new byte[size]);
+    }
+
+    @Test
+    void cacheEvictsTheLeastRecentlyUsed() {
+        SegmentationService.ResponseCache cache = new SegmentationService.ResponseCache(100);
+        cache.put("a", response(40));
+        cache.put("b", response(30));
+        cache.put("c", response(30));
+        assertEquals(100, cache.getSize());
+        assertNotNull(cache.get("a")); // now b is the oldest.
+        cache.put("d", response(20));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(90, cache.getSize());
+        cache.put("e", response(60)); // evicts a and c, the oldest.
+        assertNull(cache.get("a"));
+        assertNull(cache.get("c"));
+        assertEquals(80, cache.getSize());
+        cache.put("f", response(101));
+        assertNull(cache.get("f"));
+        assertEquals(80, cache.getSize());
+        cache.put("d", response(40)); // replacing an entry counts only the new size.
+        assertEquals(100, cache.getSize());
+        assertNotNull(cache.get("e"));
+    }
+}
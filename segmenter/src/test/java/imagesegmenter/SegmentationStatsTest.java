@@ -0,0 +1,67 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SegmentationStatsTest {
+    static final int W = 90, H = 70, REGIONS = 25;
+
+    SegmentationStats stats;
+    SegmentationEngine engine;
+
+    @BeforeEach
+    void startEngine() {
+        stats = new SegmentationStats();
+        engine = new SegmentationEngine(1, SegmentationEngine.MstAlgorithm.KRUSKAL, stats);
+    }
+
+    @AfterEach
+    void closeEngine() {
+        engine.close();
+    }
+
+    @Test
+    void segmentRecordsEachPhaseOnce() {
+        engine.segment(TestImages.synthetic("noise", W, H), W, H, REGIONS);
+        for (SegmentationStats.Phase phase : new SegmentationStats.Phase[] {SegmentationStats.Phase.BUILD_EDGES,
+                SegmentationStats.Phase.SORT_EDGES, SegmentationStats.Phase.UNION, SegmentationStats.Phase.RELABEL}) {
+            assertEquals(1, stats.getPhaseCount(phase), phase.toString());
+        }
+        assertEquals(0, stats.getPhaseCount(SegmentationStats.Phase.RECOLOR));
+        assertEquals(1, stats.getCallCount());
+        assertEquals(W*H - REGIONS, stats.getUnionCount());
+        assertTrue(stats.getEdgesConsumed() >= W*H - REGIONS);
+    }
+
+    @Test
+    void findsAreCountedOnlyWhenAsked() {
+        int[] pixels = TestImages.synthetic("noise", W, H);
+        engine.segment(pixels, W, H, REGIONS);
+        assertEquals(0, stats.getFindCount());
+        assertEquals(0, stats.getPathSteps());
+        stats.setCountingFinds(true);
+        engine.segment(pixels, W, H, REGIONS);
+        assertTrue(stats.getFindCount() > 0);
+        assertTrue(stats.getPathSteps() > 0);
+    }
+
+    @Test
+    void resetZeroesEverything() {
+        stats.setCountingFinds(true);
+        engine.segment(TestImages.synthetic("noise", W, H), W, H, REGIONS);
+        stats.reset();
+        for (SegmentationStats.Phase phase : SegmentationStats.Phase.values()) {
+            assertEquals(0, stats.getPhaseCount(phase), phase.toString());
+            assertEquals(0, stats.getPhaseNanos(phase), phase.toString());
+        }
+        assertEquals(0, stats.getCallCount());
+        assertEquals(0, stats.getUnionCount());
+        assertEquals(0, stats.getFindCount());
+        assertEquals(0, stats.getPathSteps());
+        assertEquals(0, stats.getEdgesConsumed());
+    }
+}
@@ -0,0 +1,160 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingLabelerTest {
+    static SegmentationEngine engine;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void startEngine() {
+        engine = new SegmentationEngine(1);
+    }
+
+    @AfterAll
+    static void closeEngine() {
+        engine.close();
+    }
+
+    /**
+     * writes an image in some format.
+     * @param progressive (boolean): whether to interlace a PNG or make a JPEG progressive
+     */
+    private File write(BufferedImage bi, String format, boolean progressive) throws IOException {
+        File file = dir.resolve((progressive ? "progressive." : "plain.") + format).toFile();
+        file.delete();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (progressive) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.write(null, new IIOImage(bi, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return file;
+    }
+
+    /**
+     * checks that streaming an image file finds what the engine finds in
+     * the same file decoded whole.
+     */
+    private void assertSameComponents(File image, int bandHeight) throws IOException {
+        BufferedImage decoded = ImageIO.read(image);
+        int w = decoded.getWidth(), h = decoded.getHeight();
+        int[] pixels = decoded.getRGB(0, 0, w, h, null, 0, w);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0x00ffffff;
+        }
+        LabelMap expected = engine.connectedComponents(pixels, w, h, true);
+
+        File labelsFile = dir.resolve("labels").toFile(), statsFile = dir.resolve("stats").toFile();
+        StreamingLabeler.Result result = new StreamingLabeler(bandHeight, dir.toFile()).label(image, labelsFile, statsFile);
+        String what = image.getName() + " in bands of " + bandHeight;
+        assertEquals(w, result.getWidth(), what);
+        assertEquals(h, result.getHeight(), what);
+        assertEquals(expected.getComponentCount(), result.getComponentCount(), what);
+        assertEquals(expected.getUnionCount(), result.getUnionCount(), what);
+        ComponentStats want = expected.getStats(), got = ComponentStats.read(statsFile);
+        try (LabelMapFile labels = LabelMapFile.open(labelsFile)) {
+            assertArrayEquals(expected.getLabels(), labels.toLabelMap().getLabels(), what);
+            long[] firstPixel = new long[expected.getComponentCount()];
+            for (int p = w*h - 1; p >= 0; p--) {
+                firstPixel[expected.getLabels()[p]] = p;
+            }
+            for (int k = 0; k < expected.getComponentCount(); k++) {
+                assertEquals(firstPixel[k], labels.getFirstPixel(k), what);
+                assertEquals(want.getArea(k), labels.getArea(k), what);
+            }
+        }
+        assertEquals(want.getCount(), got.getCount(), what);
+        for (int k = 0; k < want.getCount(); k++) {
+            assertEquals(want.getArea(k), got.getArea(k), what);
+            assertEquals(want.getMinX(k), got.getMinX(k), what);
+            assertEquals(want.getMinY(k), got.getMinY(k), what);
+            assertEquals(want.getMaxX(k), got.getMaxX(k), what);
+            assertEquals(want.getMaxY(k), got.getMaxY(k), what);
+            assertEquals(want.getCentroidX(k), got.getCentroidX(k), what);
+            assertEquals(want.getCentroidY(k), got.getCentroidY(k), what);
+            assertEquals(want.getMeanColor(k), got.getMeanColor(k), what);
+        }
+    }
+
+    @Test
+    void matchesTheEngineOnTheCorpus() throws IOException {
+        for (String name : TestImages.CORPUS) {
+            assertSameComponents(new File(TestImages.imageDirectory(), name), 0);
+        }
+    }
+
+    @Test
+    void matchesTheEngineInEveryLayout() throws IOException {
+        BufferedImage bi = new BufferedImage(203, 117, BufferedImage.TYPE_INT_RGB);
+        bi.setRGB(0, 0, 203, 117, TestImages.random(new Random(9), 203, 117, 3), 0, 203);
+        for (File image : new File[] {write(bi, "png", false), write(bi, "png", true), write(bi, "bmp", false),
+                                      write(bi, "jpeg", false), write(bi, "jpeg", true)}) {
+            assertSameComponents(image, 0);
+            assertSameComponents(image, 7);
+        }
+    }
+
+    private static boolean isOnePass(File image) throws IOException {
+        try (ScanlineReader reader = new ScanlineReader(image)) {
+            return reader.isOnePass();
+        }
+    }
+
+    @Test
+    void readsPlainPngsAndJpegsInOnePass() throws IOException {
+        BufferedImage bi = TestImages.read("gradients.png");
+        assertTrue(isOnePass(write(bi, "png", false)));
+        assertTrue(isOnePass(write(bi, "jpeg", false)));
+        assertFalse(isOnePass(write(bi, "png", true)));
+        assertFalse(isOnePass(write(bi, "jpeg", true)));
+        assertFalse(isOnePass(write(bi, "bmp", false)));
+    }
+
+    @Test
+    void readsTheHeaderOfAnImageOfMoreThan2To31Pixels() throws IOException {
+        File image = write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "png", false);
+        // IHDR follows the 8-byte signature: length, type, width, height, 5 more bytes, then its CRC.
+        byte[] png = Files.readAllBytes(image.toPath());
+        ByteBuffer header = ByteBuffer.wrap(png, 8, 25).slice();
+        header.putInt(8, 1 << 16).putInt(12, 1 << 16);
+        CRC32 crc = new CRC32();
+        crc.update(png, 12, 17);
+        header.putInt(21, (int) crc.getValue());
+        Files.write(image.toPath(), png);
+        try (ScanlineReader reader = new ScanlineReader(image)) {
+            assertEquals(1 << 16, reader.getWidth());
+            assertEquals(1 << 16, reader.getHeight());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * TestImages.java
+ * The inputs shared by the tests: the pictures in img/ and the synthetic
+ * worst cases, as packed RGB pixels. The benchmarks use them too, through
+ * the segmenter's test jar.
+ *
+ * The img/ directory is taken from the imagesegmenter.img system property,
+ * or found by walking up from the working directory.
+ */
+
+package imagesegmenter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+final class TestImages {
+    static final String[] CORPUS = {"gettysburg-address-p1.png", "ArezzoPiazza.jpg", "gradients.png",
+                                    "donut2.png", "4sections.png"};
+    static final String[] SYNTHETIC = {"checkerboard", "single-color", "noise"};
+    static final long NOISE_SEED = 20160229L; // so every run sees the same noise.
+
+    private TestImages() {
+    }
+
+    /**
+     * @param name (String): an image name
+     * @return (boolean): whether synthetic draws it
+     */
+    static boolean isSynthetic(String name) {
+        return Arrays.asList(SYNTHETIC).contains(name);
+    }
+
+    /**
+     * draws one of the synthetic images.
+     * @param name (String): "checkerboard", "single-color" or "noise"
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @return (int[]): its packed RGB pixels, row by row
+     */
+    static int[] synthetic(String name, int w, int h) {
+        int[] rgb = new int[w * h];
+        switch (name) {
+            case "checkerboard":
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) {
+                        rgb[w * y + x] = ((x + y) & 1) == 0 ? 0x000000 : 0xffffff;
+                    }
+                }
+                return rgb;
+            case "single-color":
+                Arrays.fill(rgb, 0x808080);
+                return rgb;
+            case "noise":
+                Random random = new Random(NOISE_SEED);
+                for (int i = 0; i < rgb.length; i++) {
+                    rgb[i] = random.nextInt() & 0xffffff;
+                }
+                return rgb;
+            default:
+                throw new IllegalArgumentException("No synthetic image " + name);
+        }
+    }
+
+    /**
+     * fills an image with a few colors at random, so that it has many
+     * components of many shapes.
+     * @param random (Random): the source of the colors
+     * @param w (int): width of the image
+     * @param h (int): height of the image
+     * @param colors (int): how many colors to use
+     * @return (int[]): its packed RGB pixels, row by row
+     */
+    static int[] random(Random random, int w, int h, int colors) {
+        int[] rgb = new int[w * h];
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] = random.nextInt(colors) * 0x3f1f0f & 0xffffff;
+        }
+        return rgb;
+    }
+
+    /**
+     * reads one of the pictures in img/.
+     * @param name (String): its file name
+     * @return (BufferedImage): the picture, TYPE_INT_RGB
+     * @throws IOException if it cannot be read
+     */
+    static BufferedImage read(String name) throws IOException {
+        BufferedImage source = ImageIO.read(new File(imageDirectory(), name));
+        if (source == null) {
+            throw new IOException("Could not read " + name);
+        }
+        BufferedImage bi = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        bi.getGraphics().drawImage(source, 0, 0, null);
+        return bi;
+    }
+
+    /**
+     * @param bi (BufferedImage): a TYPE_INT_RGB image
+     * @return (int[]): the array behind it, row by row
+     */
+    static int[] pixels(BufferedImage bi) {
+        return ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return (File): the directory holding the sample images
+     * @throws IOException if it cannot be found
+     */
+    static File imageDirectory() throws IOException {
+        String property = System.getProperty("imagesegmenter.img");
+        if (property != null) {
+            return new File(property);
+        }
+        for (File dir = new File(System.getProperty("user.dir")).getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+            File img = new File(dir, "img");
+            if (img.isDirectory()) {
+                return img;
+            }
+        }
+        throw new IOException("No img directory found; set -Dimagesegmenter.img");
+    }
+}
@@ -0,0 +1,122 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+class TiledImageViewTest {
+    static final int TILE = TiledImageView.TILE;
+    // Ragged right and bottom tiles at every level, and squares whose samples fall past the edge.
+    static final int[][] SIZES = {{1, 1}, {9, 9}, {2*TILE + 1, 3}, {600, 517}};
+
+    /**
+     * @return (int): the number of tiles of a level across a side of length size
+     */
+    private static int tiles(int size, int level) {
+        return (((size + (1 << level) - 1) >> level) + TILE - 1) / TILE;
+    }
+
+    /**
+     * works out a pixel of a coarser level from the image: the truncated mean
+     * of the pixels of its square at SAMPLES evenly spaced offsets each way,
+     * or the square's corner if none of them is in the image.
+     */
+    private static int averaged(int[] pixels, int w, int h, int level, int levelX, int levelY) {
+        int step = 1 << level, spacing = step / Math.min(step, TiledImageView.SAMPLES);
+        int ox = levelX << level, oy = levelY << level;
+        int r = 0, g = 0, b = 0, n = 0;
+        for (int y = oy; y < Math.min(h, oy + step); y++) {
+            for (int x = ox; x < Math.min(w, ox + step); x++) {
+                if ((x - ox) % spacing == spacing / 2 && (y - oy) % spacing == spacing / 2) {
+                    int rgb = pixels[w*y + x];
+                    r += (rgb >> 16) & 0xff;
+                    g += (rgb >> 8) & 0xff;
+                    b += rgb & 0xff;
+                    n++;
+                }
+            }
+        }
+        if (n == 0) {
+            return pixels[w * Math.min(h - 1, oy) + Math.min(w - 1, ox)];
+        }
+        return (r / n) << 16 | (g / n) << 8 | (b / n);
+    }
+
+    @Test
+    void levelZeroTilesCopyThePixels() {
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.synthetic("noise", w, h);
+            for (int ty = 0; ty < tiles(h, 0); ty++) {
+                for (int tx = 0; tx < tiles(w, 0); tx++) {
+                    String what = w + "x" + h + " tile " + tx + ", " + ty;
+                    BufferedImage tile = TiledImageView.buildTile(pixels, w, h, 0, tx, ty);
+                    assertEquals(Math.min(TILE, w - tx*TILE), tile.getWidth(), what);
+                    assertEquals(Math.min(TILE, h - ty*TILE), tile.getHeight(), what);
+                    for (int y = 0; y < tile.getHeight(); y++) {
+                        for (int x = 0; x < tile.getWidth(); x++) {
+                            assertEquals(pixels[w * (ty*TILE + y) + tx*TILE + x], tile.getRGB(x, y) & 0xffffff, what);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void coarserTilesAverageTheirSamples() {
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            int[] pixels = TestImages.synthetic("noise", w, h);
+            for (int level = 1; level <= 4; level++) {
+                int levelW = (w + (1 << level) - 1) >> level, levelH = (h + (1 << level) - 1) >> level;
+                for (int ty = 0; ty < tiles(h, level); ty++) {
+                    for (int tx = 0; tx < tiles(w, level); tx++) {
+                        String what = w + "x" + h + " level " + level + " tile " + tx + ", " + ty;
+                        BufferedImage tile = TiledImageView.buildTile(pixels, w, h, level, tx, ty);
+                        assertEquals(Math.min(TILE, levelW - tx*TILE), tile.getWidth(), what);
+                        assertEquals(Math.min(TILE, levelH - ty*TILE), tile.getHeight(), what);
+                        int[] expected = new int[tile.getWidth() * tile.getHeight()];
+                        for (int y = 0; y < tile.getHeight(); y++) {
+                            for (int x = 0; x < tile.getWidth(); x++) {
+                                expected[tile.getWidth() * y + x] = averaged(pixels, w, h, level, tx*TILE + x, ty*TILE + y);
+                            }
+                        }
+                        assertArrayEquals(expected, TestImages.pixels(tile), what);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void refingerprintsOnlyTheTilesUnderTheRectangle() {
+        int w = 600, h = 517, across = tiles(w, 0); // 3 x 3 tiles, the last column and row ragged.
+        int[] pixels = TestImages.synthetic("noise", w, h);
+        long[] fingerprints = new long[across * tiles(h, 0)];
+        BitSet known = new BitSet();
+        BitSet all = new BitSet();
+        all.set(0, fingerprints.length);
+        assertEquals(all, TiledImageView.refingerprint(fingerprints, known, pixels, w, h, 0, 0, w, h));
+        assertEquals(new BitSet(), TiledImageView.refingerprint(fingerprints, known, pixels, w, h, 0, 0, w, h));
+
+        pixels[0] ^= 1; // in tile 0.
+        pixels[w * (h - 1) + w - 1] ^= 1; // in tile 8, the ragged corner.
+        pixels[w * 300 + 300] ^= 1; // in tile 4.
+        long[] before = fingerprints.clone();
+        BitSet changed = TiledImageView.refingerprint(fingerprints, known, pixels, w, h, w - 5, h - 5, 5, 5);
+        assertEquals(BitSet.valueOf(new long[] {1L << 8}), changed);
+        for (int t = 0; t < 8; t++) {
+            assertEquals(before[t], fingerprints[t], "tile " + t);
+        }
+
+        // a rectangle across the corner of tiles 0, 1, 3 and 4 rechecks all four.
+        changed = TiledImageView.refingerprint(fingerprints, known, pixels, w, h, TILE - 5, TILE - 5, 10, 10);
+        assertEquals(BitSet.valueOf(new long[] {1L << 0 | 1L << 4}), changed);
+        assertEquals(new BitSet(), TiledImageView.refingerprint(fingerprints, known, pixels, w, h, 0, 0, w, h));
+    }
+}
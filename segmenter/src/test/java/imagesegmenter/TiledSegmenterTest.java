@@ -0,0 +1,102 @@
+package imagesegmenter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TiledSegmenterTest {
+    static final int TILE_SIZE = 37; // divides none of the sizes below, so the last tiles are ragged.
+    static final int[][] SIZES = {{1, 1}, {37, 37}, {38, 38}, {75, 1}, {1, 75}, {203, 117}};
+
+    static SegmentationEngine engine;
+    static TiledSegmenter tiled;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() {
+        engine = new SegmentationEngine(1);
+        tiled = new TiledSegmenter(2, TILE_SIZE, null);
+    }
+
+    @AfterAll
+    static void stop() {
+        tiled.close();
+        engine.close();
+    }
+
+    private static void assertSameHierarchy(SegmentationHierarchy expected, SegmentationHierarchy actual, String what) {
+        assertEquals(expected.getMergeCount(), actual.getMergeCount(), what);
+        for (int i = 0; i < expected.getMergeCount(); i++) {
+            assertEquals(expected.getEdge(i), actual.getEdge(i), what + " merge " + i);
+        }
+    }
+
+    /**
+     * checks that the tiles give exactly the engine's components and merge sequence.
+     */
+    private static void assertSameAsEngine(String what, int[] pixels, int w, int h) throws IOException {
+        LabelMap expected = engine.connectedComponents(pixels, w, h);
+        LabelMap actual = tiled.connectedComponents(pixels, w, h);
+        assertEquals(expected.getComponentCount(), actual.getComponentCount(), what);
+        assertArrayEquals(expected.getLabels(), actual.getLabels(), what);
+        assertSameHierarchy(engine.buildHierarchy(pixels, w, h), tiled.buildHierarchy(pixels, w, h), what);
+    }
+
+    @Test
+    void matchesTheEngineOnTheCorpus() throws IOException {
+        for (String name : TestImages.CORPUS) {
+            BufferedImage bi = TestImages.read(name);
+            assertSameAsEngine(name, TestImages.pixels(bi), bi.getWidth(), bi.getHeight());
+        }
+    }
+
+    @Test
+    void matchesTheEngineOnSyntheticImages() throws IOException {
+        Random random = new Random(24);
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            for (String name : TestImages.SYNTHETIC) {
+                assertSameAsEngine(name + " " + w + "x" + h, TestImages.synthetic(name, w, h), w, h);
+            }
+            assertSameAsEngine("random " + w + "x" + h, TestImages.random(random, w, h, 3), w, h);
+        }
+    }
+
+    @Test
+    void matchesTheEngineFromAFile() throws IOException {
+        int w = 203, h = 117;
+        int[] pixels = TestImages.random(new Random(7), w, h, 3);
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        bi.setRGB(0, 0, w, h, pixels, 0, w);
+        File image = dir.resolve("random.png").toFile();
+        ImageIO.write(bi, "png", image);
+
+        File labelsFile = dir.resolve("labels").toFile();
+        LabelMap expected = engine.connectedComponents(pixels, w, h);
+        assertEquals(expected.getComponentCount(), tiled.writeConnectedComponents(image, labelsFile));
+        try (LabelMapFile labels = LabelMapFile.open(labelsFile)) {
+            assertArrayEquals(expected.getLabels(), labels.toLabelMap().getLabels());
+        }
+        SegmentationHierarchy hierarchy = engine.buildHierarchy(pixels, w, h);
+        assertSameHierarchy(hierarchy, tiled.buildHierarchy(image), "random.png");
+
+        File hierarchyFile = dir.resolve("hierarchy").toFile();
+        assertEquals(hierarchy.getMergeCount(), tiled.writeHierarchy(image, hierarchyFile));
+        assertEquals(SegmentationHierarchy.HEADER_SIZE + 4L * hierarchy.getMergeCount(), hierarchyFile.length());
+        assertSameHierarchy(hierarchy, SegmentationHierarchy.read(hierarchyFile), "random.png written out");
+    }
+}